@@ -4,6 +4,7 @@ import command.*;
 import receiver.FileEditor;
 import invoker.Invoker;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
@@ -31,10 +32,19 @@ public class Client {
      * It initializes the system, creates commands, and executes them through the Invoker.
      * This method demonstrates how different commands can be added to a list, converted into an array,
      * and then executed in sequence by the invoker.
+     * <p>
+     * When a command script is given, its commands are streamed to the invoker instead, as described in
+     * {@link CommandScriptReader}.
      *
-     * @param args The command-line arguments (not used in this application).
+     * @param args The name of a command script, or "-" to read it from standard input, optionally followed by the
+     * byte offset to resume from. Without arguments, the built-in demonstration commands are run.
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            runScript(args);
+            return;
+        }
+
         /**
          * The invoker instance.
          */
@@ -67,4 +77,29 @@ public class Client {
         invoker.setCommandsForExecution(commands);
         invoker.executeCommand(commandHistory);
     }
+
+    /**
+     * Streams the commands of a script to the invoker in chunks.
+     *
+     * @param args The name of a command script, or "-" for standard input, optionally followed by the byte offset
+     * to resume from.
+     */
+    private static void runScript(String[] args) {
+        final FileEditor fileEditor = new FileEditor(FILENAME);
+        final ScriptRunner runner = new ScriptRunner(fileEditor, new Invoker(), UndoCommand.commandHistory,
+                ScriptRunner.DEFAULT_CHUNK_SIZE);
+
+        try {
+            long offset = args.length > 1 ? Long.parseLong(args[1]) : 0;
+            try (CommandScriptReader reader = CommandScriptReader.open(fileEditor, args[0], offset)) {
+                runner.run(reader);
+            }
+        }
+        catch (NumberFormatException e) {
+            System.out.println("Invalid resume offset: " + args[1]);
+        }
+        catch (IOException e) {
+            System.out.println("Failed at IO: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,263 @@
+package client;
+
+import command.AddCommand;
+import command.Command;
+import command.DeleteCommand;
+import command.ListCommand;
+import command.RedoCommand;
+import command.UndoCommand;
+import command.UpdateCommand;
+import receiver.FileEditor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CommandScriptReader class parses a line-oriented command script into commands lazily, a chunk at a time,
+ * so that scripts of any length are read in bounded memory. Each line holds one command:
+ * <pre>
+ * add firstName;lastName;email
+ * update lineNumber;firstName[;lastName[;email]]
+ * delete lineNumber
+ * list
+ * undo [steps]
+ * redo [steps]
+ * </pre>
+ * Blank lines and lines starting with '#' are skipped. A line that cannot be parsed is reported and skipped.
+ * The reader tracks the byte offset of the next unread line, so that a failed run can be resumed from the offset
+ * it last reported.
+ */
+public class CommandScriptReader implements AutoCloseable {
+
+    /**
+     * The name that makes the reader read the script from standard input.
+     */
+    public static final String STANDARD_INPUT = "-";
+    /**
+     * The maximum length of a script line in bytes.
+     */
+    private static final int MAX_LINE_BYTES = 1 << 20;
+
+    /**
+     * The FileEditor instance the parsed commands operate on.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The script being read.
+     */
+    private final InputStream input;
+    /**
+     * The bytes of the line being read.
+     */
+    private final ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+    /**
+     * The byte offset of the next unread line.
+     */
+    private long offset;
+    /**
+     * Whether the end of the script has been reached.
+     */
+    private boolean finished;
+
+    /**
+     * Constructs a CommandScriptReader reading a script from a stream positioned at the given offset.
+     *
+     * @param fileEditor The FileEditor instance the parsed commands operate on.
+     * @param input The script, positioned at the start of a line.
+     * @param offset The byte offset the stream is positioned at.
+     */
+    public CommandScriptReader(FileEditor fileEditor, InputStream input, long offset) {
+        this.fileEditor = fileEditor;
+        this.input = new BufferedInputStream(input, 1 << 16);
+        this.offset = offset;
+    }
+
+    /**
+     * Opens a script file, or standard input for {@value #STANDARD_INPUT}, and positions it at the given offset.
+     * A file is positioned directly, while standard input is read and discarded up to the offset.
+     *
+     * @param fileEditor The FileEditor instance the parsed commands operate on.
+     * @param filename The name of the script file, or {@value #STANDARD_INPUT} for standard input.
+     * @param offset The byte offset to start from, which must be the start of a line, such as an offset
+     * previously returned by {@link #getOffset()}.
+     * @return The reader.
+     * @throws IOException if the script cannot be opened or positioned.
+     */
+    public static CommandScriptReader open(FileEditor fileEditor, String filename, long offset) throws IOException {
+        if (filename.equals(STANDARD_INPUT)) {
+            CommandScriptReader reader = new CommandScriptReader(fileEditor, System.in, 0);
+            reader.discard(offset);
+            return reader;
+        }
+
+        FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        channel.position(offset);
+        return new CommandScriptReader(fileEditor, Channels.newInputStream(channel), offset);
+    }
+
+    /**
+     * Parses the next commands of the script.
+     *
+     * @param maxCommands The maximum number of commands to return.
+     * @return The commands, in script order, or an empty list at the end of the script.
+     * @throws IOException if the script cannot be read.
+     */
+    public List<Command> nextChunk(int maxCommands) throws IOException {
+        List<Command> commands = new ArrayList<>(Math.min(maxCommands, 1024));
+        while (commands.size() < maxCommands) {
+            long lineOffset = offset;
+            String line = readLine();
+            if (line == null) {
+                break;
+            }
+
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                commands.add(parse(line));
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println("Invalid script line at offset " + lineOffset + ": " + e.getMessage());
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Gets the byte offset of the next unread line, from which a new reader can resume.
+     *
+     * @return The byte offset.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Checks whether the end of the script has been reached.
+     *
+     * @return true if every line has been read, false otherwise.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Closes the script.
+     *
+     * @throws IOException if the script cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Parses one line of the script into a command.
+     *
+     * @param line The line, without surrounding whitespace.
+     * @return The command.
+     * @throws IllegalArgumentException if the line is not a valid command.
+     */
+    private Command parse(String line) {
+        int space = line.indexOf(' ');
+        String keyword = (space < 0 ? line : line.substring(0, space)).toLowerCase();
+        String argument = space < 0 ? "" : line.substring(space + 1).strip();
+
+        return switch (keyword) {
+            case "add" -> new AddCommand(fileEditor, requireArgument(keyword, argument));
+            case "update" -> new UpdateCommand(fileEditor, requireArgument(keyword, argument));
+            case "delete" -> new DeleteCommand(fileEditor, requireArgument(keyword, argument));
+            case "list" -> new ListCommand(fileEditor);
+            case "undo" -> argument.isEmpty()
+                    ? new UndoCommand()
+                    : new UndoCommand(fileEditor, Integer.parseInt(argument));
+            case "redo" -> argument.isEmpty()
+                    ? new RedoCommand()
+                    : new RedoCommand(fileEditor, Integer.parseInt(argument));
+            default -> throw new IllegalArgumentException("Unknown command: " + keyword);
+        };
+    }
+
+    /**
+     * Checks that a command has an argument.
+     *
+     * @param keyword The command keyword.
+     * @param argument The argument.
+     * @return The argument.
+     * @throws IllegalArgumentException if the argument is empty.
+     */
+    private static String requireArgument(String keyword, String argument) {
+        if (argument.isEmpty()) {
+            throw new IllegalArgumentException("Missing argument for " + keyword + ".");
+        }
+        return argument;
+    }
+
+    /**
+     * Reads and discards bytes up to an offset, for streams such as pipes that cannot seek.
+     *
+     * @param target The offset to read up to.
+     * @throws IOException if the script cannot be read or ends before the offset.
+     */
+    private void discard(long target) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (offset < target) {
+            int read = input.read(buffer, 0, (int) Math.min(buffer.length, target - offset));
+            if (read < 0) {
+                throw new IOException("Script ends before offset " + target + ".");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Reads the next line of the script, advancing the offset past its line break.
+     *
+     * @return The line without its line break, or null at the end of the script.
+     * @throws IOException if the script cannot be read or a line is too long.
+     */
+    private String readLine() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        lineBytes.reset();
+        int b;
+        while ((b = input.read()) >= 0) {
+            offset++;
+            if (b == '\n') {
+                return decodeLine();
+            }
+            if (lineBytes.size() == MAX_LINE_BYTES) {
+                throw new IOException("Script line at offset " + (offset - lineBytes.size() - 1) + " is too long.");
+            }
+            lineBytes.write(b);
+        }
+
+        finished = true;
+        return lineBytes.size() == 0 ? null : decodeLine();
+    }
+
+    /**
+     * Decodes the bytes of the line just read, dropping a trailing carriage return.
+     *
+     * @return The line.
+     */
+    private String decodeLine() {
+        String line = lineBytes.toString(StandardCharsets.UTF_8);
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+}
@@ -0,0 +1,130 @@
+package client;
+
+import command.Command;
+import invoker.Invoker;
+import receiver.FileEditor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * The ScriptRunner class feeds the commands of a {@link CommandScriptReader} to an Invoker a chunk at a time.
+ * Each chunk runs in a transaction of the FileEditor, so the file is written once per chunk instead of once per
+ * command, and a chunk is either fully written or not at all. After every chunk the offset of the next unread line
+ * is the point to resume from, and it is reported together with the throughput at regular intervals.
+ */
+public class ScriptRunner {
+
+    /**
+     * The default number of commands per chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+    /**
+     * The minimum interval between two progress reports, in milliseconds.
+     */
+    public static final long REPORT_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The FileEditor instance the commands operate on.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The invoker executing the commands.
+     */
+    private final Invoker invoker;
+    /**
+     * The stack for storing the command history, used for Undo operations.
+     */
+    private final Stack<Command> commandHistory;
+    /**
+     * The number of commands per chunk.
+     */
+    private final int chunkSize;
+
+    /**
+     * Constructs a ScriptRunner.
+     *
+     * @param fileEditor The FileEditor instance the commands operate on.
+     * @param invoker The invoker executing the commands.
+     * @param commandHistory The stack for storing the command history, used for Undo operations.
+     * @param chunkSize The number of commands per chunk.
+     * @throws IllegalArgumentException if the chunk size is not positive.
+     */
+    public ScriptRunner(FileEditor fileEditor, Invoker invoker, Stack<Command> commandHistory, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.fileEditor = fileEditor;
+        this.invoker = invoker;
+        this.commandHistory = commandHistory;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Runs every remaining command of a script. If a chunk cannot be written, it is rolled back, the offset to
+     * resume from is reported and the failure is rethrown.
+     *
+     * @param reader The script.
+     * @return The number of commands run.
+     * @throws IOException if the script cannot be read or a chunk cannot be written to the file.
+     */
+    public long run(CommandScriptReader reader) throws IOException {
+        long startNanos = System.nanoTime();
+        long lastReportNanos = startNanos;
+        long commandCount = 0;
+        long resumeOffset = reader.getOffset();
+
+        List<Command> chunk;
+        while (!(chunk = reader.nextChunk(chunkSize)).isEmpty()) {
+            try {
+                runChunk(chunk);
+            }
+            catch (IOException e) {
+                System.out.println("Script failed: " + e.getMessage() + ". Resume from offset " + resumeOffset + ".");
+                throw e;
+            }
+            commandCount += chunk.size();
+            resumeOffset = reader.getOffset();
+
+            long now = System.nanoTime();
+            if (now - lastReportNanos >= REPORT_INTERVAL_MILLIS * 1_000_000) {
+                System.out.println("Script progress: " + commandCount + " commands, "
+                        + commandsPerSecond(commandCount, now - startNanos) + " commands/s, resume offset "
+                        + resumeOffset + ".");
+                lastReportNanos = now;
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.println("Script finished: " + commandCount + " commands in " + elapsedNanos / 1_000_000 + " ms ("
+                + commandsPerSecond(commandCount, elapsedNanos) + " commands/s), offset " + resumeOffset + ".");
+        return commandCount;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Runs one chunk of commands in a transaction, unless one is already open. If the chunk cannot be written,
+     * the invoker leaves the lines, the history, the redo history and the recorded idempotency keys as they were
+     * before it, so the script can be resumed from the start of the chunk.
+     *
+     * @param chunk The commands.
+     * @throws IOException if the chunk cannot be written to the file.
+     */
+    private void runChunk(List<Command> chunk) throws IOException {
+        invoker.setCommandsForExecution(chunk.toArray(new Command[0]));
+        invoker.executeInTransaction(fileEditor, commandHistory);
+    }
+
+    /**
+     * Computes a throughput.
+     *
+     * @param commandCount The number of commands run.
+     * @param elapsedNanos The time taken, in nanoseconds.
+     * @return The number of commands per second.
+     */
+    private static long commandsPerSecond(long commandCount, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0 : commandCount * 1_000_000_000L / elapsedNanos;
+    }
+}
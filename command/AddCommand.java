@@ -8,7 +8,7 @@ import java.util.NoSuchElementException;
  * The AddCommand class implements the Command interface and encapsulates the addition of text to a file.
  * This command is responsible for adding a specified string to a file and supports undoing the action.
  */
-public class AddCommand implements Command {
+public class AddCommand implements Command, Preparable {
 
     /**
      * The FileEditor instance.
@@ -18,6 +18,14 @@ public class AddCommand implements Command {
      * The instance of the input string.
      */
     private final String inputString;
+    /**
+     * The formatted line to add, or null if the command has not been prepared or its input is invalid.
+     */
+    private String preparedLine;
+    /**
+     * The failure found while preparing the command, or null if there was none.
+     */
+    private RuntimeException preparationFailure;
 
     /**
      * Constructs an AddCommand with a specified FileEditor and input string.
@@ -38,7 +46,47 @@ public class AddCommand implements Command {
      */
     @Override
     public void execute() throws IOException, IllegalArgumentException {
-        this.fileEditor.addAction(inputString);
+        if (preparationFailure != null) {
+            throw preparationFailure;
+        }
+        if (preparedLine != null) {
+            this.fileEditor.addPreparedLine(preparedLine);
+        }
+        else {
+            this.fileEditor.addAction(inputString);
+        }
+    }
+
+    /**
+     * Checks whether the command has been prepared and its input is valid, in which case executing it can only
+     * fail when writing the file.
+     *
+     * @return true if the command is prepared and valid, false otherwise.
+     */
+    public boolean isPreparedAndValid() {
+        return preparedLine != null;
+    }
+
+    /**
+     * Gets the formatted line this command adds.
+     *
+     * @return The formatted line, or null if the command has not been prepared or its input is invalid.
+     */
+    public String getPreparedLine() {
+        return preparedLine;
+    }
+
+    /**
+     * Validates and formats the inputString ahead of execution, keeping the formatted line or the failure.
+     */
+    @Override
+    public void prepare() {
+        try {
+            preparedLine = this.fileEditor.prepareAddLine(inputString);
+        }
+        catch (RuntimeException e) {
+            preparationFailure = e;
+        }
     }
 
     /**
@@ -66,6 +66,16 @@ public class DeleteCommand implements Command {
         this.fileEditor.deleteAction(index);
     }
 
+    /**
+     * Records this command as executed without changing the file, as when the invoker drops it together with the
+     * add of the same line right before it.
+     *
+     * @param deletedLine The line this command would have deleted, restored when it is undone.
+     */
+    public void skip(String deletedLine) {
+        this.deletedLine = deletedLine;
+    }
+
     /**
      * Undoes the delete action performed by this command, restoring the deleted line to the file.
      *
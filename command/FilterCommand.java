@@ -0,0 +1,148 @@
+package command;
+
+import exceptions.CustomException;
+import query.Query;
+import query.QueryParser;
+import query.QueryPlanner;
+import query.QueryResult;
+import receiver.FileEditor;
+import replication.ChangeHistory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The FilterCommand class implements the Command interface and lists only the lines of the file that match a query,
+ * such as {@code lastName startsWith K and emailDomain = "gmail.com" limit 50}. See {@link QueryParser} for the
+ * query language. The query is parsed when the command is constructed, so an invalid query is reported before
+ * anything runs. Given a {@link ChangeHistory}, it filters the lines as they were after a past change or at a past
+ * point in time instead, scanning them as the indexes only cover the current lines.
+ */
+public class FilterCommand implements Command {
+
+    /**
+     * The FileEditor instance.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The parsed query.
+     */
+    private final Query query;
+    /**
+     * The history past lines are read from, or null to filter the current lines.
+     */
+    private final ChangeHistory history;
+    /**
+     * The sequence number of the change to filter the lines as of, if filtering past lines by change.
+     */
+    private final long asOfSequence;
+    /**
+     * The point in time to filter the lines as of, or null to filter past lines by change.
+     */
+    private final Instant asOfTime;
+
+    /**
+     * Constructs a FilterCommand with the specified FileEditor and query.
+     *
+     * @param fileEditor The FileEditor instance whose lines are filtered.
+     * @param queryString The query in the query language.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public FilterCommand(FileEditor fileEditor, String queryString) {
+        this(fileEditor, queryString, null, 0, null);
+    }
+
+    /**
+     * Constructs a FilterCommand that filters the lines as they were right after a past change.
+     *
+     * @param fileEditor The FileEditor instance whose changes the history records.
+     * @param queryString The query in the query language.
+     * @param history The history of the file.
+     * @param sequence The sequence number of the change.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public FilterCommand(FileEditor fileEditor, String queryString, ChangeHistory history, long sequence) {
+        this(fileEditor, queryString, history, sequence, null);
+    }
+
+    /**
+     * Constructs a FilterCommand that filters the lines as they were at a past point in time.
+     *
+     * @param fileEditor The FileEditor instance whose changes the history records.
+     * @param queryString The query in the query language.
+     * @param history The history of the file.
+     * @param time The point in time.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public FilterCommand(FileEditor fileEditor, String queryString, ChangeHistory history, Instant time) {
+        this(fileEditor, queryString, history, 0, time);
+    }
+
+    /**
+     * Constructs a FilterCommand.
+     *
+     * @param fileEditor The FileEditor instance whose lines are filtered.
+     * @param queryString The query in the query language.
+     * @param history The history past lines are read from, or null to filter the current lines.
+     * @param asOfSequence The sequence number of the change to filter the lines as of.
+     * @param asOfTime The point in time to filter the lines as of, or null to filter them as of the change.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    private FilterCommand(FileEditor fileEditor, String queryString, ChangeHistory history, long asOfSequence,
+                          Instant asOfTime) {
+        this.fileEditor = fileEditor;
+        this.query = QueryParser.parse(queryString);
+        this.history = history;
+        this.asOfSequence = asOfSequence;
+        this.asOfTime = asOfTime;
+    }
+
+    /**
+     * Executes the query and displays the matching lines, followed by how many matched and the plan used.
+     *
+     * @throws CustomException if no lines match the query.
+     * @throws IOException if the history cannot be read.
+     */
+    @Override
+    public void execute() throws CustomException, IOException {
+        QueryResult result;
+        String asOf = "";
+        if (history == null) {
+            result = fileEditor.query(query);
+        }
+        else {
+            List<String> lines = asOfTime == null ? history.linesAt(asOfSequence) : history.linesAt(asOfTime);
+            result = QueryPlanner.execute(query, lines, List.of());
+            asOf = " as of " + (asOfTime == null ? "change " + asOfSequence : asOfTime);
+        }
+        if (result.getRows().isEmpty()) {
+            throw new CustomException("There are no lines matching the query" + asOf + ": " + query);
+        }
+
+        for (String line : result.getRows()) {
+            System.out.println(line);
+        }
+        System.out.println("Filter matched " + result.getRows().size() + " lines" + asOf + " using "
+                + result.getPlan() + ".");
+    }
+
+    /**
+     * Undo operation for the FilterCommand, which is not supported as filtering is a read-only action.
+     *
+     * @throws CustomException to indicate that the Filter command cannot be undone.
+     */
+    @Override
+    public void undo() throws CustomException {
+        throw new CustomException("Filter command is not undoable.");
+    }
+
+    /**
+     * Gets the parsed query.
+     *
+     * @return The query.
+     */
+    public Query getQuery() {
+        return query;
+    }
+}
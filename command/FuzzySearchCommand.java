@@ -0,0 +1,90 @@
+package command;
+
+import exceptions.CustomException;
+import query.FuzzyMatch;
+import receiver.FileEditor;
+
+import java.util.List;
+
+/**
+ * The FuzzySearchCommand class implements the Command interface and lists the lines of the file closest to a
+ * possibly misspelled text, such as "Jonh Smtih", ranked by edit distance to the line's name or email.
+ */
+public class FuzzySearchCommand implements Command {
+
+    /**
+     * The default maximum number of lines listed.
+     */
+    public static final int DEFAULT_LIMIT = 10;
+
+    /**
+     * The FileEditor instance.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The text to search for.
+     */
+    private final String searchText;
+    /**
+     * The maximum number of lines listed.
+     */
+    private final int limit;
+
+    /**
+     * Constructs a FuzzySearchCommand listing up to {@value #DEFAULT_LIMIT} lines.
+     *
+     * @param fileEditor The FileEditor instance whose lines are searched.
+     * @param searchText The text to search for.
+     * @throws IllegalArgumentException if the search text is null or empty.
+     */
+    public FuzzySearchCommand(FileEditor fileEditor, String searchText) {
+        this(fileEditor, searchText, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Constructs a FuzzySearchCommand.
+     *
+     * @param fileEditor The FileEditor instance whose lines are searched.
+     * @param searchText The text to search for.
+     * @param limit The maximum number of lines listed.
+     * @throws IllegalArgumentException if the search text is null or empty, or the limit is not positive.
+     */
+    public FuzzySearchCommand(FileEditor fileEditor, String searchText, int limit) {
+        if (searchText == null || searchText.trim().isEmpty()) {
+            throw new IllegalArgumentException("Search text cannot be null or empty.");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Search limit must be positive: " + limit);
+        }
+        this.fileEditor = fileEditor;
+        this.searchText = searchText;
+        this.limit = limit;
+    }
+
+    /**
+     * Executes the search and displays the closest lines with their edit distance, closest first.
+     *
+     * @throws CustomException if no lines are found.
+     */
+    @Override
+    public void execute() throws CustomException {
+        List<FuzzyMatch> matches = fileEditor.fuzzySearch(searchText, limit);
+        if (matches.isEmpty()) {
+            throw new CustomException("There are no lines similar to: " + searchText);
+        }
+
+        for (FuzzyMatch match : matches) {
+            System.out.println(match.getRow() + " (distance " + match.getDistance() + ")");
+        }
+    }
+
+    /**
+     * Undo operation for the FuzzySearchCommand, which is not supported as searching is a read-only action.
+     *
+     * @throws CustomException to indicate that the Fuzzy search command cannot be undone.
+     */
+    @Override
+    public void undo() throws CustomException {
+        throw new CustomException("Fuzzy search command is not undoable.");
+    }
+}
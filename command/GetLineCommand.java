@@ -0,0 +1,55 @@
+package command;
+
+import exceptions.CustomException;
+import receiver.FileEditor;
+
+/**
+ * The GetLineCommand class implements the Command interface and displays a single line of the file. It is a
+ * short, interactive read that a scheduling Invoker runs ahead of long scans.
+ */
+public class GetLineCommand implements Command {
+
+    /**
+     * The FileEditor instance.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The zero-based index of the line to display.
+     */
+    private final int index;
+
+    /**
+     * Constructs a GetLineCommand for a specific line.
+     *
+     * @param fileEditor The FileEditor instance holding the line.
+     * @param index The line number to display, assuming 1-based input for user convenience.
+     */
+    public GetLineCommand(FileEditor fileEditor, int index) {
+        this.fileEditor = fileEditor;
+        this.index = index - 1;  // Adjust index to be zero-based
+    }
+
+    /**
+     * Displays the line at the index.
+     *
+     * @throws IndexOutOfBoundsException if there is no line at the index.
+     */
+    @Override
+    public void execute() throws IndexOutOfBoundsException {
+        String line = this.fileEditor.getLineAtIndex(index);
+        if (line == null) {
+            throw new IndexOutOfBoundsException("No line found at index: " + index);
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Undo operation for the GetLineCommand, which is not supported as reading a line changes nothing.
+     *
+     * @throws CustomException to indicate that the command cannot be undone.
+     */
+    @Override
+    public void undo() throws CustomException {
+        throw new CustomException("Get line command is not undoable.");
+    }
+}
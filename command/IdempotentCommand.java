@@ -0,0 +1,117 @@
+package command;
+
+import exceptions.CustomException;
+import java.io.IOException;
+
+/**
+ * The IdempotentCommand class decorates a command with an idempotency key identifying the request it came from.
+ * The Invoker remembers the keys of the commands it executed successfully for a while, and skips a command whose
+ * key it has already seen, so a loader retrying a request after a timeout does not apply it twice.
+ * <p>
+ * Keys are 64-bit numbers. A textual request id is hashed to one by {@link #keyOf(String)}, which makes the
+ * chance of two distinct ids colliding within the dedup window negligible.
+ */
+public class IdempotentCommand implements Command, Preparable {
+
+    /**
+     * The decorated command.
+     */
+    private final Command command;
+    /**
+     * The idempotency key of the request.
+     */
+    private final long key;
+
+    /**
+     * Constructs an IdempotentCommand with a numeric idempotency key.
+     *
+     * @param command The decorated command.
+     * @param key The idempotency key of the request.
+     */
+    public IdempotentCommand(Command command, long key) {
+        this.command = command;
+        this.key = key;
+    }
+
+    /**
+     * Constructs an IdempotentCommand with a textual request id.
+     *
+     * @param command The decorated command.
+     * @param requestId The id of the request, such as a UUID.
+     * @throws IllegalArgumentException if the request id is null or empty.
+     */
+    public IdempotentCommand(Command command, String requestId) {
+        this(command, keyOf(requestId));
+    }
+
+    /**
+     * Executes the decorated command.
+     *
+     * @throws CustomException if the command fails with an application-specific error.
+     * @throws IOException if the command fails with an I/O error.
+     */
+    @Override
+    public void execute() throws CustomException, IOException {
+        command.execute();
+    }
+
+    /**
+     * Undoes the decorated command.
+     *
+     * @throws CustomException if the undo fails with an application-specific error.
+     * @throws IOException if the undo fails with an I/O error.
+     */
+    @Override
+    public void undo() throws CustomException, IOException {
+        command.undo();
+    }
+
+    /**
+     * Prepares the decorated command if it can be prepared.
+     */
+    @Override
+    public void prepare() {
+        if (command instanceof Preparable preparable) {
+            preparable.prepare();
+        }
+    }
+
+    /**
+     * Gets the decorated command.
+     *
+     * @return The command.
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * Gets the idempotency key of the request.
+     *
+     * @return The key.
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Hashes a textual request id to a 64-bit idempotency key, using FNV-1a followed by a final mix.
+     *
+     * @param requestId The id of the request.
+     * @return The key.
+     * @throws IllegalArgumentException if the request id is null or empty.
+     */
+    public static long keyOf(String requestId) {
+        if (requestId == null || requestId.isEmpty()) {
+            throw new IllegalArgumentException("Request id cannot be null or empty.");
+        }
+
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < requestId.length(); i++) {
+            hash = (hash ^ requestId.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -1,19 +1,60 @@
 package command;
 
 import exceptions.CustomException;
+import query.Field;
+import query.Query;
 import receiver.FileEditor;
+import receiver.Snapshot;
+import replication.ChangeHistory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
 
 /**
  * The ListCommand class implements the Command interface and encapsulates the operation of listing
  * the contents of the file managed by the FileEditor. This command is used to display the current state
- * of the file to the user.
+ * of the file to the user, either in file order or sorted by a field. Given a {@link ChangeHistory}, it lists
+ * the lines in file order as they were after a past change or at a past point in time instead.
  */
-public class ListCommand implements Command {
+public class ListCommand implements ResumableCommand {
 
     /**
      * The FileEditor instance.
      */
     private final FileEditor fileEditor;
+    /**
+     * The field to sort the lines by, or null to list them in file order.
+     */
+    private final Field orderBy;
+    /**
+     * Whether to sort the lines in descending instead of ascending order.
+     */
+    private final boolean descending;
+    /**
+     * The history past lines are read from, or null to list the current lines.
+     */
+    private final ChangeHistory history;
+    /**
+     * The sequence number of the change to list the lines as of, if listing past lines by change.
+     */
+    private final long asOfSequence;
+    /**
+     * The point in time to list the lines as of, or null to list past lines by change.
+     */
+    private final Instant asOfTime;
+    /**
+     * The snapshot listed in file order by the steps in progress, or null if there is none.
+     */
+    private Snapshot snapshot;
+    /**
+     * The lines listed by the steps in progress, or null if no step has run.
+     */
+    private List<String> rowsToList;
+    /**
+     * The number of lines listed by the steps so far.
+     */
+    private int listedCount;
 
     /**
      * Constructs a ListCommand with the specified FileEditor.
@@ -21,17 +62,148 @@ public class ListCommand implements Command {
      * @param fileEditor The FileEditor instance used to list the contents of the file.
      */
     public ListCommand(FileEditor fileEditor) {
+        this(fileEditor, null, false);
+    }
+
+    /**
+     * Constructs a ListCommand that lists the lines sorted by a field.
+     *
+     * @param fileEditor The FileEditor instance used to list the contents of the file.
+     * @param orderBy The field to sort the lines by, or null to list them in file order.
+     * @param descending Whether to sort in descending instead of ascending order.
+     */
+    public ListCommand(FileEditor fileEditor, Field orderBy, boolean descending) {
+        this(fileEditor, orderBy, descending, null, 0, null);
+    }
+
+    /**
+     * Constructs a ListCommand that lists the lines as they were right after a past change.
+     *
+     * @param fileEditor The FileEditor instance whose changes the history records.
+     * @param history The history of the file.
+     * @param sequence The sequence number of the change.
+     */
+    public ListCommand(FileEditor fileEditor, ChangeHistory history, long sequence) {
+        this(fileEditor, null, false, history, sequence, null);
+    }
+
+    /**
+     * Constructs a ListCommand that lists the lines as they were at a past point in time.
+     *
+     * @param fileEditor The FileEditor instance whose changes the history records.
+     * @param history The history of the file.
+     * @param time The point in time.
+     */
+    public ListCommand(FileEditor fileEditor, ChangeHistory history, Instant time) {
+        this(fileEditor, null, false, history, 0, time);
+    }
+
+    /**
+     * Constructs a ListCommand.
+     *
+     * @param fileEditor The FileEditor instance used to list the contents of the file.
+     * @param orderBy The field to sort the lines by, or null to list them in file order.
+     * @param descending Whether to sort in descending instead of ascending order.
+     * @param history The history past lines are read from, or null to list the current lines.
+     * @param asOfSequence The sequence number of the change to list the lines as of.
+     * @param asOfTime The point in time to list the lines as of, or null to list them as of the change.
+     */
+    private ListCommand(FileEditor fileEditor, Field orderBy, boolean descending, ChangeHistory history,
+                        long asOfSequence, Instant asOfTime) {
         this.fileEditor = fileEditor;
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.history = history;
+        this.asOfSequence = asOfSequence;
+        this.asOfTime = asOfTime;
     }
 
     /**
-     * Executes the command to list the lines of the file by invoking the FileEditor's method.
+     * Executes the command to list the lines of the file by invoking the FileEditor's method, or by reading them
+     * from the history when listing past lines.
      *
      * @throws CustomException if an error occurs during listing the file contents.
+     * @throws IOException if the history cannot be read.
+     */
+    @Override
+    public void execute() throws CustomException, IOException {
+        if (history != null) {
+            cancel();
+            executeStep(Integer.MAX_VALUE);
+        }
+        else if (orderBy == null) {
+            this.fileEditor.getLines();
+        }
+        else {
+            this.fileEditor.getLines(orderBy, descending);
+        }
+    }
+
+    /**
+     * Lists the next lines. The first step pins a snapshot of the lines, or sorts them when listing by a field,
+     * and every step prints the following lines of that same view, so changes made between steps do not show.
+     * Past lines are read from the history by the first step, as an immutable version that later changes leave as
+     * it is.
+     *
+     * @param maxRows The maximum number of lines to print in this step.
+     * @return true if every line has been listed, false if more steps remain.
+     * @throws CustomException if there are no lines to display.
+     * @throws IOException if the history cannot be read.
+     */
+    @Override
+    public boolean executeStep(int maxRows) throws CustomException, IOException {
+        if (rowsToList == null) {
+            if (history != null) {
+                rowsToList = asOfTime == null ? history.linesAt(asOfSequence) : history.linesAt(asOfTime);
+            }
+            else if (orderBy == null) {
+                snapshot = this.fileEditor.openSnapshot();
+                rowsToList = snapshot.getLines();
+            }
+            else {
+                rowsToList = this.fileEditor.query(new Query(null, Query.NO_LIMIT, orderBy, descending)).getRows();
+            }
+            if (rowsToList.isEmpty()) {
+                cancel();
+                throw new CustomException("There are no lines to display.");
+            }
+            if (history != null) {
+                System.out.println("Lines as of " + (asOfTime == null ? "change " + asOfSequence : asOfTime) + ":");
+            }
+        }
+
+        int end = (int) Math.min(rowsToList.size(), (long) listedCount + maxRows);
+        for (; listedCount < end; listedCount++) {
+            System.out.println(rowsToList.get(listedCount));
+        }
+        if (listedCount < rowsToList.size()) {
+            return false;
+        }
+        cancel();
+        return true;
+    }
+
+    /**
+     * Gets how long the next step should wait before it runs. Listing never waits.
+     *
+     * @return Always 0.
+     */
+    @Override
+    public long nanosUntilNextStep() {
+        return 0;
+    }
+
+    /**
+     * Releases the view listed by the steps in progress, so that the next step starts a new listing.
      */
     @Override
-    public void execute() throws CustomException {
-        this.fileEditor.getLines();
+    public void cancel() {
+        if (snapshot != null) {
+            snapshot.close();
+            snapshot = null;
+        }
+        rowsToList = null;
+        listedCount = 0;
     }
 
     /**
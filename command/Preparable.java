@@ -0,0 +1,18 @@
+package command;
+
+/**
+ * The Preparable interface is implemented by commands whose input can be validated and normalized ahead of
+ * execution, without reading or changing the file. The Invoker prepares the commands of a batch in parallel, so
+ * that executing them only applies the prepared result to the lines and writes the file.
+ * <p>
+ * Preparing never throws: a command whose input is invalid keeps the failure and throws it from execute, at the
+ * point where unprepared execution would have, so results and error messages do not depend on preparation.
+ */
+public interface Preparable {
+
+    /**
+     * Validates and normalizes the command's input. It must be safe to call concurrently with the preparation of
+     * other commands.
+     */
+    void prepare();
+}
@@ -0,0 +1,192 @@
+package command;
+
+import exceptions.CustomException;
+import receiver.FileEditor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The RedoCommand class implements the Command interface and provides the functionality
+ * to execute again the commands most recently reverted by {@link UndoCommand}, taking them from the redo stack.
+ * The redo stack is cleared whenever a new command changes the lines, as the undone commands no longer apply.
+ */
+public class RedoCommand implements Command {
+
+    /**
+     * The FileEditor instance the redone commands operate on, or null to redo a single command directly.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The number of commands to redo.
+     */
+    private final int steps;
+    /**
+     * The commands executed again by the last execution of this RedoCommand, in the order they were executed.
+     */
+    private final List<Command> redone = new ArrayList<>();
+
+    /**
+     * Default constructor redoes a single command.
+     */
+    public RedoCommand() {
+        this.fileEditor = null;
+        this.steps = 1;
+    }
+
+    /**
+     * Constructs a RedoCommand that redoes the given number of commands. The commands are applied to the
+     * FileEditor's lines in memory inside a transaction, and the file is written once at the end.
+     *
+     * @param fileEditor The FileEditor instance the redone commands operate on.
+     * @param steps The number of commands to redo.
+     * @throws IllegalArgumentException if the number of steps is not positive.
+     */
+    public RedoCommand(FileEditor fileEditor, int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Number of redo steps must be positive: " + steps);
+        }
+        this.fileEditor = fileEditor;
+        this.steps = steps;
+    }
+
+    /**
+     * Executes the redo operation by popping the most recently undone commands from the redo stack
+     * and executing them again. A multi-step redo runs inside a transaction of its own unless it is part of an
+     * enclosing one. If executing any of the commands fails, none of them are redone and the redo stack is left
+     * unchanged: inside an enclosing transaction, the commands already redone are undone again instead of rolling
+     * the whole transaction back.
+     *
+     * @throws CustomException if the redo history is empty or an application-specific error occurs.
+     * @throws IOException     if an I/O error occurs during the redo operation.
+     */
+    @Override
+    public void execute() throws CustomException, IOException {
+        if (UndoCommand.redoHistory.isEmpty()) {
+            throw new CustomException("Redo history is empty. Nothing to redo.");
+        }
+        redone.clear();
+        if (fileEditor == null) {
+            redoTop();
+            return;
+        }
+
+        int count = Math.min(steps, UndoCommand.redoHistory.size());
+        boolean ownTransaction = !fileEditor.isInTransaction();
+        if (ownTransaction) {
+            fileEditor.beginTransaction();
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                redoTop();
+            }
+            if (ownTransaction) {
+                fileEditor.commitTransaction();
+            }
+        }
+        catch (CustomException | IOException | RuntimeException e) {
+            if (!ownTransaction) {
+                revertRedone(e);  // The enclosing transaction must not be rolled back as a whole
+            }
+            else if (fileEditor.isInTransaction()) {
+                fileEditor.rollbackTransaction();
+            }
+            returnToRedoHistory();
+            throw e;
+        }
+        System.out.println("Redo: Reapplied " + count + " commands.");
+    }
+
+    /**
+     * Undoes the commands this RedoCommand executed again, in reverse order, and puts them back on the redo stack.
+     * A multi-step redo is undone inside a transaction of its own unless it is part of an enclosing one, and if
+     * undoing any of the commands fails, none of them are undone and the redo stack is left unchanged.
+     * The redone commands are kept afterwards, so that the undo can be repeated if an enclosing multi-step undo
+     * is rolled back and puts this RedoCommand back on the history.
+     *
+     * @throws CustomException if an application-specific error occurs.
+     * @throws IOException     if an I/O error occurs during the undo operation.
+     */
+    @Override
+    public void undo() throws CustomException, IOException {
+        boolean ownTransaction = fileEditor != null && !fileEditor.isInTransaction();
+        int redoSize = UndoCommand.redoHistory.size();
+        if (ownTransaction) {
+            fileEditor.beginTransaction();
+        }
+
+        try {
+            for (int i = redone.size() - 1; i >= 0; i--) {
+                redone.get(i).undo();
+                UndoCommand.redoHistory.push(redone.get(i));
+            }
+            if (ownTransaction) {
+                fileEditor.commitTransaction();
+            }
+        }
+        catch (CustomException | IOException | RuntimeException e) {
+            if (ownTransaction && fileEditor.isInTransaction()) {
+                fileEditor.rollbackTransaction();
+            }
+            UndoCommand.redoHistory.setSize(redoSize);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of commands this RedoCommand redoes.
+     *
+     * @return The number of steps.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Pops the most recently undone command from the redo stack and executes it again. If the command fails,
+     * it is put back on the redo stack.
+     *
+     * @throws CustomException if an application-specific error occurs.
+     * @throws IOException     if an I/O error occurs during the redo operation.
+     */
+    private void redoTop() throws CustomException, IOException {
+        Command topCommand = UndoCommand.redoHistory.pop();
+        try {
+            topCommand.execute();
+        }
+        catch (CustomException | IOException | RuntimeException e) {
+            UndoCommand.redoHistory.push(topCommand);
+            throw e;
+        }
+        redone.add(topCommand);
+    }
+
+    /**
+     * Undoes the commands redone so far, in reverse order, after a failed multi-step redo inside an enclosing
+     * transaction.
+     *
+     * @param failure The failure of the redo, to which any failure of the undo is added as suppressed.
+     */
+    private void revertRedone(Exception failure) {
+        for (int i = redone.size() - 1; i >= 0; i--) {
+            try {
+                redone.get(i).undo();
+            }
+            catch (CustomException | IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Puts the commands redone so far back on the redo stack after a failed multi-step redo, in their original order.
+     */
+    private void returnToRedoHistory() {
+        for (int i = redone.size() - 1; i >= 0; i--) {
+            UndoCommand.redoHistory.push(redone.get(i));
+        }
+        redone.clear();
+    }
+}
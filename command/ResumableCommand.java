@@ -0,0 +1,35 @@
+package command;
+
+import exceptions.CustomException;
+import java.io.IOException;
+
+/**
+ * The ResumableCommand interface is implemented by commands that scan many lines and can do so in steps, so that
+ * a scheduler can run short operations between the steps instead of making them wait for the whole scan.
+ * Every step continues from where the previous one stopped, over the same consistent view of the lines.
+ */
+public interface ResumableCommand extends Command {
+
+    /**
+     * Runs the next step of the command.
+     *
+     * @param maxRows The maximum number of lines to process in this step.
+     * @return true if the command has finished, false if more steps remain.
+     * @throws CustomException if there are application-specific errors during execution.
+     * @throws IOException if there is an I/O error during the execution.
+     */
+    boolean executeStep(int maxRows) throws CustomException, IOException;
+
+    /**
+     * Gets how long the next step should wait before it runs, so that a scheduler can run other commands or stay
+     * idle meanwhile, instead of the step blocking the thread that runs it.
+     *
+     * @return The wait in nanoseconds, or 0 if the next step can run now.
+     */
+    long nanosUntilNextStep();
+
+    /**
+     * Abandons the remaining steps of a command that has started, releasing what it holds.
+     */
+    void cancel();
+}
@@ -0,0 +1,171 @@
+package command;
+
+import exceptions.CustomException;
+import receiver.CorruptRecord;
+import receiver.FileEditor;
+import receiver.StoreScrubber;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ScrubCommand class implements the ResumableCommand interface and verifies the checksum of every record the
+ * data store holds on disk, reporting the corrupt ones and optionally repairing the store. Scheduled as a
+ * {@code BATCH} command it runs in steps in the background, reading at a throttled rate so that other commands
+ * keep most of the device's bandwidth.
+ */
+public class ScrubCommand implements ResumableCommand {
+
+    /**
+     * The default maximum number of bytes read per second.
+     */
+    public static final long DEFAULT_BYTES_PER_SECOND = 8L * 1024 * 1024;
+
+    /**
+     * The FileEditor instance.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The maximum number of bytes read per second.
+     */
+    private final long bytesPerSecond;
+    /**
+     * Whether to repair the store once corrupt records are found, rather than only report them.
+     */
+    private final boolean repair;
+    /**
+     * The scrubber of the steps in progress, or null if no step has run.
+     */
+    private StoreScrubber scrubber;
+
+    /**
+     * Constructs a ScrubCommand that reports corrupt records, reading at the default rate.
+     *
+     * @param fileEditor The FileEditor instance whose store is scrubbed.
+     */
+    public ScrubCommand(FileEditor fileEditor) {
+        this(fileEditor, DEFAULT_BYTES_PER_SECOND, false);
+    }
+
+    /**
+     * Constructs a ScrubCommand.
+     *
+     * @param fileEditor The FileEditor instance whose store is scrubbed.
+     * @param bytesPerSecond The maximum number of bytes read per second.
+     * @param repair Whether to repair the store once corrupt records are found, rather than only report them.
+     */
+    public ScrubCommand(FileEditor fileEditor, long bytesPerSecond, boolean repair) {
+        this.fileEditor = fileEditor;
+        this.bytesPerSecond = bytesPerSecond;
+        this.repair = repair;
+    }
+
+    /**
+     * Executes the command, scrubbing the whole store at once, waiting between reads to keep to the rate.
+     *
+     * @throws IOException if the store cannot be read or repaired, or if the thread is interrupted while waiting.
+     */
+    @Override
+    public void execute() throws IOException {
+        cancel();
+        while (!executeStep(Integer.MAX_VALUE)) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanosUntilNextStep());
+            }
+            catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Scrub interrupted.");
+            }
+        }
+    }
+
+    /**
+     * Scrubs the next rows of the store. The first step opens the store as it is then, and the last one reports
+     * the corrupt records and repairs the store if asked to. A step ends early, without waiting, once the next
+     * read would exceed the rate; {@link #nanosUntilNextStep()} then tells when the next step may run.
+     *
+     * @param maxRows The maximum number of rows to scrub in this step.
+     * @return true if the whole store has been scrubbed, false if more steps remain.
+     * @throws IOException if the store cannot be read or repaired.
+     */
+    @Override
+    public boolean executeStep(int maxRows) throws IOException {
+        try {
+            if (scrubber == null) {
+                scrubber = this.fileEditor.openScrubber(bytesPerSecond);
+            }
+            if (!scrubber.scrub(maxRows)) {
+                return false;
+            }
+            report(scrubber.getScrubbedRows(), scrubber.getScrubbedBytes(), scrubber.getCorruptRecords());
+        }
+        catch (IOException e) {
+            cancel();
+            throw e;
+        }
+
+        List<CorruptRecord> corruptRecords = scrubber.getCorruptRecords();
+        cancel();
+        if (repair && !corruptRecords.isEmpty()) {
+            int repaired = this.fileEditor.repairCorruptRecords(corruptRecords);
+            System.out.println("Repaired " + repaired + " corrupt record(s).");
+        }
+        return true;
+    }
+
+    /**
+     * Gets how long the next step should wait before it runs to keep reads within the rate.
+     *
+     * @return The wait in nanoseconds, or 0 if the next step can run now.
+     */
+    @Override
+    public long nanosUntilNextStep() {
+        return scrubber == null ? 0 : scrubber.nanosUntilNextRead();
+    }
+
+    /**
+     * Abandons the scrub in progress, closing the store it reads.
+     */
+    @Override
+    public void cancel() {
+        if (scrubber != null) {
+            try {
+                scrubber.close();
+            }
+            catch (IOException ignored) {
+                // Nothing was written through the scrubber, so there is nothing to lose
+            }
+            scrubber = null;
+        }
+    }
+
+    /**
+     * Undo operation for the ScrubCommand, which is not supported as a repair cannot be reversed.
+     *
+     * @throws CustomException to indicate that the Scrub command cannot be undone.
+     */
+    @Override
+    public void undo() throws CustomException {
+        throw new CustomException("Scrub command is not undoable.");
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Prints the outcome of a finished scrub.
+     *
+     * @param rows The number of rows scrubbed.
+     * @param bytes The number of bytes read.
+     * @param corruptRecords The corrupt records found.
+     */
+    private static void report(int rows, long bytes, List<CorruptRecord> corruptRecords) {
+        System.out.println("Scrubbed " + rows + " rows (" + bytes + " bytes): " + corruptRecords.size()
+                + " corrupt record(s) found.");
+        for (CorruptRecord record : corruptRecords) {
+            System.out.println("Corrupt record: " + record);
+        }
+    }
+}
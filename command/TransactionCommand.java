@@ -0,0 +1,193 @@
+package command;
+
+import exceptions.CustomException;
+import receiver.FileEditor;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The TransactionCommand class implements the Command interface and executes a group of commands as a single unit.
+ * The commands are applied to the FileEditor's lines in memory inside a transaction, and the file is written once
+ * when all of them have succeeded. If any command fails, the lines are rolled back to their state before the
+ * transaction in one step, without undoing the commands that already ran, and nothing is written to the file.
+ * Undoing or redoing the group as one step of a multi-step undo or redo joins that enclosing transaction instead.
+ */
+public class TransactionCommand implements Command, Preparable {
+
+    /**
+     * The FileEditor instance.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The commands to execute, in order.
+     */
+    private final List<Command> commands;
+
+    /**
+     * Constructs a TransactionCommand that executes the given commands against the FileEditor as one unit.
+     *
+     * @param fileEditor The FileEditor instance the commands operate on.
+     * @param commands The commands to execute, in order.
+     * @throws IllegalArgumentException if a command is an UndoCommand, as it acts on the shared command history
+     * rather than on this group.
+     */
+    public TransactionCommand(FileEditor fileEditor, List<Command> commands) {
+        for (Command cmd : commands) {
+            if (cmd instanceof UndoCommand) {
+                throw new IllegalArgumentException("Undo commands cannot be part of a transaction.");
+            }
+        }
+        this.fileEditor = fileEditor;
+        this.commands = List.copyOf(commands);
+    }
+
+    /**
+     * Constructs a TransactionCommand that executes the given commands against the FileEditor as one unit.
+     *
+     * @param fileEditor The FileEditor instance the commands operate on.
+     * @param commands The commands to execute, in order.
+     * @throws IllegalArgumentException if a command is an UndoCommand.
+     */
+    public TransactionCommand(FileEditor fileEditor, Command... commands) {
+        this(fileEditor, List.of(commands));
+    }
+
+    /**
+     * Executes every command in a transaction and commits it with a single write to the file. Inside an enclosing
+     * transaction, such as a multi-step undo or a script chunk, the commands join it instead and are written when
+     * it commits. If any command fails, its changes are reverted and the failure is rethrown unchanged: an own
+     * transaction is rolled back, while inside an enclosing one the commands that already ran are undone again.
+     *
+     * @throws CustomException if a command fails with an application-specific error.
+     * @throws IOException if a command fails or the commit fails with an I/O error.
+     */
+    @Override
+    public void execute() throws CustomException, IOException {
+        boolean ownTransaction = !fileEditor.isInTransaction();
+        if (ownTransaction) {
+            fileEditor.beginTransaction();
+        }
+        int executed = 0;
+        try {
+            for (Command cmd : commands) {
+                cmd.execute();
+                executed++;
+            }
+            if (ownTransaction) {
+                fileEditor.commitTransaction();
+            }
+        }
+        catch (CustomException | IOException | RuntimeException e) {
+            if (!ownTransaction) {
+                undoFirst(executed, e);  // The enclosing transaction must not be rolled back as a whole
+            }
+            else if (fileEditor.isInTransaction()) {
+                fileEditor.rollbackTransaction();
+            }
+            throw e;
+        }
+        System.out.println("Transaction committed: " + commands.size() + " commands.");
+    }
+
+    /**
+     * Undoes every command in reverse order in a transaction, committing the result with a single write. Inside
+     * an enclosing transaction the undo joins it instead. If any undo fails, its changes are reverted and the
+     * failure is rethrown unchanged: an own transaction is rolled back, while inside an enclosing one the
+     * commands already undone are executed again.
+     *
+     * @throws CustomException if an undo fails with an application-specific error.
+     * @throws IOException if an undo fails or the commit fails with an I/O error.
+     */
+    @Override
+    public void undo() throws CustomException, IOException {
+        boolean ownTransaction = !fileEditor.isInTransaction();
+        if (ownTransaction) {
+            fileEditor.beginTransaction();
+        }
+        int firstUndone = commands.size();
+        try {
+            for (; firstUndone > 0; firstUndone--) {
+                if (!(commands.get(firstUndone - 1) instanceof ListCommand)) {
+                    commands.get(firstUndone - 1).undo(); // Listing changes nothing, so there is nothing to revert
+                }
+            }
+            if (ownTransaction) {
+                fileEditor.commitTransaction();
+            }
+        }
+        catch (CustomException | IOException | RuntimeException e) {
+            if (!ownTransaction) {
+                redoFrom(firstUndone, e);  // The enclosing transaction must not be rolled back as a whole
+            }
+            else if (fileEditor.isInTransaction()) {
+                fileEditor.rollbackTransaction();
+            }
+            throw e;
+        }
+        System.out.println("Undo transaction: Reverted " + commands.size() + " commands.");
+    }
+
+    /**
+     * Prepares every command of the transaction that can be prepared.
+     */
+    @Override
+    public void prepare() {
+        for (Command cmd : commands) {
+            if (cmd instanceof Preparable preparable) {
+                preparable.prepare();
+            }
+        }
+    }
+
+    /**
+     * Gets the commands executed by this transaction.
+     *
+     * @return The commands, in order.
+     */
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Undoes the first commands of the group in reverse order, after a failed execution inside an enclosing
+     * transaction.
+     *
+     * @param count The number of commands that were executed.
+     * @param failure The failure of the execution, to which any failure of the undo is added as suppressed.
+     */
+    private void undoFirst(int count, Exception failure) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (commands.get(i) instanceof ListCommand) {
+                continue;
+            }
+            try {
+                commands.get(i).undo();
+            }
+            catch (CustomException | IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Executes the last commands of the group again in order, after a failed undo inside an enclosing transaction.
+     *
+     * @param first The position of the first command that was undone.
+     * @param failure The failure of the undo, to which any failure of the execution is added as suppressed.
+     */
+    private void redoFrom(int first, Exception failure) {
+        for (int i = first; i < commands.size(); i++) {
+            if (commands.get(i) instanceof ListCommand) {
+                continue;
+            }
+            try {
+                commands.get(i).execute();
+            }
+            catch (CustomException | IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+}
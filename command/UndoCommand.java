@@ -1,13 +1,15 @@
 package command;
 
 import exceptions.CustomException;
+import receiver.FileEditor;
 import java.io.IOException;
 import java.util.NoSuchElementException;
 import java.util.Stack;
 
 /**
  * The UndoCommand class implements the Command interface and provides the functionality
- * to undo the last executed command. It uses a stack to keep track of the command history.
+ * to undo the last executed commands. It uses a stack to keep track of the command history,
+ * and moves every command it undoes onto a redo stack so that {@link RedoCommand} can apply it again.
  */
 public class UndoCommand implements Command {
 
@@ -15,16 +17,53 @@ public class UndoCommand implements Command {
      * A static stack to keep track of the command history for undo operations.
      */
     public final static Stack<Command> commandHistory = new Stack<>();
+    /**
+     * A static stack of the commands that have been undone, most recently undone on top, for redo operations.
+     */
+    public final static Stack<Command> redoHistory = new Stack<>();
+
+    /**
+     * The commands popped from the history by the multi-step undo in progress, or null if there is none.
+     */
+    private static Stack<Command> popped;
 
     /**
-     * Default constructor does nothing.
+     * The FileEditor instance the undone commands operate on, or null to undo a single command directly.
+     */
+    private final FileEditor fileEditor;
+    /**
+     * The number of commands to undo.
+     */
+    private final int steps;
+
+    /**
+     * Default constructor undoes a single command.
      */
     public UndoCommand() {
+        this.fileEditor = null;
+        this.steps = 1;
     }
 
     /**
-     * Executes the undo operation by popping the last command from the history stack
-     * and calling its undo method. This action reverses the effect of the last command executed.
+     * Constructs an UndoCommand that undoes the given number of commands. The inverse operations are applied to the
+     * FileEditor's lines in memory inside a transaction, and the file is written once at the end.
+     *
+     * @param fileEditor The FileEditor instance the undone commands operate on.
+     * @param steps The number of commands to undo.
+     * @throws IllegalArgumentException if the number of steps is not positive.
+     */
+    public UndoCommand(FileEditor fileEditor, int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Number of undo steps must be positive: " + steps);
+        }
+        this.fileEditor = fileEditor;
+        this.steps = steps;
+    }
+
+    /**
+     * Executes the undo operation by popping the last commands from the history stack
+     * and calling their undo methods. This action reverses the effect of the last commands executed.
+     * If undoing any of the commands fails, none of them are undone and the history is left unchanged.
      *
      * @throws CustomException           if the command history is empty or an application-specific error occurs.
      * @throws IOException               if an I/O error occurs during the undo operation.
@@ -38,9 +77,41 @@ public class UndoCommand implements Command {
         if (commandHistory.isEmpty()) {
             throw new CustomException("Command history is empty. Nothing to undo.");
         }
+        if (fileEditor == null) {
+            undoTop();
+            return;
+        }
 
-        Command topCommand = commandHistory.pop();
-        topCommand.undo();
+        int count = Math.min(steps, commandHistory.size());
+        if (fileEditor.isInTransaction()) {
+            // Already part of an enclosing multi-step undo, which persists and restores the stacks for us
+            for (int i = 0; i < count && !commandHistory.isEmpty(); i++) {
+                undoTop();
+            }
+            return;
+        }
+
+        int redoSize = redoHistory.size();
+        popped = new Stack<>();
+        fileEditor.beginTransaction();
+        try {
+            for (int i = 0; i < count && !commandHistory.isEmpty(); i++) {
+                undoTop();
+            }
+        }
+        catch (CustomException | IOException | RuntimeException e) {
+            fileEditor.rollbackTransaction();
+            redoHistory.setSize(redoSize);
+            while (!popped.isEmpty()) {
+                commandHistory.push(popped.pop());
+            }
+            throw e;
+        }
+        finally {
+            popped = null;
+        }
+        fileEditor.commitTransaction();
+        System.out.println("Undo: Reverted " + count + " commands.");
     }
 
     /**
@@ -52,10 +123,36 @@ public class UndoCommand implements Command {
      */
     @Override
     public void undo() throws CustomException, IOException {
-        if (commandHistory.isEmpty()) {
-            throw new CustomException("Command history is empty. Nothing to undo.");
-        }
+        execute();
+    }
+
+    /**
+     * Gets the number of commands this UndoCommand undoes.
+     *
+     * @return The number of steps.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Pops the last command from the history stack and undoes it, recording it on the redo stack.
+     * Undo and redo commands are not recorded themselves, as undoing them already moves the commands they
+     * acted on between the stacks.
+     *
+     * @throws CustomException if an application-specific error occurs.
+     * @throws IOException     if an I/O error occurs during the undo operation.
+     */
+    private static void undoTop() throws CustomException, IOException {
         Command topCommand = commandHistory.pop();
+        if (popped != null) {
+            popped.push(topCommand);
+        }
         topCommand.undo();
+        if (!(topCommand instanceof UndoCommand) && !(topCommand instanceof RedoCommand)) {
+            redoHistory.push(topCommand);
+        }
     }
 }
@@ -2,13 +2,14 @@ package command;
 
 import exceptions.CustomException;
 import receiver.FileEditor;
+import receiver.PreparedUpdate;
 import java.io.IOException;
 
 /**
  * The UpdateCommand class implements the Command interface, handling the update of content within a file.
  * It allows updating a specific line in the file and supports undoing the operation by restoring the original content.
  */
-public class UpdateCommand implements Command {
+public class UpdateCommand implements Command, Preparable {
     /**
      * The FileEditor instance used to perform file operations like updating content.
      */
@@ -29,6 +30,17 @@ public class UpdateCommand implements Command {
      */
     private String beforeUpdatedLine;
 
+    /**
+     * The validated and formatted fields to update, or null if the command has not been prepared or its input
+     * is invalid.
+     */
+    private PreparedUpdate preparedUpdate;
+
+    /**
+     * The failure found while preparing the command, or null if there was none.
+     */
+    private RuntimeException preparationFailure;
+
     /**
      * Constructs an UpdateCommand to update a line specified in the inputString in the file managed by fileEditor.
      * The line number to update is extracted from the inputString and converted to a zero-based index.
@@ -57,7 +69,72 @@ public class UpdateCommand implements Command {
         if (this.beforeUpdatedLine == null) {
             throw new IndexOutOfBoundsException("No line found at index: " + index);
         }
-        this.fileEditor.updateAction(index, inputString);
+        if (preparationFailure != null) {
+            throw preparationFailure;
+        }
+        if (preparedUpdate != null) {
+            this.fileEditor.applyPreparedUpdate(index, preparedUpdate);
+        }
+        else {
+            this.fileEditor.updateAction(index, inputString);
+        }
+    }
+
+    /**
+     * Records this command as executed on a line without changing the file, as when the invoker folds it into a
+     * later update of the same line in the same batch. It must only be called on a prepared and valid command.
+     *
+     * @param beforeLine The line before this command, restored when it is undone.
+     * @return The line after this command.
+     */
+    public String skip(String beforeLine) {
+        this.beforeUpdatedLine = beforeLine;
+        return this.fileEditor.formatUpdatedLine(beforeLine, preparedUpdate);
+    }
+
+    /**
+     * Executes this command as the last of several updates of the same line folded together by the invoker,
+     * writing the line they leave behind at once. It must only be called on a prepared and valid command.
+     *
+     * @param beforeLine The line before this command, as left by the updates folded into it.
+     * @throws IOException if an I/O error occurs during file access.
+     * @throws IndexOutOfBoundsException if the index is out of the file's bounds.
+     */
+    public void executeFrom(String beforeLine) throws IOException, IndexOutOfBoundsException {
+        this.fileEditor.applyUpdatedLine(index, skip(beforeLine));
+    }
+
+    /**
+     * Checks whether the command has been prepared and its input is valid, in which case executing it can only
+     * fail when the index is out of bounds or when writing the file.
+     *
+     * @return true if the command is prepared and valid, false otherwise.
+     */
+    public boolean isPreparedAndValid() {
+        return preparedUpdate != null;
+    }
+
+    /**
+     * Gets the zero-based index of the line this command updates.
+     *
+     * @return The index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Validates and formats the new content ahead of execution, keeping the prepared fields or the failure.
+     * The index is still checked first when the command executes.
+     */
+    @Override
+    public void prepare() {
+        try {
+            preparedUpdate = this.fileEditor.prepareUpdate(inputString);
+        }
+        catch (RuntimeException e) {
+            preparationFailure = e;
+        }
     }
 
     /**
@@ -0,0 +1,238 @@
+package invoker;
+
+import command.Command;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AdmissionController class sits in front of an Invoker and decides which submitted commands are queued for
+ * execution. Every client or session has its own {@link TokenBucket}, so one client bursting cannot starve the
+ * others, and admitted commands wait in a bounded queue, so the memory held by pending commands stays fixed under
+ * any load. A command that is not admitted is rejected explicitly, with the reason and how long to back off,
+ * instead of piling up and delaying everything behind it.
+ * <p>
+ * Submitting is safe from any number of threads, while the commands are drained by the thread running the Invoker.
+ */
+public class AdmissionController {
+
+    /**
+     * The outcomes of submitting a command.
+     */
+    public enum Admission {
+        /**
+         * The command was queued for execution.
+         */
+        ACCEPTED,
+        /**
+         * The client has exceeded its rate, and should retry after {@link #getRetryAfterMillis(String)}.
+         */
+        RATE_LIMITED,
+        /**
+         * The queue of pending commands is full, and the client should back off.
+         */
+        QUEUE_FULL
+    }
+
+    /**
+     * The maximum number of client buckets kept, above which the least recently used one is discarded.
+     */
+    public static final int MAX_TRACKED_CLIENTS = 10_000;
+
+    /**
+     * The commands admitted and not yet executed.
+     */
+    private final BlockingQueue<Command> queue;
+    /**
+     * The bucket of every client in access order, least recently used first, guarded by its own lock.
+     */
+    private final LinkedHashMap<String, TokenBucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The largest burst of commands admitted from one client.
+     */
+    private final int burst;
+    /**
+     * The sustained number of commands per second admitted from one client.
+     */
+    private final double commandsPerSecond;
+    /**
+     * The number of commands admitted.
+     */
+    private final AtomicLong acceptedCount = new AtomicLong();
+    /**
+     * The number of commands rejected because their client exceeded its rate.
+     */
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+    /**
+     * The number of commands rejected because the queue was full.
+     */
+    private final AtomicLong queueFullCount = new AtomicLong();
+
+    /**
+     * Constructs an AdmissionController.
+     *
+     * @param queueCapacity The maximum number of commands waiting for execution.
+     * @param burst The largest burst of commands admitted from one client.
+     * @param commandsPerSecond The sustained number of commands per second admitted from one client.
+     * @throws IllegalArgumentException if any limit is not positive.
+     */
+    public AdmissionController(int queueCapacity, int burst, double commandsPerSecond) {
+        if (queueCapacity <= 0 || burst <= 0 || commandsPerSecond <= 0) {
+            throw new IllegalArgumentException("Admission limits must be positive.");
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.burst = burst;
+        this.commandsPerSecond = commandsPerSecond;
+    }
+
+    /**
+     * Submits a command without waiting.
+     *
+     * @param clientId The id of the client or session submitting the command.
+     * @param command The command.
+     * @return Whether the command was admitted, or why it was rejected.
+     */
+    public Admission submit(String clientId, Command command) {
+        long now = System.nanoTime();
+        TokenBucket bucket = bucketOf(clientId, now);
+        if (!bucket.tryAcquire(now)) {
+            rateLimitedCount.incrementAndGet();
+            return Admission.RATE_LIMITED;
+        }
+        if (!queue.offer(command)) {
+            bucket.release(now);
+            queueFullCount.incrementAndGet();
+            return Admission.QUEUE_FULL;
+        }
+        acceptedCount.incrementAndGet();
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * Submits a command, waiting up to a timeout for the client's rate and for room in the queue. This applies
+     * backpressure to a client that submits faster than commands are admitted or executed.
+     *
+     * @param clientId The id of the client or session submitting the command.
+     * @param command The command.
+     * @param timeoutMillis The maximum time to wait in milliseconds.
+     * @return Whether the command was admitted, or why it was rejected when the timeout passed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public Admission submit(String clientId, Command command, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        TokenBucket bucket = bucketOf(clientId, System.nanoTime());
+        long now;
+        while (!bucket.tryAcquire(now = System.nanoTime())) {
+            long waitMillis = Math.min(bucket.millisUntilAvailable(now), TimeUnit.NANOSECONDS.toMillis(deadline - now));
+            if (now >= deadline) {
+                rateLimitedCount.incrementAndGet();
+                return Admission.RATE_LIMITED;
+            }
+            Thread.sleep(Math.max(1, waitMillis));
+        }
+
+        if (!queue.offer(command, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            bucket.release(System.nanoTime());
+            queueFullCount.incrementAndGet();
+            return Admission.QUEUE_FULL;
+        }
+        acceptedCount.incrementAndGet();
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * Computes how long a client should wait before its next command can be admitted.
+     *
+     * @param clientId The id of the client or session.
+     * @return The wait in milliseconds, or 0 if a command would be admitted now.
+     */
+    public long getRetryAfterMillis(String clientId) {
+        TokenBucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.get(clientId);
+        }
+        return bucket == null ? 0 : bucket.millisUntilAvailable(System.nanoTime());
+    }
+
+    /**
+     * Moves admitted commands to a list, in the order they were admitted.
+     *
+     * @param target The list to add the commands to.
+     * @param maxCommands The maximum number of commands to move.
+     * @return The number of commands moved.
+     */
+    public int drainTo(List<Command> target, int maxCommands) {
+        return queue.drainTo(target, maxCommands);
+    }
+
+    /**
+     * Gets the number of commands admitted and not yet drained.
+     *
+     * @return The number of queued commands.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of commands admitted.
+     *
+     * @return The number of commands.
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * Gets the number of commands rejected because their client exceeded its rate.
+     *
+     * @return The number of commands.
+     */
+    public long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    /**
+     * Gets the number of commands rejected because the queue was full.
+     *
+     * @return The number of commands.
+     */
+    public long getQueueFullCount() {
+        return queueFullCount.get();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Gets the bucket of a client, creating it full for a new client. Once {@value #MAX_TRACKED_CLIENTS} clients
+     * are tracked, the least recently used bucket is discarded in constant time for each new one. It has gone
+     * unused the longest, so it has most likely refilled and a new bucket for its client would be identical.
+     *
+     * @param clientId The id of the client or session.
+     * @param nowNanos The current time, from {@link System#nanoTime()}.
+     * @return The bucket.
+     */
+    private TokenBucket bucketOf(String clientId, long nowNanos) {
+        synchronized (buckets) {
+            TokenBucket bucket = buckets.get(clientId);
+            if (bucket != null) {
+                return bucket;
+            }
+            bucket = new TokenBucket(burst, commandsPerSecond, nowNanos);
+            buckets.put(clientId, bucket);
+
+            Iterator<Map.Entry<String, TokenBucket>> eldest = buckets.entrySet().iterator();
+            while (buckets.size() > MAX_TRACKED_CLIENTS) {
+                eldest.next();
+                eldest.remove();
+            }
+            return bucket;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package invoker;
+
+import java.util.Arrays;
+
+/**
+ * The DedupTable class remembers the idempotency keys of recently executed requests for a time window, in a
+ * fixed amount of memory. Keys and their timestamps live in two primitive arrays used as an open-addressing hash
+ * table, so a check costs a few array reads and creates no objects however high the request rate is.
+ * <p>
+ * A key is forgotten once its window has passed, and its slot is reused by later keys. When every slot near a
+ * new key still holds a live key, the oldest of them is evicted early, so the table stays bounded under any load;
+ * the capacity should cover the number of requests expected within one window.
+ */
+public class DedupTable {
+
+    /**
+     * The default number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /**
+     * The default time a key is remembered, in milliseconds.
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 10 * 60 * 1000;
+    /**
+     * The number of slots examined for each key.
+     */
+    private static final int MAX_PROBES = 16;
+
+    /**
+     * The key held by every slot.
+     */
+    private final long[] keys;
+    /**
+     * The time every slot's key was recorded, in milliseconds since the epoch, or 0 for a slot never used.
+     */
+    private final long[] recordedAt;
+    /**
+     * The mask used to map a hash to a slot.
+     */
+    private final int mask;
+    /**
+     * The time a key is remembered, in milliseconds.
+     */
+    private final long windowMillis;
+
+    /**
+     * Constructs a DedupTable with the default capacity and window.
+     */
+    public DedupTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * Constructs a DedupTable with at least the specified number of slots, rounded up to a power of two.
+     *
+     * @param capacity The minimum number of slots.
+     * @param windowMillis The time a key is remembered, in milliseconds.
+     * @throws IllegalArgumentException if the capacity or the window is not positive.
+     */
+    public DedupTable(int capacity, long windowMillis) {
+        if (capacity <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Dedup table capacity and window must be positive.");
+        }
+        int size = Math.max(MAX_PROBES, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.keys = new long[size];
+        this.recordedAt = new long[size];
+        this.mask = size - 1;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Checks whether a key was recorded within the window.
+     *
+     * @param key The idempotency key.
+     * @param nowMillis The current time in milliseconds since the epoch.
+     * @return true if the key is a duplicate, false otherwise.
+     */
+    public synchronized boolean contains(long key, long nowMillis) {
+        int slot = slotOf(key);
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+            if (recordedAt[slot] == 0) {
+                return false; // Keys are never placed past a slot that was never used
+            }
+            if (keys[slot] == key && isLive(slot, nowMillis)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a key, starting its window at the given time.
+     *
+     * @param key The idempotency key.
+     * @param nowMillis The current time in milliseconds since the epoch.
+     */
+    public synchronized void record(long key, long nowMillis) {
+        int slot = slotOf(key);
+        int oldest = slot;
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+            if (recordedAt[slot] == 0 || keys[slot] == key || !isLive(slot, nowMillis)) {
+                oldest = slot;
+                break;
+            }
+            if (recordedAt[slot] < recordedAt[oldest]) {
+                oldest = slot;
+            }
+        }
+        keys[oldest] = key;
+        recordedAt[oldest] = Math.max(1, nowMillis);
+    }
+
+    /**
+     * Forgets every key.
+     */
+    public synchronized void clear() {
+        Arrays.fill(recordedAt, 0);
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Checks whether a slot holds a key recorded within the window.
+     *
+     * @param slot The slot.
+     * @param nowMillis The current time in milliseconds since the epoch.
+     * @return true if the key is still remembered, false otherwise.
+     */
+    private boolean isLive(int slot, long nowMillis) {
+        return nowMillis - recordedAt[slot] < windowMillis;
+    }
+
+    /**
+     * Finds the first slot a key may occupy.
+     *
+     * @param key The key.
+     * @return The slot.
+     */
+    private int slotOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
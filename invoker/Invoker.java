@@ -1,13 +1,33 @@
 package invoker;
 
+import command.AddCommand;
 import command.Command;
+import command.DeleteCommand;
+import command.FilterCommand;
+import command.FuzzySearchCommand;
+import command.GetLineCommand;
+import command.IdempotentCommand;
+import command.ListCommand;
+import command.Preparable;
+import command.RedoCommand;
+import command.ResumableCommand;
+import command.UndoCommand;
+import command.UpdateCommand;
 import exceptions.CustomException;
+import receiver.FileEditor;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Invoker class is responsible for executing a series of commands and managing the command history.
@@ -15,15 +35,64 @@ import java.util.Stack;
  */
 public class Invoker {
 
+    /**
+     * The number of preparable commands in a batch from which they are prepared in parallel.
+     */
+    public static final int PARALLEL_PREPARE_THRESHOLD = 256;
+
+    /**
+     * The timeout meaning that a scheduled command has no deadline.
+     */
+    public static final long NO_DEADLINE = -1;
+
+    /**
+     * The number of lines a scan processes in each scheduled step.
+     */
+    public static final int SCAN_STEP_ROWS = 4096;
+
     /**
      * A list to store commands that are to be executed.
      */
     private final ArrayList<Command> commandsToExecute = new ArrayList<>();
 
+    /**
+     * The idempotency keys of the requests executed recently.
+     */
+    private DedupTable dedupTable = new DedupTable();
+
+    /**
+     * The idempotency keys executed in the open transaction, recorded in the dedup table once it commits, or null
+     * if keys are recorded as soon as their command succeeds.
+     */
+    private Set<Long> deferredKeys;
+
+    /**
+     * The FileEditor the commands operate on when the command list is coalesced, or null if it is not.
+     */
+    private FileEditor coalescingEditor;
+
+    /**
+     * The admission controller commands are submitted through, or null if there is none.
+     */
+    private AdmissionController admissionController;
+
+    /**
+     * The queue of scheduled commands of every priority class, highest first.
+     */
+    private final Map<Priority, ArrayDeque<ScheduledCommand>> scheduled = new EnumMap<>(Priority.class);
+
+    /**
+     * The scheduled commands whose next step must not run yet, guarded by the lock of {@link #scheduled}.
+     */
+    private final List<ScheduledCommand> delayed = new ArrayList<>();
+
     /**
      * Default constructor does nothing.
      */
     public Invoker () {
+        for (Priority priority : Priority.values()) {
+            scheduled.put(priority, new ArrayDeque<>());
+        }
     }
 
     /**
@@ -35,31 +104,694 @@ public class Invoker {
         this.commandsToExecute.addAll(Arrays.asList(commands));
     }
 
+    /**
+     * Turns on coalescing of the command list before execution, or turns it off. While on, a change immediately
+     * reverted by a single-step undo is dropped with the undo, an add immediately followed by a delete of the
+     * added line is dropped with the delete, consecutive updates of the same line are written as one, and runs of
+     * adds, updates, deletes and reads against the FileEditor are executed in one transaction each, writing the
+     * file once per run. The lines, the undo history and the redo history end up exactly as without coalescing.
+     *
+     * @param fileEditor The FileEditor every command operates on, or null to turn coalescing off.
+     */
+    public void setCoalescing(FileEditor fileEditor) {
+        this.coalescingEditor = fileEditor;
+    }
+
+    /**
+     * Schedules a command without a deadline, to be run by {@link #runScheduled(Stack)}. It may be called from
+     * any thread, including while scheduled commands are running.
+     *
+     * @param command The command.
+     * @param priority The priority class of the command.
+     */
+    public void schedule(Command command, Priority priority) {
+        schedule(command, priority, NO_DEADLINE);
+    }
+
+    /**
+     * Schedules a command with a deadline, to be run by {@link #runScheduled(Stack)}. A command still waiting when
+     * its deadline passes is dropped, and a scan that has started is abandoned at its next step. It may be called
+     * from any thread, including while scheduled commands are running.
+     *
+     * @param command The command.
+     * @param priority The priority class of the command.
+     * @param timeoutMillis The time from now after which the command is dropped, in milliseconds, or
+     * {@link #NO_DEADLINE}.
+     */
+    public void schedule(Command command, Priority priority, long timeoutMillis) {
+        boolean hasDeadline = timeoutMillis != NO_DEADLINE;
+        long deadline = hasDeadline ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        enqueueScheduled(new ScheduledCommand(command, priority, hasDeadline, deadline));
+    }
+
+    /**
+     * Runs scheduled commands until none is waiting. The next command is always taken from the highest priority
+     * class with one waiting. A {@link ResumableCommand} runs one step of {@value #SCAN_STEP_ROWS} lines at a time
+     * and then goes back to the end of its queue, so short operations scheduled meanwhile run between its steps.
+     * A command whose next step must wait, such as a throttled scrub, is set aside until then, and the other
+     * commands keep running; once only such commands remain, this waits for the earliest of them, or for a new
+     * command to be scheduled. If the thread is interrupted while waiting, this returns with the interrupt flag
+     * set and the remaining commands still scheduled.
+     * A command is recorded in the history once it finishes, like one run by {@link #executeCommand(Stack)}.
+     *
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @return The number of commands that finished, successfully or not, excluding the ones dropped.
+     */
+    public int runScheduled(Stack<Command> commandHistory) {
+        int finished = 0;
+        ScheduledCommand entry;
+        while ((entry = pollScheduled()) != null) {
+            if (entry.isPastDeadline(System.nanoTime())) {
+                if (entry.started && entry.command instanceof ResumableCommand resumable) {
+                    resumable.cancel();
+                }
+                System.out.println("Dropped command past its deadline: " + entry.command.getClass().getSimpleName());
+                continue;
+            }
+
+            if (!(entry.command instanceof ResumableCommand resumable)) {
+                executeOne(entry.command, commandHistory);
+                finished++;
+                continue;
+            }
+            try {
+                entry.started = true;
+                if (!resumable.executeStep(SCAN_STEP_ROWS)) {
+                    delayScheduled(entry, resumable.nanosUntilNextStep());
+                    continue;
+                }
+                recordExecuted(resumable, commandHistory);
+            }
+            catch (Exception e) {
+                resumable.cancel();
+                reportFailure(e);
+            }
+            finished++;
+        }
+        return finished;
+    }
+
+    /**
+     * Sets the admission controller that commands are submitted through with {@link #submit(String, Command)}
+     * and drained from by {@link #executeAdmitted(Stack, int)}.
+     *
+     * @param admissionController The admission controller, or null to remove it.
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * Submits a command through the admission controller without waiting. It may be called from any thread.
+     *
+     * @param clientId The id of the client or session submitting the command.
+     * @param command The command.
+     * @return Whether the command was admitted, or why it was rejected.
+     * @throws IllegalStateException if no admission controller is set.
+     */
+    public AdmissionController.Admission submit(String clientId, Command command) {
+        if (admissionController == null) {
+            throw new IllegalStateException("No admission controller is set.");
+        }
+        return admissionController.submit(clientId, command);
+    }
+
+    /**
+     * Executes up to a number of the commands admitted by the admission controller, in the order they were
+     * admitted, as one batch.
+     *
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @param maxCommands The maximum number of commands to execute.
+     * @return The number of commands executed.
+     * @throws IllegalStateException if no admission controller is set.
+     */
+    public int executeAdmitted(Stack<Command> commandHistory, int maxCommands) {
+        if (admissionController == null) {
+            throw new IllegalStateException("No admission controller is set.");
+        }
+        int count = admissionController.drainTo(commandsToExecute, maxCommands);
+        executeCommand(commandHistory);
+        return count;
+    }
+
+    /**
+     * Sets the table remembering the idempotency keys of executed requests, replacing the default one holding
+     * {@value DedupTable#DEFAULT_CAPACITY} keys for ten minutes.
+     *
+     * @param dedupTable The dedup table.
+     */
+    public void setDedupTable(DedupTable dedupTable) {
+        this.dedupTable = dedupTable;
+    }
+
     /**
      * Executes all commands stored in the command list and maintains a history of executed commands
-     * to support undo operations.
+     * to support undo operations. A command that changes the lines clears the redo history.
+     * The commands that can be prepared are validated and normalized first, in parallel for large batches,
+     * so that executing them in order only applies the changes and writes the file. An {@link IdempotentCommand}
+     * whose key was executed successfully within the dedup window is skipped.
      *
      * @param commandHistory A stack to store the history of executed commands for undo functionality.
      */
     public void executeCommand(Stack<Command> commandHistory) {
-        for (Command cmd : commandsToExecute) {
+        try {
+            prepareCommands();
+            if (coalescingEditor == null) {
+                for (Command cmd : commandsToExecute) {
+                    executeOne(cmd, commandHistory);
+                }
+            }
+            else {
+                executeCoalesced(commandHistory);
+            }
+        }
+        finally {
+            commandsToExecute.clear();  // Clear the list after execution to avoid re-executing the same commands
+        }
+    }
+
+    /**
+     * Executes all commands stored in the command list like {@link #executeCommand(Stack)}, in one transaction of
+     * the FileEditor unless one is already open. If the transaction cannot be written, or executing the commands
+     * fails unexpectedly, the lines are rolled back, the history and the redo history are restored, and the
+     * idempotency keys of the commands are not recorded, so that the same requests can be executed again.
+     * An unexpected failure is then rethrown.
+     *
+     * @param fileEditor The FileEditor every command operates on.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @throws IOException if the transaction cannot be written to the file.
+     */
+    public void executeInTransaction(FileEditor fileEditor, Stack<Command> commandHistory) throws IOException {
+        if (fileEditor.isInTransaction()) {
+            executeCommand(commandHistory);  // The enclosing transaction decides what is kept
+            return;
+        }
+
+        List<Command> history = new ArrayList<>(commandHistory);
+        List<Command> redoHistory = new ArrayList<>(UndoCommand.redoHistory);
+        deferredKeys = new HashSet<>();
+        try {
+            fileEditor.beginTransaction();
             try {
-                cmd.execute();
-                commandHistory.push(cmd);
-            } catch (CustomException e) {
-                System.out.println("Failed to execute command: " + e.getMessage());
-            } catch (IOException e) {
-                System.out.println("Failed at IO: " + e.getMessage());
-            } catch (IndexOutOfBoundsException e) {
-                System.out.println("Invalid index input: " + e.getMessage());
-            } catch (IllegalArgumentException e) {
-                System.out.println("Invalid input: " + e.getMessage());
-            } catch (NoSuchElementException e) {
-                System.out.println("No element exists: " + e.getMessage());
-            } catch (Exception e) {
-                System.out.println("Error: " + e.getMessage());
-            }
-        }
-        commandsToExecute.clear();  // Clear the list after execution to avoid re-executing the same commands
+                executeCommand(commandHistory);
+                fileEditor.commitTransaction();
+            }
+            catch (IOException e) {
+                restoreHistory(commandHistory, history, redoHistory);
+                throw e;
+            }
+            catch (RuntimeException e) {
+                if (fileEditor.isInTransaction()) {
+                    try {
+                        fileEditor.rollbackTransaction();
+                    }
+                    catch (IOException rollbackFailure) {
+                        e.addSuppressed(rollbackFailure);
+                    }
+                }
+                restoreHistory(commandHistory, history, redoHistory);
+                throw e;
+            }
+            recordDeferredKeys();
+        }
+        finally {
+            deferredKeys = null;
+        }
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Executes a single command, recording it in the history if it succeeds and reporting its failure otherwise.
+     *
+     * @param cmd The command.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     */
+    private void executeOne(Command cmd, Stack<Command> commandHistory) {
+        try {
+            if (cmd instanceof IdempotentCommand idempotent && isDuplicate(idempotent.getKey())) {
+                System.out.println("Skipped duplicate request: " + Long.toHexString(idempotent.getKey()));
+                return;
+            }
+            cmd.execute();
+            if (cmd instanceof IdempotentCommand idempotent) {
+                if (deferredKeys != null) {
+                    deferredKeys.add(idempotent.getKey());
+                }
+                else {
+                    dedupTable.record(idempotent.getKey(), System.currentTimeMillis());
+                }
+            }
+            recordExecuted(cmd, commandHistory);
+        } catch (Exception e) {
+            reportFailure(e);
+        }
+    }
+
+    /**
+     * Records a command that has finished successfully in the history. A command that changes the lines clears
+     * the redo history.
+     *
+     * @param cmd The command.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     */
+    private static void recordExecuted(Command cmd, Stack<Command> commandHistory) {
+        commandHistory.push(cmd);
+        if (!(cmd instanceof UndoCommand || cmd instanceof RedoCommand || isReadOnly(cmd))) {
+            UndoCommand.redoHistory.clear();  // A new change invalidates the commands that were undone
+        }
+    }
+
+    /**
+     * Checks whether a request was executed within the dedup window, or earlier in the open transaction.
+     *
+     * @param key The idempotency key of the request.
+     * @return true if the request is a duplicate, false otherwise.
+     */
+    private boolean isDuplicate(long key) {
+        return (deferredKeys != null && deferredKeys.contains(key))
+                || dedupTable.contains(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Records the idempotency keys executed in a transaction that has committed.
+     */
+    private void recordDeferredKeys() {
+        long now = System.currentTimeMillis();
+        for (long key : deferredKeys) {
+            dedupTable.record(key, now);
+        }
+    }
+
+    /**
+     * Puts the history and the redo history back as they were before a transaction that could not be written.
+     *
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @param history The contents of the history before the transaction.
+     * @param redoHistory The contents of the redo history before the transaction.
+     */
+    private static void restoreHistory(Stack<Command> commandHistory, List<Command> history,
+                                       List<Command> redoHistory) {
+        commandHistory.clear();
+        commandHistory.addAll(history);
+        UndoCommand.redoHistory.clear();
+        UndoCommand.redoHistory.addAll(redoHistory);
+    }
+
+    /**
+     * Reports why a command failed.
+     *
+     * @param e The failure.
+     */
+    private static void reportFailure(Exception e) {
+        if (e instanceof CustomException) {
+            System.out.println("Failed to execute command: " + e.getMessage());
+        } else if (e instanceof IOException) {
+            System.out.println("Failed at IO: " + e.getMessage());
+        } else if (e instanceof IndexOutOfBoundsException) {
+            System.out.println("Invalid index input: " + e.getMessage());
+        } else if (e instanceof IllegalArgumentException) {
+            System.out.println("Invalid input: " + e.getMessage());
+        } else if (e instanceof NoSuchElementException) {
+            System.out.println("No element exists: " + e.getMessage());
+        } else {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the next scheduled command of the highest priority class that has one ready to run, waiting for a
+     * delayed command to become ready if no other command is waiting.
+     *
+     * @return The scheduled command, or null if none is waiting or the thread was interrupted while waiting.
+     */
+    private ScheduledCommand pollScheduled() {
+        synchronized (scheduled) {
+            while (true) {
+                long now = System.nanoTime();
+                long waitNanos = Long.MAX_VALUE;
+                for (int i = delayed.size() - 1; i >= 0; i--) {
+                    long remaining = delayed.get(i).notBeforeNanos - now;
+                    if (remaining <= 0) {
+                        ScheduledCommand ready = delayed.remove(i);
+                        scheduled.get(ready.priority).add(ready);
+                    }
+                    else {
+                        waitNanos = Math.min(waitNanos, remaining);
+                    }
+                }
+
+                for (ArrayDeque<ScheduledCommand> queue : scheduled.values()) {
+                    if (!queue.isEmpty()) {
+                        return queue.poll();
+                    }
+                }
+                if (delayed.isEmpty()) {
+                    return null;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(scheduled, waitNanos);  // Woken early by a new command
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a scheduled command to the end of the queue of its priority class.
+     *
+     * @param entry The scheduled command.
+     */
+    private void enqueueScheduled(ScheduledCommand entry) {
+        synchronized (scheduled) {
+            scheduled.get(entry.priority).add(entry);
+            scheduled.notifyAll();
+        }
+    }
+
+    /**
+     * Puts a scheduled command back to run its next step once a wait has passed, or right away at the end of
+     * its queue if there is no wait.
+     *
+     * @param entry The scheduled command.
+     * @param waitNanos The time to wait before the next step, in nanoseconds.
+     */
+    private void delayScheduled(ScheduledCommand entry, long waitNanos) {
+        if (waitNanos <= 0) {
+            enqueueScheduled(entry);
+            return;
+        }
+        synchronized (scheduled) {
+            entry.notBeforeNanos = System.nanoTime() + waitNanos;
+            delayed.add(entry);
+        }
+    }
+
+    /**
+     * The ScheduledCommand class holds a command waiting in the queue of its priority class, with its deadline.
+     */
+    private static final class ScheduledCommand {
+        /**
+         * The command.
+         */
+        private final Command command;
+        /**
+         * The priority class of the command.
+         */
+        private final Priority priority;
+        /**
+         * Whether the command is dropped once its deadline passes.
+         */
+        private final boolean hasDeadline;
+        /**
+         * The time after which the command is dropped, from {@link System#nanoTime()}, if it has a deadline.
+         */
+        private final long deadlineNanos;
+        /**
+         * Whether a step of the command has run.
+         */
+        private boolean started;
+        /**
+         * The time before which the next step of the command must not run, from {@link System#nanoTime()}, while
+         * the command is delayed.
+         */
+        private long notBeforeNanos;
+
+        /**
+         * Constructs a ScheduledCommand.
+         *
+         * @param command The command.
+         * @param priority The priority class of the command.
+         * @param hasDeadline Whether the command is dropped once its deadline passes.
+         * @param deadlineNanos The time after which the command is dropped, from {@link System#nanoTime()}, if it
+         * has a deadline.
+         */
+        private ScheduledCommand(Command command, Priority priority, boolean hasDeadline, long deadlineNanos) {
+            this.command = command;
+            this.priority = priority;
+            this.hasDeadline = hasDeadline;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Checks whether the deadline of the command has passed. A command without a deadline is never past it,
+         * whatever value {@link System#nanoTime()} has.
+         *
+         * @param nowNanos The current time, from {@link System#nanoTime()}.
+         * @return true if the command must be dropped, false otherwise.
+         */
+        private boolean isPastDeadline(long nowNanos) {
+            return hasDeadline && nowNanos - deadlineNanos > 0;
+        }
+    }
+
+    /**
+     * Executes the command list after rewriting it into less work with the same outcome. A change immediately
+     * reverted by a single-step undo or an add immediately deleted is dropped together with what reverts it,
+     * consecutive updates of the same line are written as one, and every other run of adds, updates, deletes and
+     * reads is executed in one transaction, so the file is written once for the whole run.
+     *
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     */
+    private void executeCoalesced(Stack<Command> commandHistory) {
+        int i = 0;
+        while (i < commandsToExecute.size()) {
+            int runEnd = i;
+            int changes = 0;
+            while (runEnd < commandsToExecute.size() && isCoalescable(commandsToExecute.get(runEnd))) {
+                if (!isReadOnly(commandsToExecute.get(runEnd))) {
+                    changes++;
+                }
+                runEnd++;
+            }
+
+            if (runEnd == i) {
+                executeOne(commandsToExecute.get(i), commandHistory);
+                i++;
+            }
+            else if (changes < 2 || coalescingEditor.isInTransaction()) {
+                while (i < runEnd) {
+                    i = executeFolded(i, runEnd, commandHistory);
+                }
+            }
+            else {
+                i = executeRun(i, runEnd, commandHistory);
+            }
+        }
+    }
+
+    /**
+     * Executes a run of commands in one transaction. If the transaction cannot be written, or folding the commands
+     * fails unexpectedly, the lines are rolled back, the commands of the run are removed from the history again,
+     * and their idempotency keys are not recorded. An unexpected failure is then rethrown.
+     *
+     * @param start The position of the first command of the run.
+     * @param end The position after the last command of the run.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @return The position of the next command to execute, past an undo dropped with the last command of the run.
+     */
+    private int executeRun(int start, int end, Stack<Command> commandHistory) {
+        List<Command> history = new ArrayList<>(commandHistory);
+        List<Command> redoHistory = new ArrayList<>(UndoCommand.redoHistory);
+        deferredKeys = new HashSet<>();
+
+        coalescingEditor.beginTransaction();
+        int i = start;
+        try {
+            while (i < end) {
+                i = executeFolded(i, end, commandHistory);
+            }
+
+            coalescingEditor.commitTransaction();
+            recordDeferredKeys();
+        }
+        catch (IOException e) {
+            restoreHistory(commandHistory, history, redoHistory);
+            System.out.println("Failed at IO: " + e.getMessage() + " (" + (i - start) + " commands rolled back)");
+        }
+        catch (RuntimeException e) {
+            if (coalescingEditor.isInTransaction()) {
+                try {
+                    coalescingEditor.rollbackTransaction();
+                }
+                catch (IOException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+            }
+            restoreHistory(commandHistory, history, redoHistory);
+            throw e;
+        }
+        finally {
+            deferredKeys = null;
+        }
+        return i;
+    }
+
+    /**
+     * Executes the command at a position of a run, folded with the commands right after it when that is certain
+     * to leave the same outcome: a change is dropped with a single-step undo after it, an add is dropped with a
+     * delete of the added line after it, and consecutive updates of the same line are written as one.
+     *
+     * @param position The position of the command in the command list.
+     * @param end The position after the last command of the run.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @return The position of the next command to execute.
+     */
+    private int executeFolded(int position, int end, Stack<Command> commandHistory) {
+        if (cancelWithNextUndo(position, commandHistory) || cancelAddWithDelete(position, end, commandHistory)) {
+            return position + 2;
+        }
+        int next = mergeUpdates(position, end, commandHistory);
+        if (next > position) {
+            return next;
+        }
+        executeOne(commandsToExecute.get(position), commandHistory);
+        return position + 1;
+    }
+
+    /**
+     * Drops a change together with the single-step undo right after it, if the change is certain to succeed,
+     * leaving the lines untouched and the command stacks as executing both would have: the change on the redo
+     * stack and the undo on the history.
+     *
+     * @param position The position of the change in the command list.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @return true if the pair was dropped, false if it must be executed.
+     */
+    private boolean cancelWithNextUndo(int position, Stack<Command> commandHistory) {
+        if (position + 1 >= commandsToExecute.size() || commandHistory != UndoCommand.commandHistory
+                || !(commandsToExecute.get(position + 1) instanceof UndoCommand undo) || undo.getSteps() != 1) {
+            return false;
+        }
+
+        Command cmd = commandsToExecute.get(position);
+        boolean certain = false;
+        if (cmd instanceof AddCommand add) {
+            certain = add.isPreparedAndValid();
+        }
+        else if (cmd instanceof UpdateCommand update && update.isPreparedAndValid()) {
+            String line = coalescingEditor.getLineAtIndex(update.getIndex());
+            certain = line != null && line.split(" ").length >= 3;
+        }
+        if (!certain) {
+            return false;
+        }
+
+        UndoCommand.redoHistory.clear();
+        UndoCommand.redoHistory.push(cmd);
+        commandHistory.push(undo);
+        System.out.println("Coalesced a change with the undo that follows it.");
+        return true;
+    }
+
+    /**
+     * Drops an add together with a delete of the added line right after it, if the add is certain to succeed,
+     * leaving the lines untouched and the command stacks as executing both would have.
+     *
+     * @param position The position of the add in the command list.
+     * @param end The position after the last command of the run.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @return true if the pair was dropped, false if it must be executed.
+     */
+    private boolean cancelAddWithDelete(int position, int end, Stack<Command> commandHistory) {
+        if (position + 1 >= end || !(commandsToExecute.get(position) instanceof AddCommand add)
+                || !add.isPreparedAndValid() || !(commandsToExecute.get(position + 1) instanceof DeleteCommand delete)
+                || delete.getIndex() != coalescingEditor.getLinesSize()) {
+            return false;
+        }
+
+        delete.skip(add.getPreparedLine());
+        commandHistory.push(add);
+        commandHistory.push(delete);
+        UndoCommand.redoHistory.clear();
+        System.out.println("Coalesced an add with the delete that follows it.");
+        return true;
+    }
+
+    /**
+     * Writes consecutive updates of the same line as one, if they are certain to succeed. Every update is still
+     * recorded in the history with the line it replaced, so that each of them can be undone on its own.
+     *
+     * @param position The position of the first update in the command list.
+     * @param end The position after the last command of the run.
+     * @param commandHistory A stack to store the history of executed commands for undo functionality.
+     * @return The position after the last update merged, or the given position if there is nothing to merge.
+     */
+    private int mergeUpdates(int position, int end, Stack<Command> commandHistory) {
+        if (!(commandsToExecute.get(position) instanceof UpdateCommand first) || !first.isPreparedAndValid()) {
+            return position;
+        }
+        int last = position;
+        while (last + 1 < end && commandsToExecute.get(last + 1) instanceof UpdateCommand next
+                && next.isPreparedAndValid() && next.getIndex() == first.getIndex()) {
+            last++;
+        }
+        String line = coalescingEditor.getLineAtIndex(first.getIndex());
+        if (last == position || line == null || line.split(" ").length < 3) {
+            return position;
+        }
+
+        for (int i = position; i < last; i++) {
+            line = ((UpdateCommand) commandsToExecute.get(i)).skip(line);
+        }
+        try {
+            ((UpdateCommand) commandsToExecute.get(last)).executeFrom(line);
+        }
+        catch (Exception e) {
+            reportFailure(e);
+            return last + 1;
+        }
+
+        for (int i = position; i <= last; i++) {
+            commandHistory.push(commandsToExecute.get(i));
+        }
+        UndoCommand.redoHistory.clear();  // A new change invalidates the commands that were undone
+        System.out.println("Coalesced " + (last - position + 1) + " updates of the same line.");
+        return last + 1;
+    }
+
+    /**
+     * Checks whether a command can be part of a run executed in one transaction.
+     *
+     * @param cmd The command.
+     * @return true for adds, updates, deletes and read-only commands, false otherwise.
+     */
+    private static boolean isCoalescable(Command cmd) {
+        return cmd instanceof AddCommand || cmd instanceof UpdateCommand || cmd instanceof DeleteCommand
+                || isReadOnly(cmd);
+    }
+
+    /**
+     * Checks whether a command only reads the lines.
+     *
+     * @param cmd The command.
+     * @return true for listing, filtering, searching and line reading commands, false otherwise.
+     */
+    private static boolean isReadOnly(Command cmd) {
+        return cmd instanceof ListCommand || cmd instanceof FilterCommand || cmd instanceof FuzzySearchCommand
+                || cmd instanceof GetLineCommand;
+    }
+
+    /**
+     * Prepares every command of the list that can be prepared, spreading them across cores when there are at
+     * least {@value #PARALLEL_PREPARE_THRESHOLD}. Failures are kept by the commands and reported when they execute.
+     */
+    private void prepareCommands() {
+        List<Preparable> preparables = new ArrayList<>();
+        for (Command cmd : commandsToExecute) {
+            if (cmd instanceof Preparable preparable) {
+                preparables.add(preparable);
+            }
+        }
+
+        if (preparables.size() >= PARALLEL_PREPARE_THRESHOLD) {
+            preparables.parallelStream().forEach(Preparable::prepare);
+        }
+        else {
+            preparables.forEach(Preparable::prepare);
+        }
     }
 }
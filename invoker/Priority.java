@@ -0,0 +1,20 @@
+package invoker;
+
+/**
+ * The priority classes of scheduled commands. A scheduling Invoker always runs the next command or scan step of
+ * the highest class that has one waiting.
+ */
+public enum Priority {
+    /**
+     * Short operations a user is waiting for, such as reading a line or a search.
+     */
+    INTERACTIVE,
+    /**
+     * Ordinary changes and reads.
+     */
+    NORMAL,
+    /**
+     * Large scans and bulk work, which run when nothing else is waiting.
+     */
+    BATCH
+}
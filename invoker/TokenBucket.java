@@ -0,0 +1,94 @@
+package invoker;
+
+/**
+ * The TokenBucket class limits the rate of requests from one client. The bucket holds up to a fixed number of
+ * tokens and refills continuously at a fixed rate; each admitted request takes one token, so a client may burst up
+ * to the capacity and is then held to the refill rate.
+ */
+public class TokenBucket {
+
+    /**
+     * The maximum number of tokens.
+     */
+    private final double capacity;
+    /**
+     * The number of tokens added per nanosecond.
+     */
+    private final double tokensPerNano;
+    /**
+     * The number of tokens currently available.
+     */
+    private double tokens;
+    /**
+     * The time the tokens were last refilled, from {@link System#nanoTime()}.
+     */
+    private long refilledAt;
+
+    /**
+     * Constructs a full TokenBucket.
+     *
+     * @param capacity The maximum number of tokens, which is the largest burst admitted.
+     * @param tokensPerSecond The number of tokens added per second, which is the sustained rate admitted.
+     * @param nowNanos The current time, from {@link System#nanoTime()}.
+     * @throws IllegalArgumentException if the capacity or the rate is not positive.
+     */
+    public TokenBucket(int capacity, double tokensPerSecond, long nowNanos) {
+        if (capacity <= 0 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Token bucket capacity and rate must be positive.");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.tokens = capacity;
+        this.refilledAt = nowNanos;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @param nowNanos The current time, from {@link System#nanoTime()}.
+     * @return true if a token was taken, false if the bucket is empty.
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Returns a token taken by a request that was not admitted after all.
+     *
+     * @param nowNanos The current time, from {@link System#nanoTime()}.
+     */
+    public synchronized void release(long nowNanos) {
+        refill(nowNanos);
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    /**
+     * Computes how long until a token is available.
+     *
+     * @param nowNanos The current time, from {@link System#nanoTime()}.
+     * @return The wait in milliseconds, or 0 if a token is available now.
+     */
+    public synchronized long millisUntilAvailable(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano / 1e6);
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Adds the tokens earned since the last refill.
+     *
+     * @param nowNanos The current time, from {@link System#nanoTime()}.
+     */
+    private void refill(long nowNanos) {
+        if (nowNanos > refilledAt) {
+            tokens = Math.min(capacity, tokens + (nowNanos - refilledAt) * tokensPerNano);
+            refilledAt = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package query;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The AndPredicate class is satisfied by rows satisfying all of its operands.
+ */
+public class AndPredicate implements Predicate {
+
+    /**
+     * The operands, all of which must be satisfied.
+     */
+    private final List<Predicate> operands;
+
+    /**
+     * Constructs an AndPredicate.
+     *
+     * @param operands The operands, all of which must be satisfied.
+     */
+    public AndPredicate(List<Predicate> operands) {
+        this.operands = List.copyOf(operands);
+    }
+
+    /**
+     * Tests whether a row satisfies all operands, stopping at the first one it does not satisfy.
+     *
+     * @param row The row.
+     * @return true if the row satisfies every operand, false otherwise.
+     */
+    @Override
+    public boolean test(String row) {
+        for (Predicate operand : operands) {
+            if (!operand.test(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the operands.
+     *
+     * @return The operands, all of which must be satisfied.
+     */
+    public List<Predicate> getOperands() {
+        return operands;
+    }
+
+    /**
+     * Returns the predicate in the query language.
+     *
+     * @return The predicate.
+     */
+    @Override
+    public String toString() {
+        return operands.stream().map(Object::toString).collect(Collectors.joining(" and ", "(", ")"));
+    }
+}
@@ -0,0 +1,161 @@
+package query;
+
+/**
+ * The Comparison class is a predicate comparing one field of a row with a value, ignoring case.
+ */
+public class Comparison implements Predicate {
+
+    /**
+     * The ways a field can be compared with a value.
+     */
+    public enum Operator {
+        /**
+         * The field equals the value.
+         */
+        EQUALS("="),
+        /**
+         * The field does not equal the value.
+         */
+        NOT_EQUALS("!="),
+        /**
+         * The field starts with the value.
+         */
+        STARTS_WITH("startsWith"),
+        /**
+         * The field ends with the value.
+         */
+        ENDS_WITH("endsWith"),
+        /**
+         * The field contains the value.
+         */
+        CONTAINS("contains");
+
+        /**
+         * The symbol or keyword of the operator in the query language.
+         */
+        private final String symbol;
+
+        /**
+         * Constructs an Operator.
+         *
+         * @param symbol The symbol or keyword of the operator in the query language.
+         */
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Gets the symbol or keyword of the operator in the query language.
+         *
+         * @return The symbol.
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Finds the operator with the given symbol or keyword, ignoring the case of keywords.
+         *
+         * @param symbol The symbol or keyword.
+         * @return The operator, or null if there is none.
+         */
+        public static Operator fromSymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equalsIgnoreCase(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The field compared.
+     */
+    private final Field field;
+    /**
+     * The comparison made.
+     */
+    private final Operator operator;
+    /**
+     * The value compared with, normalized for case-insensitive comparison.
+     */
+    private final String value;
+
+    /**
+     * Constructs a Comparison.
+     *
+     * @param field The field compared.
+     * @param operator The comparison made.
+     * @param value The value compared with.
+     */
+    public Comparison(Field field, Operator operator, String value) {
+        this.field = field;
+        this.operator = operator;
+        this.value = Field.normalize(value);
+    }
+
+    /**
+     * Tests whether the field of a row compares with the value as required.
+     *
+     * @param row The row.
+     * @return true if the row satisfies the comparison, false otherwise.
+     */
+    @Override
+    public boolean test(String row) {
+        return matches(field.extractKey(row));
+    }
+
+    /**
+     * Tests whether a normalized field value compares with the value as required.
+     *
+     * @param key The normalized value of the field.
+     * @return true if the value satisfies the comparison, false otherwise.
+     */
+    public boolean matches(String key) {
+        return switch (operator) {
+            case EQUALS -> key.equals(value);
+            case NOT_EQUALS -> !key.equals(value);
+            case STARTS_WITH -> key.startsWith(value);
+            case ENDS_WITH -> key.endsWith(value);
+            case CONTAINS -> key.contains(value);
+        };
+    }
+
+    /**
+     * Gets the field compared.
+     *
+     * @return The field.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Gets the comparison made.
+     *
+     * @return The operator.
+     */
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * Gets the value compared with, normalized for case-insensitive comparison.
+     *
+     * @return The normalized value.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the comparison in the query language.
+     *
+     * @return The comparison.
+     */
+    @Override
+    public String toString() {
+        return field.getQueryName() + " " + operator.getSymbol() + " \"" + value + "\"";
+    }
+}
@@ -0,0 +1,106 @@
+package query;
+
+import java.util.Locale;
+
+/**
+ * The Field enum lists the fields of a row that queries can refer to. A row holds a first name, a last name and an
+ * email separated by spaces; the first word is the first name, the last word is the email, and anything in between
+ * is the last name. The email domain is derived from the email.
+ */
+public enum Field {
+    /**
+     * The first name.
+     */
+    FIRST_NAME("firstName"),
+    /**
+     * The last name.
+     */
+    LAST_NAME("lastName"),
+    /**
+     * The email, or the free text entered in its place.
+     */
+    EMAIL("email"),
+    /**
+     * The part of the email after the '@', or an empty string if the email has none.
+     */
+    EMAIL_DOMAIN("emailDomain");
+
+    /**
+     * The name of the field in the query language.
+     */
+    private final String queryName;
+
+    /**
+     * Constructs a Field.
+     *
+     * @param queryName The name of the field in the query language.
+     */
+    Field(String queryName) {
+        this.queryName = queryName;
+    }
+
+    /**
+     * Gets the name of the field in the query language.
+     *
+     * @return The query name.
+     */
+    public String getQueryName() {
+        return queryName;
+    }
+
+    /**
+     * Extracts the value of this field from a row.
+     *
+     * @param row The row.
+     * @return The value of the field, or an empty string if the row does not have it.
+     */
+    public String extract(String row) {
+        int firstSpace = row.indexOf(' ');
+        int lastSpace = row.lastIndexOf(' ');
+        return switch (this) {
+            case FIRST_NAME -> firstSpace < 0 ? row : row.substring(0, firstSpace);
+            case LAST_NAME -> firstSpace < 0 || firstSpace == lastSpace ? "" : row.substring(firstSpace + 1, lastSpace);
+            case EMAIL -> firstSpace < 0 ? "" : row.substring(lastSpace + 1);
+            case EMAIL_DOMAIN -> {
+                String email = firstSpace < 0 ? "" : row.substring(lastSpace + 1);
+                int at = email.lastIndexOf('@');
+                yield at < 0 ? "" : email.substring(at + 1);
+            }
+        };
+    }
+
+    /**
+     * Extracts the value of this field from a row and normalizes it for case-insensitive comparison.
+     *
+     * @param row The row.
+     * @return The lowercase value of the field.
+     */
+    public String extractKey(String row) {
+        return normalize(extract(row));
+    }
+
+    /**
+     * Normalizes a value for case-insensitive comparison.
+     *
+     * @param value The value.
+     * @return The lowercase value.
+     */
+    public static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds the field with the given name in the query language, ignoring case.
+     *
+     * @param queryName The name of the field.
+     * @return The field, or null if there is none.
+     */
+    public static Field fromQueryName(String queryName) {
+        for (Field field : values()) {
+            if (field.queryName.equalsIgnoreCase(queryName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,45 @@
+package query;
+
+/**
+ * The FuzzyMatch class is one result of a fuzzy search: a row and how far it is from the searched text.
+ */
+public class FuzzyMatch {
+
+    /**
+     * The matching row.
+     */
+    private final String row;
+    /**
+     * The edit distance between the searched text and the closest part of the row.
+     */
+    private final int distance;
+
+    /**
+     * Constructs a FuzzyMatch.
+     *
+     * @param row The matching row.
+     * @param distance The edit distance between the searched text and the closest part of the row.
+     */
+    public FuzzyMatch(String row, int distance) {
+        this.row = row;
+        this.distance = distance;
+    }
+
+    /**
+     * Gets the matching row.
+     *
+     * @return The row.
+     */
+    public String getRow() {
+        return row;
+    }
+
+    /**
+     * Gets the edit distance between the searched text and the closest part of the row.
+     *
+     * @return The number of inserted, deleted, substituted or transposed characters.
+     */
+    public int getDistance() {
+        return distance;
+    }
+}
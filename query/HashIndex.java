@@ -0,0 +1,137 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HashIndex class is a {@link SecondaryIndex} that finds the rows whose field equals a value in constant time.
+ * Rows sharing a value are kept in the order they were added.
+ */
+public class HashIndex implements SecondaryIndex {
+
+    /**
+     * The field the index is built over.
+     */
+    private final Field field;
+    /**
+     * The rows by the normalized value of their field, each with the number of times it occurs.
+     */
+    private final Map<String, LinkedHashMap<String, Integer>> rowsByKey = new HashMap<>();
+
+    /**
+     * Constructs an empty HashIndex over a field.
+     *
+     * @param field The field to index.
+     */
+    public HashIndex(Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Gets the field the index is built over.
+     *
+     * @return The field.
+     */
+    @Override
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Checks whether the index supports an operator, which is the case only for equality.
+     *
+     * @param operator The operator.
+     * @return true if the operator is {@link Comparison.Operator#EQUALS}, false otherwise.
+     */
+    @Override
+    public boolean supports(Comparison.Operator operator) {
+        return operator == Comparison.Operator.EQUALS;
+    }
+
+    /**
+     * Finds the rows whose field equals the comparison's value.
+     *
+     * @param comparison An equality comparison on the index's field.
+     * @param limit The maximum number of rows to return.
+     * @return The matching rows, one entry per occurrence of a row.
+     */
+    @Override
+    public synchronized List<String> lookup(Comparison comparison, int limit) {
+        Map<String, Integer> rows = rowsByKey.get(comparison.getValue());
+        if (rows == null) {
+            return List.of();
+        }
+
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : rows.entrySet()) {
+            int copies = Math.min(entry.getValue(), limit - result.size());
+            result.addAll(Collections.nCopies(copies, entry.getKey()));
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the rows whose field equals the comparison's value, ignoring repeated occurrences of a row.
+     *
+     * @param comparison An equality comparison on the index's field.
+     * @return The number of distinct matching rows.
+     */
+    @Override
+    public synchronized long estimate(Comparison comparison) {
+        Map<String, Integer> rows = rowsByKey.get(comparison.getValue());
+        return rows == null ? 0 : rows.size();
+    }
+
+    /**
+     * Adds a row to the index.
+     *
+     * @param row The row.
+     */
+    @Override
+    public synchronized void insert(String row) {
+        rowsByKey.computeIfAbsent(field.extractKey(row), key -> new LinkedHashMap<>()).merge(row, 1, Integer::sum);
+    }
+
+    /**
+     * Removes one occurrence of a row from the index.
+     *
+     * @param row The row.
+     */
+    @Override
+    public synchronized void remove(String row) {
+        String key = field.extractKey(row);
+        Map<String, Integer> rows = rowsByKey.get(key);
+        if (rows == null) {
+            return;
+        }
+        rows.computeIfPresent(row, (existing, count) -> count == 1 ? null : count - 1);
+        if (rows.isEmpty()) {
+            rowsByKey.remove(key);
+        }
+    }
+
+    /**
+     * Removes every row from the index.
+     */
+    @Override
+    public synchronized void clear() {
+        rowsByKey.clear();
+    }
+
+    /**
+     * Describes the index for query plans.
+     *
+     * @return The description.
+     */
+    @Override
+    public String toString() {
+        return "hash index on " + field.getQueryName();
+    }
+}
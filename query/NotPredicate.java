@@ -0,0 +1,42 @@
+package query;
+
+/**
+ * The NotPredicate class is satisfied by rows not satisfying its operand.
+ */
+public class NotPredicate implements Predicate {
+
+    /**
+     * The operand, which must not be satisfied.
+     */
+    private final Predicate operand;
+
+    /**
+     * Constructs a NotPredicate.
+     *
+     * @param operand The operand, which must not be satisfied.
+     */
+    public NotPredicate(Predicate operand) {
+        this.operand = operand;
+    }
+
+    /**
+     * Tests whether a row does not satisfy the operand.
+     *
+     * @param row The row.
+     * @return true if the row does not satisfy the operand, false otherwise.
+     */
+    @Override
+    public boolean test(String row) {
+        return !operand.test(row);
+    }
+
+    /**
+     * Returns the predicate in the query language.
+     *
+     * @return The predicate.
+     */
+    @Override
+    public String toString() {
+        return "not " + operand;
+    }
+}
@@ -0,0 +1,59 @@
+package query;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The OrPredicate class is satisfied by rows satisfying any of its operands.
+ */
+public class OrPredicate implements Predicate {
+
+    /**
+     * The operands, any of which must be satisfied.
+     */
+    private final List<Predicate> operands;
+
+    /**
+     * Constructs an OrPredicate.
+     *
+     * @param operands The operands, any of which must be satisfied.
+     */
+    public OrPredicate(List<Predicate> operands) {
+        this.operands = List.copyOf(operands);
+    }
+
+    /**
+     * Tests whether a row satisfies any operand, stopping at the first one it satisfies.
+     *
+     * @param row The row.
+     * @return true if the row satisfies an operand, false otherwise.
+     */
+    @Override
+    public boolean test(String row) {
+        for (Predicate operand : operands) {
+            if (operand.test(row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the operands.
+     *
+     * @return The operands, any of which must be satisfied.
+     */
+    public List<Predicate> getOperands() {
+        return operands;
+    }
+
+    /**
+     * Returns the predicate in the query language.
+     *
+     * @return The predicate.
+     */
+    @Override
+    public String toString() {
+        return operands.stream().map(Object::toString).collect(Collectors.joining(" or ", "(", ")"));
+    }
+}
@@ -0,0 +1,15 @@
+package query;
+
+/**
+ * The Predicate interface is a condition on a row, as written in the where part of a query.
+ */
+public interface Predicate {
+
+    /**
+     * Tests whether a row satisfies the condition.
+     *
+     * @param row The row.
+     * @return true if the row satisfies the condition, false otherwise.
+     */
+    boolean test(String row);
+}
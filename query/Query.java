@@ -0,0 +1,123 @@
+package query;
+
+/**
+ * The Query class describes which rows to return: those satisfying a predicate, optionally ordered by a field,
+ * up to a limit.
+ */
+public class Query {
+
+    /**
+     * The limit of a query returning every matching row.
+     */
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    /**
+     * The condition rows must satisfy, or null to return every row.
+     */
+    private final Predicate predicate;
+    /**
+     * The maximum number of rows to return.
+     */
+    private final int limit;
+    /**
+     * The field to order the rows by, or null to return them in file order.
+     */
+    private final Field orderBy;
+    /**
+     * Whether to order the rows in descending instead of ascending order.
+     */
+    private final boolean descending;
+
+    /**
+     * Constructs a Query returning rows in file order.
+     *
+     * @param predicate The condition rows must satisfy, or null to return every row.
+     * @param limit The maximum number of rows to return, or {@link #NO_LIMIT}.
+     * @throws IllegalArgumentException if the limit is negative.
+     */
+    public Query(Predicate predicate, int limit) {
+        this(predicate, limit, null, false);
+    }
+
+    /**
+     * Constructs a Query.
+     *
+     * @param predicate The condition rows must satisfy, or null to return every row.
+     * @param limit The maximum number of rows to return, or {@link #NO_LIMIT}.
+     * @param orderBy The field to order the rows by, or null to return them in file order.
+     * @param descending Whether to order the rows in descending instead of ascending order.
+     * @throws IllegalArgumentException if the limit is negative.
+     */
+    public Query(Predicate predicate, int limit, Field orderBy, boolean descending) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+        }
+        this.predicate = predicate;
+        this.limit = limit;
+        this.orderBy = orderBy;
+        this.descending = descending;
+    }
+
+    /**
+     * Tests whether a row satisfies the query's predicate.
+     *
+     * @param row The row.
+     * @return true if the row matches, false otherwise.
+     */
+    public boolean matches(String row) {
+        return predicate == null || predicate.test(row);
+    }
+
+    /**
+     * Gets the condition rows must satisfy.
+     *
+     * @return The predicate, or null if every row matches.
+     */
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Gets the maximum number of rows to return.
+     *
+     * @return The limit, or {@link #NO_LIMIT}.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the field to order the rows by.
+     *
+     * @return The field, or null if rows are returned in file order.
+     */
+    public Field getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * Checks whether rows are ordered in descending order.
+     *
+     * @return true if descending, false if ascending.
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Returns the query in the query language.
+     *
+     * @return The query.
+     */
+    @Override
+    public String toString() {
+        String text = predicate == null ? "" : predicate.toString();
+        if (orderBy != null) {
+            text += (text.isEmpty() ? "" : " ") + "order by " + orderBy.getQueryName() + (descending ? " desc" : "");
+        }
+        if (limit != NO_LIMIT) {
+            text += (text.isEmpty() ? "" : " ") + "limit " + limit;
+        }
+        return text;
+    }
+}
@@ -0,0 +1,268 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The QueryParser class parses the query language used by the filter command. A query is an optional condition
+ * followed by an optional ordering and an optional limit, for example:
+ * <pre>
+ *     lastName startsWith K and emailDomain = "gmail.com" order by email desc limit 50
+ * </pre>
+ * Conditions compare a field ({@code firstName}, {@code lastName}, {@code email} or {@code emailDomain}) with a value
+ * using {@code =}, {@code !=}, {@code startsWith}, {@code endsWith} or {@code contains}, and can be combined with
+ * {@code and}, {@code or}, {@code not} and parentheses. Values containing spaces or symbols are written in double
+ * quotes. Keywords, field names and values are all matched ignoring case.
+ */
+public class QueryParser {
+
+    /**
+     * The tokens of the query being parsed.
+     */
+    private final List<String> tokens;
+    /**
+     * Whether each token was written in quotes, and so is always a value.
+     */
+    private final List<Boolean> quoted = new ArrayList<>();
+    /**
+     * The position of the next token to parse.
+     */
+    private int position;
+
+    /**
+     * Constructs a QueryParser for a query. Use {@link #parse(String)} instead.
+     *
+     * @param text The query.
+     */
+    private QueryParser(String text) {
+        this.tokens = tokenize(text);
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @param text The query.
+     * @return The parsed query.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public static Query parse(String text) {
+        return new QueryParser(text).parseQuery();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Parses a whole query: an optional "where", an optional condition, an optional ordering and an optional limit.
+     *
+     * @return The parsed query.
+     */
+    private Query parseQuery() {
+        acceptKeyword("where");
+        Predicate predicate = atEnd() || isKeyword("limit") || isKeyword("order") ? null : parseOr();
+
+        Field orderBy = null;
+        boolean descending = false;
+        if (acceptKeyword("order")) {
+            if (!acceptKeyword("by")) {
+                throw new IllegalArgumentException("Invalid query: expected 'by' after 'order'.");
+            }
+            String name = next("a field");
+            orderBy = Field.fromQueryName(name);
+            if (orderBy == null) {
+                throw new IllegalArgumentException("Invalid query: unknown field '" + name + "'.");
+            }
+            descending = acceptKeyword("desc");
+            if (!descending) {
+                acceptKeyword("asc");
+            }
+        }
+
+        int limit = Query.NO_LIMIT;
+        if (acceptKeyword("limit")) {
+            String count = next("a limit");
+            try {
+                limit = Integer.parseInt(count);
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid query: limit must be a number, found '" + count + "'.");
+            }
+            if (limit < 0) {
+                throw new IllegalArgumentException("Invalid query: limit cannot be negative.");
+            }
+        }
+
+        if (!atEnd()) {
+            throw new IllegalArgumentException("Invalid query: unexpected '" + tokens.get(position) + "'.");
+        }
+        return new Query(predicate, limit, orderBy, descending);
+    }
+
+    /**
+     * Parses conditions joined by "or".
+     *
+     * @return The parsed predicate.
+     */
+    private Predicate parseOr() {
+        List<Predicate> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while (acceptKeyword("or")) {
+            operands.add(parseAnd());
+        }
+        return operands.size() == 1 ? operands.getFirst() : new OrPredicate(operands);
+    }
+
+    /**
+     * Parses conditions joined by "and".
+     *
+     * @return The parsed predicate.
+     */
+    private Predicate parseAnd() {
+        List<Predicate> operands = new ArrayList<>();
+        operands.add(parseUnary());
+        while (acceptKeyword("and")) {
+            operands.add(parseUnary());
+        }
+        return operands.size() == 1 ? operands.getFirst() : new AndPredicate(operands);
+    }
+
+    /**
+     * Parses a negated condition, a condition in parentheses or a comparison.
+     *
+     * @return The parsed predicate.
+     */
+    private Predicate parseUnary() {
+        if (acceptKeyword("not")) {
+            return new NotPredicate(parseUnary());
+        }
+        if (acceptKeyword("(")) {
+            Predicate inner = parseOr();
+            if (!acceptKeyword(")")) {
+                throw new IllegalArgumentException("Invalid query: missing ')'.");
+            }
+            return inner;
+        }
+
+        String name = next("a field");
+        Field field = Field.fromQueryName(name);
+        if (field == null) {
+            throw new IllegalArgumentException("Invalid query: unknown field '" + name + "'.");
+        }
+        String symbol = next("an operator");
+        Comparison.Operator operator = Comparison.Operator.fromSymbol(symbol);
+        if (operator == null) {
+            throw new IllegalArgumentException("Invalid query: unknown operator '" + symbol + "'.");
+        }
+        return new Comparison(field, operator, next("a value"));
+    }
+
+    /**
+     * Consumes the next token if it is the given unquoted keyword or symbol, ignoring case.
+     *
+     * @param keyword The keyword.
+     * @return true if the keyword was consumed, false otherwise.
+     */
+    private boolean acceptKeyword(String keyword) {
+        if (isKeyword(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the next token is the given unquoted keyword or symbol, ignoring case.
+     *
+     * @param keyword The keyword.
+     * @return true if the next token is the keyword, false otherwise.
+     */
+    private boolean isKeyword(String keyword) {
+        return !atEnd() && !quoted.get(position) && tokens.get(position).equalsIgnoreCase(keyword);
+    }
+
+    /**
+     * Consumes the next token.
+     *
+     * @param expected A description of what was expected, for the error message.
+     * @return The token.
+     * @throws IllegalArgumentException if there are no more tokens.
+     */
+    private String next(String expected) {
+        if (atEnd()) {
+            throw new IllegalArgumentException("Invalid query: expected " + expected + " at the end.");
+        }
+        return tokens.get(position++);
+    }
+
+    /**
+     * Checks whether every token has been consumed.
+     *
+     * @return true if there are no more tokens, false otherwise.
+     */
+    private boolean atEnd() {
+        return position >= tokens.size();
+    }
+
+    /**
+     * Splits a query into tokens: parentheses, the operators "=" and "!=", quoted values and words.
+     *
+     * @param text The query.
+     * @return The tokens, with the quotes removed from quoted values.
+     * @throws IllegalArgumentException if a quoted value is not closed.
+     */
+    private List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            }
+            else if (c == '(' || c == ')' || c == '=') {
+                addToken(result, String.valueOf(c), false);
+                i++;
+            }
+            else if (c == '!' && i + 1 < text.length() && text.charAt(i + 1) == '=') {
+                addToken(result, "!=", false);
+                i += 2;
+            }
+            else if (c == '"') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (i < text.length() && text.charAt(i) != '"') {
+                    if (text.charAt(i) == '\\' && i + 1 < text.length()) {
+                        i++;
+                    }
+                    value.append(text.charAt(i++));
+                }
+                if (i >= text.length()) {
+                    throw new IllegalArgumentException("Invalid query: unterminated quoted value.");
+                }
+                addToken(result, value.toString(), true);
+                i++;
+            }
+            else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i)) && "()=!\"".indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                if (start == i) {
+                    throw new IllegalArgumentException("Invalid query: unexpected '" + c + "'.");
+                }
+                addToken(result, text.substring(start, i), false);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a token, recording whether it was quoted.
+     *
+     * @param result The tokens so far.
+     * @param token The token.
+     * @param isQuoted Whether the token was written in quotes.
+     */
+    private void addToken(List<String> result, String token, boolean isQuoted) {
+        result.add(token);
+        quoted.add(isQuoted);
+    }
+}
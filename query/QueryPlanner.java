@@ -0,0 +1,244 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * The QueryPlanner class decides how to run a query and runs it.
+ * <p>
+ * If a comparison that every result must satisfy can be answered by an index, the planner looks up the
+ * candidates in the index that expects the fewest matches and tests only those against the rest of the predicate.
+ * Otherwise it scans the rows in parallel. The rows are split into chunks that workers claim in order, and
+ * workers stop claiming chunks once enough matches have been found for the limit. Because the claimed chunks
+ * always form a prefix of the rows, a scan returns the first matching rows in file order.
+ * <p>
+ * An ordered query walks a {@link SortedIndex} on the ordering field in order, testing each row and stopping at
+ * the limit, unless an index finds so few candidates that sorting them is cheaper. Without a sorted index, the
+ * matching rows are found as above and then sorted.
+ */
+public class QueryPlanner {
+
+    /**
+     * The number of rows in a chunk claimed by a scan worker.
+     */
+    private static final int SCAN_CHUNK_ROWS = 4096;
+    /**
+     * The largest number of index candidates the planner sorts rather than walking a sorted index.
+     */
+    private static final int SORT_CANDIDATES_THRESHOLD = 1024;
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private QueryPlanner() {}
+
+    /**
+     * Runs a query over rows, using an index where possible.
+     *
+     * @param query The query.
+     * @param rows A consistent snapshot of the rows.
+     * @param indexes The indexes available over the rows.
+     * @return The matching rows and the plan used.
+     */
+    public static QueryResult execute(Query query, List<String> rows, List<SecondaryIndex> indexes) {
+        SecondaryIndex bestIndex = null;
+        Comparison bestComparison = null;
+        long bestEstimate = Long.MAX_VALUE;
+        for (Comparison comparison : requiredComparisons(query.getPredicate())) {
+            for (SecondaryIndex index : indexes) {
+                if (index.getField() == comparison.getField() && index.supports(comparison.getOperator())) {
+                    long estimate = index.estimate(comparison);
+                    if (estimate < bestEstimate) {
+                        bestIndex = index;
+                        bestComparison = comparison;
+                        bestEstimate = estimate;
+                    }
+                }
+            }
+        }
+
+        if (query.getOrderBy() == null) {
+            return bestIndex != null ? indexLookup(query, bestIndex, bestComparison) : scan(query, rows);
+        }
+
+        SortedIndex orderedIndex = sortedIndexOn(query.getOrderBy(), indexes);
+        if (orderedIndex != null && !query.isDescending()) {
+            for (Comparison comparison : requiredComparisons(query.getPredicate())) {
+                if (comparison.getField() == query.getOrderBy() && orderedIndex.supports(comparison.getOperator())) {
+                    // A sorted index returns the range it looks up already in ascending order
+                    return indexLookup(query, orderedIndex, comparison);
+                }
+            }
+        }
+        if (orderedIndex != null && (bestIndex == null || bestEstimate > SORT_CANDIDATES_THRESHOLD)) {
+            return orderedTraversal(query, orderedIndex);
+        }
+
+        Query unordered = new Query(query.getPredicate(), Query.NO_LIMIT);
+        QueryResult matches = bestIndex != null ? indexLookup(unordered, bestIndex, bestComparison) : scan(unordered, rows);
+        List<String> sorted = new ArrayList<>(matches.getRows());
+        Comparator<String> byField = Comparator.comparing(query.getOrderBy()::extractKey);
+        byField = byField.thenComparing(Comparator.naturalOrder());
+        sorted.sort(query.isDescending() ? byField.reversed() : byField);
+        if (sorted.size() > query.getLimit()) {
+            sorted = sorted.subList(0, query.getLimit());
+        }
+        return new QueryResult(sorted, matches.getPlan() + ", then sort", matches.getRowsExamined());
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Finds a sorted index over a field.
+     *
+     * @param field The field.
+     * @param indexes The available indexes.
+     * @return The sorted index, or null if there is none.
+     */
+    private static SortedIndex sortedIndexOn(Field field, List<SecondaryIndex> indexes) {
+        for (SecondaryIndex index : indexes) {
+            if (index instanceof SortedIndex sorted && sorted.getField() == field) {
+                return sorted;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs an ordered query by walking a sorted index in order, testing each row, until the limit is reached.
+     *
+     * @param query The query.
+     * @param index The sorted index on the ordering field.
+     * @return The first matching rows in order and the plan used.
+     */
+    private static QueryResult orderedTraversal(Query query, SortedIndex index) {
+        List<String> result = new ArrayList<>();
+        long examined = 0;
+        if (query.getLimit() > 0) {
+            for (String row : index.inOrder(query.isDescending())) {
+                examined++;
+                if (query.matches(row)) {
+                    result.add(row);
+                    if (result.size() >= query.getLimit()) {
+                        break;
+                    }
+                }
+            }
+        }
+        return new QueryResult(result, "ordered walk of " + index, examined);
+    }
+
+    /**
+     * Finds the comparisons every matching row must satisfy: the predicate itself if it is a comparison, or the
+     * comparisons directly joined by a top-level "and".
+     *
+     * @param predicate The predicate, or null.
+     * @return The required comparisons.
+     */
+    private static List<Comparison> requiredComparisons(Predicate predicate) {
+        List<Comparison> comparisons = new ArrayList<>();
+        if (predicate instanceof Comparison comparison) {
+            comparisons.add(comparison);
+        }
+        else if (predicate instanceof AndPredicate and) {
+            for (Predicate operand : and.getOperands()) {
+                if (operand instanceof Comparison comparison) {
+                    comparisons.add(comparison);
+                }
+            }
+        }
+        return comparisons;
+    }
+
+    /**
+     * Runs a query by looking up candidates in an index and testing them against the whole predicate.
+     *
+     * @param query The query.
+     * @param index The index to use.
+     * @param comparison The comparison answered by the index.
+     * @return The matching rows and the plan used.
+     */
+    private static QueryResult indexLookup(Query query, SecondaryIndex index, Comparison comparison) {
+        boolean exact = query.getPredicate() == comparison;
+        List<String> candidates = index.lookup(comparison, exact ? query.getLimit() : Query.NO_LIMIT);
+        if (exact) {
+            return new QueryResult(candidates, "lookup of " + comparison + " in " + index, candidates.size());
+        }
+
+        List<String> result = new ArrayList<>();
+        long examined = 0;
+        for (String row : candidates) {
+            if (result.size() >= query.getLimit()) {
+                break;
+            }
+            examined++;
+            if (query.matches(row)) {
+                result.add(row);
+            }
+        }
+        return new QueryResult(result, "lookup of " + comparison + " in " + index + ", then filter", examined);
+    }
+
+    /**
+     * Runs a query by testing every row, in parallel chunks when there are enough rows, stopping once the limit is
+     * reached.
+     *
+     * @param query The query.
+     * @param rows The rows.
+     * @return The first matching rows in order and the plan used.
+     */
+    private static QueryResult scan(Query query, List<String> rows) {
+        int limit = query.getLimit();
+        int chunkCount = (rows.size() + SCAN_CHUNK_ROWS - 1) / SCAN_CHUNK_ROWS;
+        if (chunkCount <= 1 || limit == 0) {
+            List<String> result = new ArrayList<>();
+            int examined = 0;
+            while (examined < rows.size() && result.size() < limit) {
+                String row = rows.get(examined++);
+                if (query.matches(row)) {
+                    result.add(row);
+                }
+            }
+            return new QueryResult(result, "scan", examined);
+        }
+
+        AtomicReferenceArray<List<String>> chunkMatches = new AtomicReferenceArray<>(chunkCount);
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicInteger matchCount = new AtomicInteger();
+        AtomicLong examined = new AtomicLong();
+        int workers = Math.min(chunkCount, ForkJoinPool.getCommonPoolParallelism() + 1);
+        IntStream.range(0, workers).parallel().forEach(worker -> {
+            while (matchCount.get() < limit) {
+                int chunk = nextChunk.getAndIncrement();
+                if (chunk >= chunkCount) {
+                    return;
+                }
+                int from = chunk * SCAN_CHUNK_ROWS;
+                int to = Math.min(rows.size(), from + SCAN_CHUNK_ROWS);
+                List<String> matches = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    String row = rows.get(i);
+                    if (query.matches(row)) {
+                        matches.add(row);
+                    }
+                }
+                chunkMatches.set(chunk, matches);
+                matchCount.addAndGet(matches.size());
+                examined.addAndGet(to - from);
+            }
+        });
+
+        List<String> result = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkCount && chunkMatches.get(chunk) != null && result.size() < limit; chunk++) {
+            List<String> matches = chunkMatches.get(chunk);
+            result.addAll(matches.subList(0, Math.min(matches.size(), limit - result.size())));
+        }
+        return new QueryResult(result, "parallel scan with " + workers + " workers", examined.get());
+    }
+}
@@ -0,0 +1,62 @@
+package query;
+
+import java.util.List;
+
+/**
+ * The QueryResult class holds the rows returned by a query together with a description of how they were found.
+ */
+public class QueryResult {
+
+    /**
+     * The matching rows.
+     */
+    private final List<String> rows;
+    /**
+     * A description of the plan used to find the rows.
+     */
+    private final String plan;
+    /**
+     * The number of rows tested against the predicate.
+     */
+    private final long rowsExamined;
+
+    /**
+     * Constructs a QueryResult.
+     *
+     * @param rows The matching rows.
+     * @param plan A description of the plan used to find the rows.
+     * @param rowsExamined The number of rows tested against the predicate.
+     */
+    public QueryResult(List<String> rows, String plan, long rowsExamined) {
+        this.rows = rows;
+        this.plan = plan;
+        this.rowsExamined = rowsExamined;
+    }
+
+    /**
+     * Gets the matching rows.
+     *
+     * @return The rows.
+     */
+    public List<String> getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets a description of the plan used to find the rows.
+     *
+     * @return The plan.
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    /**
+     * Gets the number of rows tested against the predicate.
+     *
+     * @return The number of rows examined.
+     */
+    public long getRowsExamined() {
+        return rowsExamined;
+    }
+}
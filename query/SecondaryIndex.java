@@ -0,0 +1,75 @@
+package query;
+
+import java.util.List;
+
+/**
+ * The SecondaryIndex interface is implemented by indexes over one field of a FileEditor's rows, which the
+ * {@link QueryPlanner} uses to find the rows satisfying a comparison without scanning every row.
+ * The FileEditor keeps its indexes up to date as rows are added, changed and removed.
+ */
+public interface SecondaryIndex {
+
+    /**
+     * Gets the field the index is built over.
+     *
+     * @return The field.
+     */
+    Field getField();
+
+    /**
+     * Checks whether the index can find the rows satisfying comparisons with the given operator.
+     *
+     * @param operator The operator.
+     * @return true if {@link #lookup(Comparison, int)} supports the operator, false otherwise.
+     */
+    boolean supports(Comparison.Operator operator);
+
+    /**
+     * Finds the rows whose field satisfies a comparison.
+     *
+     * @param comparison A comparison on the index's field with a supported operator.
+     * @param limit The maximum number of rows to return.
+     * @return The matching rows, one entry per occurrence of a row.
+     */
+    List<String> lookup(Comparison comparison, int limit);
+
+    /**
+     * Estimates how many rows satisfy a comparison, so the planner can pick the most selective index.
+     *
+     * @param comparison A comparison on the index's field with a supported operator.
+     * @return The estimated number of matching rows.
+     */
+    long estimate(Comparison comparison);
+
+    /**
+     * Fills the index with rows, replacing anything it held before. Indexes that can build faster in bulk than by
+     * inserting rows one at a time override this.
+     *
+     * @param rows The rows.
+     */
+    default void build(List<String> rows) {
+        clear();
+        for (String row : rows) {
+            insert(row);
+        }
+    }
+
+    /**
+     * Adds a row to the index.
+     *
+     * @param row The row.
+     */
+    void insert(String row);
+
+    /**
+     * Removes one occurrence of a row from the index.
+     *
+     * @param row The row.
+     */
+    void remove(String row);
+
+    /**
+     * Removes every row from the index.
+     */
+    void clear();
+}
@@ -0,0 +1,204 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The SortedIndex class is a {@link SecondaryIndex} that keeps rows sorted by a field in a skip list.
+ * Adding, changing and removing a row costs O(log N). Rows can be listed in field order by walking the skip list,
+ * without sorting, and rows whose field equals or starts with a value are found by walking only the matching range.
+ * Rows with equal field values are ordered by the whole row. Traversals are weakly consistent: they never fail
+ * because of concurrent changes, and see some of them.
+ */
+public class SortedIndex implements SecondaryIndex {
+
+    /**
+     * The number of matching rows after which {@link #estimate(Comparison)} stops counting.
+     */
+    private static final int ESTIMATE_CAP = 10_000;
+
+    /**
+     * A row together with the normalized value of the indexed field, ordered by value and then by row.
+     *
+     * @param value The normalized value of the field.
+     * @param row The row.
+     */
+    private record Key(String value, String row) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int byValue = value.compareTo(other.value);
+            return byValue != 0 ? byValue : row.compareTo(other.row);
+        }
+    }
+
+    /**
+     * The field the index is built over.
+     */
+    private final Field field;
+    /**
+     * The rows in field order, each with the number of times it occurs.
+     */
+    private final ConcurrentSkipListMap<Key, Integer> rows = new ConcurrentSkipListMap<>();
+
+    /**
+     * Constructs an empty SortedIndex over a field.
+     *
+     * @param field The field to sort by.
+     */
+    public SortedIndex(Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Gets the field the index is built over.
+     *
+     * @return The field.
+     */
+    @Override
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Checks whether the index supports an operator, which is the case for equality and prefix comparisons.
+     *
+     * @param operator The operator.
+     * @return true if the operator is {@link Comparison.Operator#EQUALS} or {@link Comparison.Operator#STARTS_WITH}.
+     */
+    @Override
+    public boolean supports(Comparison.Operator operator) {
+        return operator == Comparison.Operator.EQUALS || operator == Comparison.Operator.STARTS_WITH;
+    }
+
+    /**
+     * Finds the rows whose field equals or starts with the comparison's value, in field order.
+     *
+     * @param comparison An equality or prefix comparison on the index's field.
+     * @param limit The maximum number of rows to return.
+     * @return The matching rows, one entry per occurrence of a row.
+     */
+    @Override
+    public List<String> lookup(Comparison comparison, int limit) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<Key, Integer> entry : range(comparison).entrySet()) {
+            if (!comparison.matches(entry.getKey().value())) {
+                break;
+            }
+            for (int i = 0; i < entry.getValue() && result.size() < limit; i++) {
+                result.add(entry.getKey().row());
+            }
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the distinct rows whose field equals or starts with the comparison's value, stopping at
+     * {@value #ESTIMATE_CAP}.
+     *
+     * @param comparison An equality or prefix comparison on the index's field.
+     * @return The number of distinct matching rows, at most {@value #ESTIMATE_CAP}.
+     */
+    @Override
+    public long estimate(Comparison comparison) {
+        long count = 0;
+        for (Key key : range(comparison).keySet()) {
+            if (!comparison.matches(key.value()) || ++count >= ESTIMATE_CAP) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the rows in field order, walking the skip list as the iteration proceeds.
+     *
+     * @param descending Whether to return the rows in descending instead of ascending order.
+     * @return The rows, one entry per occurrence of a row.
+     */
+    public Iterable<String> inOrder(boolean descending) {
+        NavigableMap<Key, Integer> view = descending ? rows.descendingMap() : rows;
+        return () -> new Iterator<>() {
+            private final Iterator<Map.Entry<Key, Integer>> entries = view.entrySet().iterator();
+            private String row;
+            private int remaining;
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && entries.hasNext()) {
+                    Map.Entry<Key, Integer> entry = entries.next();
+                    row = entry.getKey().row();
+                    remaining = entry.getValue();
+                }
+                return remaining > 0;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Adds a row to the index.
+     *
+     * @param row The row.
+     */
+    @Override
+    public void insert(String row) {
+        rows.merge(new Key(field.extractKey(row), row), 1, Integer::sum);
+    }
+
+    /**
+     * Removes one occurrence of a row from the index.
+     *
+     * @param row The row.
+     */
+    @Override
+    public void remove(String row) {
+        rows.computeIfPresent(new Key(field.extractKey(row), row), (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Removes every row from the index.
+     */
+    @Override
+    public void clear() {
+        rows.clear();
+    }
+
+    /**
+     * Describes the index for query plans.
+     *
+     * @return The description.
+     */
+    @Override
+    public String toString() {
+        return "sorted index on " + field.getQueryName();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Returns the part of the skip list starting at the first row that can satisfy a comparison.
+     * The matching rows are a prefix of the returned view.
+     *
+     * @param comparison An equality or prefix comparison on the index's field.
+     * @return The view.
+     */
+    private NavigableMap<Key, Integer> range(Comparison comparison) {
+        return rows.tailMap(new Key(comparison.getValue(), ""), true);
+    }
+}
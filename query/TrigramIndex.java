@@ -0,0 +1,679 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * The TrigramIndex class is a {@link SecondaryIndex} for fuzzy search: it finds the rows closest to a misspelled
+ * text, such as "Jonh Smtih", without comparing the text with every row.
+ * <p>
+ * The names and email of every row are split into words, and every distinct word is indexed by its trigrams,
+ * the three-character sequences of the word padded with two leading spaces and one trailing space, in lists kept
+ * apart for each word length, so that a search only compares words of about the searched length. Each word keeps
+ * the ids of the rows containing it. A search looks up the words sharing trigrams with each searched word, keeps
+ * those within a small edit distance of it, and ranks the rows containing them by edit distance to the whole text.
+ * Because names repeat across rows, the vocabulary is far smaller than the store, and a search only touches the
+ * trigram lists of the vocabulary and the row lists of the words that matched.
+ * <p>
+ * Words are split into shards, each with its own words, trigram lists and row lists, so a bulk {@link #build(List)}
+ * fills the shards in parallel. Removed rows leave gaps in the row lists until enough have accumulated to compact them.
+ * The index answers no query comparisons; it is kept up to date like other indexes and used by fuzzy search.
+ */
+public class TrigramIndex implements SecondaryIndex {
+
+    /**
+     * The number of shards the vocabulary is split into, which must be a power of two.
+     */
+    private static final int SHARDS = 16;
+    /**
+     * The number of rows, by the words they match, whose edit distance to the whole text is computed by a search.
+     */
+    private static final int SEARCH_CANDIDATES = 256;
+
+    /**
+     * A growable list of ids, in the order they were added.
+     */
+    private static final class Postings {
+        /**
+         * The ids, of which the first {@code size} are used.
+         */
+        private int[] ids = new int[2];
+        /**
+         * The number of ids.
+         */
+        private int size;
+
+        /**
+         * Appends an id.
+         *
+         * @param id The id.
+         */
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * The words of one shard of the vocabulary, each with the ids of the rows containing it.
+     */
+    private static final class Shard {
+        /**
+         * The local id of every word in the shard.
+         */
+        private final Map<String, Integer> idsByWord = new HashMap<>();
+        /**
+         * The word of every local id.
+         */
+        private final List<String> words = new ArrayList<>();
+        /**
+         * The ids of the rows containing every word, by local id.
+         */
+        private final List<Postings> rows = new ArrayList<>();
+        /**
+         * The local ids of the words containing every trigram, by trigram and word length.
+         */
+        private final Map<Long, Postings> wordsByTrigram = new HashMap<>();
+
+        /**
+         * Adds a row to the list of a word, adding the word to the shard and its trigram lists if it is new.
+         *
+         * @param word The word.
+         * @param rowId The id of the row.
+         */
+        private void addRow(String word, int rowId) {
+            Integer localId = idsByWord.get(word);
+            if (localId == null) {
+                localId = words.size();
+                idsByWord.put(word, localId);
+                words.add(word);
+                rows.add(new Postings());
+                for (long trigram : trigrams(word)) {
+                    wordsByTrigram.computeIfAbsent(trigramKey(trigram, word.length()), key -> new Postings())
+                            .add(localId);
+                }
+            }
+            rows.get(localId).add(rowId);
+        }
+    }
+
+    /**
+     * The fields the index is built over.
+     */
+    private final Field[] fields;
+    /**
+     * The shards of the vocabulary.
+     */
+    private final Shard[] shards = new Shard[SHARDS];
+    /**
+     * The id of every indexed row.
+     */
+    private final Map<String, Integer> idsByRow = new HashMap<>();
+    /**
+     * The row of every id, or null for ids of removed rows.
+     */
+    private String[] rowsById = new String[16];
+    /**
+     * The number of times the row of every id occurs.
+     */
+    private int[] countsById = new int[16];
+    /**
+     * The next row id to assign.
+     */
+    private int nextId;
+    /**
+     * The number of ids of removed rows still present in the row lists.
+     */
+    private int removedIds;
+
+    /**
+     * Constructs an empty TrigramIndex over the first name, last name and email.
+     */
+    public TrigramIndex() {
+        this(Field.FIRST_NAME, Field.LAST_NAME, Field.EMAIL);
+    }
+
+    /**
+     * Constructs an empty TrigramIndex over the given fields.
+     *
+     * @param fields The fields to index.
+     * @throws IllegalArgumentException if no field is given.
+     */
+    public TrigramIndex(Field... fields) {
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("A trigram index needs at least one field.");
+        }
+        this.fields = fields.clone();
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Gets the field the index is built over.
+     *
+     * @return null, as the index is searched by text rather than by comparisons on a field.
+     */
+    @Override
+    public Field getField() {
+        return null;
+    }
+
+    /**
+     * Checks whether the index supports an operator, which it never does.
+     *
+     * @param operator The operator.
+     * @return false.
+     */
+    @Override
+    public boolean supports(Comparison.Operator operator) {
+        return false;
+    }
+
+    /**
+     * Finds no rows, as the index answers no comparisons.
+     *
+     * @param comparison The comparison.
+     * @param limit The maximum number of rows to return.
+     * @return An empty list.
+     */
+    @Override
+    public List<String> lookup(Comparison comparison, int limit) {
+        return List.of();
+    }
+
+    /**
+     * Estimates no rows, as the index answers no comparisons.
+     *
+     * @param comparison The comparison.
+     * @return {@link Long#MAX_VALUE}, so the planner never prefers this index.
+     */
+    @Override
+    public long estimate(Comparison comparison) {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Finds the rows closest to a possibly misspelled text. Each word of the text matches the indexed words within
+     * one edit of it, or two for words of five or more characters. Rows matching the most words of the text, with
+     * the smallest total word distance, are taken as candidates, and ranked by the smallest edit distance between
+     * the whole text and the row's name or email.
+     *
+     * @param text The text to search for, such as a full name.
+     * @param limit The maximum number of rows to return.
+     * @return The closest rows, closest first.
+     */
+    public synchronized List<FuzzyMatch> search(String text, int limit) {
+        String normalized = Field.normalize(text.trim());
+        List<String> queryWords = words(normalized);
+        if (queryWords.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        RowScores scores = new RowScores();
+        for (int i = 0; i < queryWords.size() && i < Integer.SIZE; i++) {
+            String queryWord = queryWords.get(i);
+            long[] matches = similarWords(queryWord);
+            for (long match : matches) {
+                int wordId = (int) match;
+                Postings rows = shards[wordId & (SHARDS - 1)].rows.get(wordId / SHARDS);
+                for (int j = 0; j < rows.size; j++) {
+                    scores.record(rows.ids[j], i, (int) (match >>> 32));
+                }
+            }
+        }
+
+        int[] candidates = scores.topIds(SEARCH_CANDIDATES);
+        List<FuzzyMatch> matches = new ArrayList<>(candidates.length);
+        for (int rowId : candidates) {
+            String row = rowsById[rowId];
+            if (row != null) {
+                matches.add(new FuzzyMatch(row, distanceToRow(normalized, row)));
+            }
+        }
+        matches.sort(Comparator.comparingInt(FuzzyMatch::getDistance).thenComparing(FuzzyMatch::getRow));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Finds the rows closest to a possibly misspelled text without an index, by computing the edit distance of
+     * every row in parallel. This is what {@link #search(String, int)} avoids, and is meant for stores without a
+     * trigram index.
+     *
+     * @param rows The rows.
+     * @param text The text to search for, such as a full name.
+     * @param limit The maximum number of rows to return.
+     * @return The closest rows, closest first, ties broken by the row.
+     */
+    public static List<FuzzyMatch> searchByScan(List<String> rows, String text, int limit) {
+        String normalized = Field.normalize(text.trim());
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        return rows.parallelStream()
+                .map(row -> new FuzzyMatch(row, distanceToRow(normalized, row)))
+                .sorted(Comparator.comparingInt(FuzzyMatch::getDistance).thenComparing(FuzzyMatch::getRow))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Fills the index with rows, replacing anything it held before. The rows are split into words in parallel,
+     * and the shards are then filled in parallel, each taking the words that belong to it.
+     *
+     * @param rows The rows.
+     */
+    @Override
+    public synchronized void build(List<String> rows) {
+        clear();
+        for (String row : rows) {
+            Integer id = idsByRow.get(row);
+            if (id == null) {
+                id = assignId(row);
+            }
+            countsById[id]++;
+        }
+
+        int idCount = nextId;
+        String[][] wordsById = IntStream.range(0, idCount).parallel()
+                .mapToObj(id -> rowWords(rowsById[id]))
+                .toArray(String[][]::new);
+        IntStream.range(0, SHARDS).parallel().forEach(shard -> {
+            for (int id = 0; id < idCount; id++) {
+                for (String word : wordsById[id]) {
+                    if (shardOf(word) == shard) {
+                        shards[shard].addRow(word, id);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a row to the index.
+     *
+     * @param row The row.
+     */
+    @Override
+    public synchronized void insert(String row) {
+        Integer id = idsByRow.get(row);
+        if (id == null) {
+            id = assignId(row);
+            for (String word : rowWords(row)) {
+                shards[shardOf(word)].addRow(word, id);
+            }
+        }
+        countsById[id]++;
+    }
+
+    /**
+     * Removes one occurrence of a row from the index. Once no occurrence is left, its id is dropped from the
+     * row lists the next time they are compacted.
+     *
+     * @param row The row.
+     */
+    @Override
+    public synchronized void remove(String row) {
+        Integer id = idsByRow.get(row);
+        if (id == null || --countsById[id] > 0) {
+            return;
+        }
+
+        idsByRow.remove(row);
+        rowsById[id] = null;
+        removedIds++;
+        if (removedIds > SEARCH_CANDIDATES && removedIds > idsByRow.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Removes every row from the index.
+     */
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        idsByRow.clear();
+        rowsById = new String[16];
+        countsById = new int[16];
+        nextId = 0;
+        removedIds = 0;
+    }
+
+    /**
+     * Describes the index.
+     *
+     * @return The description.
+     */
+    @Override
+    public String toString() {
+        return "trigram index on " + String.join(", ", Arrays.stream(fields).map(Field::getQueryName).toList());
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Assigns the next id to a new row.
+     *
+     * @param row The row.
+     * @return The id.
+     */
+    private int assignId(String row) {
+        if (nextId == rowsById.length) {
+            rowsById = Arrays.copyOf(rowsById, nextId * 2);
+            countsById = Arrays.copyOf(countsById, nextId * 2);
+        }
+        idsByRow.put(row, nextId);
+        rowsById[nextId] = row;
+        return nextId++;
+    }
+
+    /**
+     * Rebuilds the index from its live rows, dropping the ids of removed rows from the row lists.
+     */
+    private void compact() {
+        List<String> rows = new ArrayList<>();
+        for (int id = 0; id < nextId; id++) {
+            for (int i = 0; rowsById[id] != null && i < countsById[id]; i++) {
+                rows.add(rowsById[id]);
+            }
+        }
+        build(rows);
+    }
+
+    /**
+     * Finds the indexed words within the allowed edit distance of a searched word. Only the words sharing a
+     * trigram with it and of a length within that distance are compared, which the trigram lists being split by
+     * word length makes cheap.
+     *
+     * @param queryWord The searched word.
+     * @return The matching words, each packed as its distance in the high 32 bits and its global id in the low
+     * 32 bits, closest first.
+     */
+    private long[] similarWords(String queryWord) {
+        int maxEdits = queryWord.length() <= 2 ? 0 : queryWord.length() <= 4 ? 1 : 2;
+        long[] queryTrigrams = trigrams(queryWord);
+        Set<Integer> compared = new HashSet<>();
+        List<Long> matches = new ArrayList<>();
+        int maxLength = queryWord.length() + maxEdits;
+        for (int length = Math.max(1, queryWord.length() - maxEdits); length <= maxLength; length++) {
+            for (int shard = 0; shard < SHARDS; shard++) {
+                compared.clear();
+                for (long trigram : queryTrigrams) {
+                    Postings words = shards[shard].wordsByTrigram.get(trigramKey(trigram, length));
+                    for (int i = 0; words != null && i < words.size; i++) {
+                        int localId = words.ids[i];
+                        if (!compared.add(localId)) {
+                            continue;
+                        }
+                        int distance = editDistance(queryWord, shards[shard].words.get(localId));
+                        if (distance <= maxEdits) {
+                            matches.add(((long) distance << 32) | (localId * SHARDS + shard));
+                        }
+                    }
+                }
+            }
+        }
+
+        long[] packed = new long[matches.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = matches.get(i);
+        }
+        Arrays.sort(packed);
+        return packed;
+    }
+
+    /**
+     * Splits the indexed fields of a row into its distinct words.
+     *
+     * @param row The row.
+     * @return The words.
+     */
+    private String[] rowWords(String row) {
+        List<String> words = new ArrayList<>();
+        for (Field field : fields) {
+            for (String word : words(field.extractKey(row))) {
+                if (!words.contains(word)) {
+                    words.add(word);
+                }
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Splits a normalized text into words at every character that is not a letter or digit.
+     *
+     * @param text The text.
+     * @return The words.
+     */
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            }
+            else if (!wordCharacter && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Finds the distinct trigrams of a word padded with two leading spaces and one trailing space.
+     *
+     * @param word The word.
+     * @return The trigrams.
+     */
+    private static long[] trigrams(String word) {
+        String padded = "  " + word + " ";
+        long[] trigrams = new long[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int count = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[count++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, count);
+    }
+
+    /**
+     * Combines a trigram with the length of the word it occurs in, so that words of each length have their own
+     * trigram lists.
+     *
+     * @param trigram The trigram.
+     * @param length The length of the word.
+     * @return The key of the trigram list.
+     */
+    private static long trigramKey(long trigram, int length) {
+        return (trigram << 8) | Math.min(length, 0xFF);
+    }
+
+    /**
+     * Finds the shard a word belongs to.
+     *
+     * @param word The word.
+     * @return The shard.
+     */
+    private static int shardOf(String word) {
+        int hash = word.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (SHARDS - 1);
+    }
+
+    /**
+     * Computes the smallest edit distance between a search text and a row's full name, email or local part of
+     * the email.
+     *
+     * @param text The normalized search text.
+     * @param row The row.
+     * @return The smallest distance.
+     */
+    private static int distanceToRow(String text, String row) {
+        String name = (Field.FIRST_NAME.extractKey(row) + " " + Field.LAST_NAME.extractKey(row)).trim();
+        String email = Field.EMAIL.extractKey(row);
+        int at = email.indexOf('@');
+        int distance = Math.min(editDistance(text, name), editDistance(text, email));
+        return at < 0 ? distance : Math.min(distance, editDistance(text, email.substring(0, at)));
+    }
+
+    /**
+     * Computes the optimal string alignment distance between two strings: the number of inserted, deleted,
+     * substituted or adjacent transposed characters turning one into the other.
+     *
+     * @param a The first string.
+     * @param b The second string.
+     * @return The distance.
+     */
+    static int editDistance(String a, String b) {
+        int[] previousPrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], previousPrevious[j - 2] + 1);
+                }
+            }
+            int[] recycled = previousPrevious;
+            previousPrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * The RowScores class tracks, for every row a search touches, which searched words it matched and the total
+     * distance of those matches, in an open-addressing hash table so that a search only touches memory in
+     * proportion to the rows it sees rather than to the number of rows.
+     */
+    private static final class RowScores {
+        /**
+         * The row ids in the table, offset by one so that zero marks an empty slot.
+         */
+        private int[] keys = new int[1024];
+        /**
+         * The searched words every row matched, one bit per word.
+         */
+        private int[] matched = new int[1024];
+        /**
+         * The total distance of every row's matched words.
+         */
+        private int[] distances = new int[1024];
+        /**
+         * The number of rows in the table.
+         */
+        private int size;
+
+        /**
+         * Records that a row matched a searched word at a distance, unless it already matched that word at a
+         * smaller or equal distance. Matches must be recorded closest first for each searched word.
+         *
+         * @param rowId The id of the row.
+         * @param word The position of the searched word.
+         * @param distance The edit distance of the match.
+         */
+        private void record(int rowId, int word, int distance) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int slot = slotOf(rowId, keys);
+            if (keys[slot] == 0) {
+                keys[slot] = rowId + 1;
+                size++;
+            }
+            int bit = 1 << word;
+            if ((matched[slot] & bit) == 0) {
+                matched[slot] |= bit;
+                distances[slot] += distance;
+            }
+        }
+
+        /**
+         * Finds the rows matching the most searched words, with the smallest total distance first among those.
+         *
+         * @param max The maximum number of rows to return.
+         * @return The row ids.
+         */
+        private int[] topIds(int max) {
+            long[] packed = new long[size];
+            int count = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    // Most matched words first, then smallest distance, then lowest id
+                    long rank = ((long) (Integer.SIZE - Integer.bitCount(matched[slot])) << 16) | distances[slot];
+                    packed[count++] = (rank << 32) | (keys[slot] - 1);
+                }
+            }
+            Arrays.sort(packed);
+            int[] ids = new int[Math.min(max, count)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (int) packed[i];
+            }
+            return ids;
+        }
+
+        /**
+         * Finds the slot holding a row id, or the empty slot where it belongs.
+         *
+         * @param rowId The row id.
+         * @param table The keys of the table to search.
+         * @return The slot.
+         */
+        private static int slotOf(int rowId, int[] table) {
+            int mask = table.length - 1;
+            int hash = rowId * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (table[slot] != 0 && table[slot] != rowId + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Doubles the table, re-inserting every row.
+         */
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldMatched = matched;
+            int[] oldDistances = distances;
+            keys = new int[oldKeys.length * 2];
+            matched = new int[oldKeys.length * 2];
+            distances = new int[oldKeys.length * 2];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != 0) {
+                    int newSlot = slotOf(oldKeys[slot] - 1, keys);
+                    keys[newSlot] = oldKeys[slot];
+                    matched[newSlot] = oldMatched[slot];
+                    distances[newSlot] = oldDistances[slot];
+                }
+            }
+        }
+    }
+}
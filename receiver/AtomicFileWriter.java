@@ -0,0 +1,418 @@
+package receiver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * The AtomicFileWriter class replaces the contents of a file so that a crash at any point leaves either the old
+ * contents or the new contents in place, never a truncated mix. New contents are written to a temp file next to the
+ * target, forced to the storage device, and then renamed over the target in a single atomic step. Forcing the temp
+ * file first is what keeps a power loss from leaving the renamed target empty or holding garbage: most file systems
+ * may persist a rename before the data of the renamed file, so only the force orders the two. It is therefore part
+ * of the atomicity of every write and done under every policy.
+ * <p>
+ * The {@link DurabilityPolicy} controls when a completed write is made durable, that is, how long the previous
+ * contents may come back after a power loss: when the directory holding a rename is forced, and when bytes patched
+ * in place are forced.
+ * <p>
+ * Bytes patched in place have no previous copy to fall back on, so their previous contents are first appended to a
+ * journal next to the target and forced, and only then is the target patched. The journal is cleared once the
+ * patches are forced to the device. If a crash interrupts a patch, {@link #recover()} writes the journaled bytes
+ * back, so a torn patch is rolled back instead of leaving a corrupt region behind.
+ */
+public final class AtomicFileWriter {
+
+    /**
+     * The suffix of the temp file written next to the target.
+     */
+    public static final String TEMP_SUFFIX = ".tmp";
+    /**
+     * The suffix of the journal holding the previous contents of bytes patched in place.
+     */
+    public static final String JOURNAL_SUFFIX = ".journal";
+    /**
+     * The journal size in bytes beyond which unforced patches are forced, so that the journal can be cleared.
+     */
+    private static final long JOURNAL_LIMIT_BYTES = 1024 * 1024;
+
+    /**
+     * Writes the new contents of a file to the given stream.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        /**
+         * Writes the contents.
+         *
+         * @param out The stream to write to. It must not be closed by the writer.
+         * @throws IOException if an I/O error occurs while writing.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * The file being replaced.
+     */
+    private final Path target;
+    /**
+     * The temp file new contents are written to before being renamed over the target.
+     */
+    private final Path tempFile;
+    /**
+     * The journal holding the previous contents of bytes patched in place.
+     */
+    private final Path journalFile;
+    /**
+     * The number of bytes appended to the journal since it was last cleared.
+     */
+    private long journalBytes;
+    /**
+     * The current durability policy.
+     */
+    private DurabilityPolicy policy;
+    /**
+     * Whether a rename has completed since the last time the directory holding the target was forced.
+     */
+    private volatile boolean unsynced;
+    /**
+     * Whether bytes have been patched in place since the last time the target was forced.
+     */
+    private volatile boolean unsyncedPatches;
+    /**
+     * The scheduler running background syncs, created only for the INTERVAL policy.
+     */
+    private ScheduledExecutorService syncScheduler;
+    /**
+     * The scheduled background sync task, or null if none is running.
+     */
+    private ScheduledFuture<?> syncTask;
+
+    /**
+     * Constructs an AtomicFileWriter for the specified file with the given durability policy.
+     *
+     * @param filename The name of the file to be replaced on every write.
+     * @param policy The durability policy to apply.
+     */
+    public AtomicFileWriter(String filename, DurabilityPolicy policy) {
+        this.target = Path.of(filename);
+        this.tempFile = Path.of(filename + TEMP_SUFFIX);
+        this.journalFile = Path.of(filename + JOURNAL_SUFFIX);
+        setPolicy(policy);
+    }
+
+    /**
+     * Replaces the contents of the target file atomically.
+     * If anything fails before the rename, the target is left untouched and the temp file is removed.
+     *
+     * @param contentWriter The writer producing the new contents.
+     * @throws IOException if an I/O error occurs while writing, forcing or renaming the file.
+     */
+    public synchronized void write(ContentWriter contentWriter) throws IOException {
+        if (journalBytes > 0) {
+            forcePatches(); // A crash before the rename brings back the patched file, so it must not need the journal
+        }
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                contentWriter.writeTo(out);
+                out.flush();
+                channel.force(true); // Orders the data before the rename, whatever the policy
+            }
+            moveOverTarget();
+        }
+        catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        if (policy.getMode() == DurabilityPolicy.Mode.ALWAYS) {
+            forceDirectory();
+        }
+        else {
+            unsynced = true;
+        }
+    }
+
+    /**
+     * Overwrites byte ranges of the target file in place, without the temp file and rename. It is meant for
+     * patching fixed-size regions such as row slots. The previous contents of the ranges are journaled and forced
+     * first, so that {@link #recover()} can roll back patches a crash leaves incomplete. The patches are forced to
+     * the storage device according to the policy: before this returns under ALWAYS, by the next background sync
+     * under INTERVAL, and under NEVER only once the journal grows beyond {@value #JOURNAL_LIMIT_BYTES} bytes.
+     *
+     * @param positions The file offset of each patch.
+     * @param patches The bytes to write at each offset.
+     * @throws IOException if an I/O error occurs while journaling, writing or forcing the file.
+     */
+    public synchronized void writeInPlace(long[] positions, byte[][] patches) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            journal(channel, positions, patches);
+            for (int i = 0; i < patches.length; i++) {
+                writeFully(channel, positions[i], patches[i]);
+            }
+            unsyncedPatches = true;
+        }
+        if (policy.getMode() == DurabilityPolicy.Mode.ALWAYS || journalBytes > JOURNAL_LIMIT_BYTES) {
+            forcePatches();
+        }
+    }
+
+    /**
+     * Rolls back the patches a crash may have left incomplete, by writing the contents journaled before them back
+     * to the target, last patch first, and forcing it. A journal entry cut short by the crash is ignored, as its
+     * patch was never started. This must be called before the target is read after a restart.
+     *
+     * @return The number of patches rolled back.
+     * @throws IOException if the journal cannot be read or the target cannot be restored.
+     */
+    public synchronized int recover() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return 0;
+        }
+
+        List<JournalEntry> entries = readJournal();
+        if (!entries.isEmpty() && Files.exists(target)) {
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                for (int i = entries.size() - 1; i >= 0; i--) {
+                    writeFully(channel, entries.get(i).position(), entries.get(i).contents());
+                }
+                channel.force(false);
+            }
+        }
+        clearJournal();
+        return entries.size();
+    }
+
+    /**
+     * Changes the durability policy, starting or stopping the background sync task as needed.
+     * Any writes left unsynced by the previous policy are forced when switching to ALWAYS.
+     *
+     * @param policy The new durability policy.
+     */
+    public synchronized void setPolicy(DurabilityPolicy policy) {
+        this.policy = policy;
+
+        if (syncTask != null) {
+            syncTask.cancel(false);
+            syncTask = null;
+        }
+        if (policy.getMode() == DurabilityPolicy.Mode.INTERVAL) {
+            if (syncScheduler == null) {
+                syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "fsync-" + target.getFileName());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            syncTask = syncScheduler.scheduleWithFixedDelay(this::sync, policy.getIntervalMillis(),
+                    policy.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        else if (policy.getMode() == DurabilityPolicy.Mode.ALWAYS) {
+            sync();
+        }
+    }
+
+    /**
+     * Gets the current durability policy.
+     *
+     * @return The durability policy.
+     */
+    public synchronized DurabilityPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Forces the writes completed since the last sync to the storage device, so that they survive a power loss:
+     * the directory holding the target for renames, and the target itself for bytes patched in place. The contents
+     * of renamed files were forced as they were written.
+     */
+    public synchronized void sync() {
+        if (!Files.exists(target)) {
+            return;
+        }
+        if (unsyncedPatches) {
+            try {
+                forcePatches();
+            }
+            catch (IOException e) {
+                System.out.println("Failed to sync " + target + ": " + e.getMessage());
+            }
+        }
+        if (unsynced) {
+            forceDirectory();
+            unsynced = false;
+        }
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * A range of the target as it was before being patched in place.
+     *
+     * @param position The file offset of the range.
+     * @param contents The previous contents of the range.
+     */
+    private record JournalEntry(long position, byte[] contents) {
+    }
+
+    /**
+     * Appends the current contents of the ranges about to be patched to the journal and forces it, so that the
+     * journal reaches the storage device before any of the patches can.
+     *
+     * @param channel An open channel on the target.
+     * @param positions The file offset of each patch.
+     * @param patches The bytes about to be written at each offset.
+     * @throws IOException if the target cannot be read or the journal cannot be written.
+     */
+    private void journal(FileChannel channel, long[] positions, byte[][] patches) throws IOException {
+        boolean created = !Files.exists(journalFile);
+        try (FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (journalBytes == 0) {
+                journal.truncate(0); // Entries left by an earlier run must not follow the new ones
+            }
+            CRC32C crc = new CRC32C();
+            for (int i = 0; i < patches.length; i++) {
+                ByteBuffer contents = ByteBuffer.allocate(patches[i].length);
+                while (contents.hasRemaining()) {
+                    if (channel.read(contents, positions[i] + contents.position()) < 0) {
+                        break;
+                    }
+                }
+                contents.flip();
+
+                ByteBuffer entry = ByteBuffer.allocate(Long.BYTES + 2 * Integer.BYTES + contents.remaining());
+                entry.putLong(positions[i]).putInt(contents.remaining()).put(contents);
+                crc.reset();
+                crc.update(entry.array(), 0, entry.position());
+                entry.putInt((int) crc.getValue());
+                writeFully(journal, journalBytes, entry.array());
+                journalBytes += entry.capacity();
+            }
+            journal.force(true);
+        }
+        if (created) {
+            forceDirectory(); // Recovery must be able to find the journal
+        }
+    }
+
+    /**
+     * Reads the complete entries of the journal, stopping at the first one that was cut short or is corrupt.
+     *
+     * @return The journal entries in the order they were appended.
+     * @throws IOException if the journal cannot be read.
+     */
+    private List<JournalEntry> readJournal() throws IOException {
+        ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+        List<JournalEntry> entries = new ArrayList<>();
+        CRC32C crc = new CRC32C();
+        while (journal.remaining() >= Long.BYTES + 2 * Integer.BYTES) {
+            int start = journal.position();
+            long position = journal.getLong();
+            int length = journal.getInt();
+            if (length < 0 || journal.remaining() < length + Integer.BYTES) {
+                break;
+            }
+            byte[] contents = new byte[length];
+            journal.get(contents);
+            crc.reset();
+            crc.update(journal.array(), start, journal.position() - start);
+            if (journal.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            entries.add(new JournalEntry(position, contents));
+        }
+        return entries;
+    }
+
+    /**
+     * Forces the bytes patched in place to the storage device and clears the journal, which is no longer needed.
+     *
+     * @throws IOException if the target cannot be forced or the journal cannot be cleared.
+     */
+    private void forcePatches() throws IOException {
+        if (Files.exists(target)) {
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        }
+        unsyncedPatches = false;
+        clearJournal();
+    }
+
+    /**
+     * Truncates the journal and forces the truncation, so that recovery cannot roll back patches that were forced.
+     *
+     * @throws IOException if the journal cannot be truncated.
+     */
+    private void clearJournal() throws IOException {
+        if (Files.exists(journalFile)) {
+            try (FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                journal.truncate(0);
+                journal.force(true);
+            }
+        }
+        journalBytes = 0;
+    }
+
+    /**
+     * Writes all of the given bytes to a channel at the given position.
+     *
+     * @param channel The channel to write to.
+     * @param position The file offset to write at.
+     * @param bytes The bytes to write.
+     * @throws IOException if the write fails.
+     */
+    private static void writeFully(FileChannel channel, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Renames the temp file over the target, atomically where the file system supports it.
+     *
+     * @throws IOException if the rename fails.
+     */
+    private void moveOverTarget() throws IOException {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces the directory holding the target, so that the rename itself survives a power loss.
+     * Platforms that cannot open a directory for syncing are silently skipped.
+     */
+    private void forceDirectory() {
+        Path directory = target.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            // Directory sync is not supported on this platform; the rename is still atomic.
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package receiver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.CRC32C;
+import java.util.zip.Inflater;
+
+/**
+ * The BlockStoreFile class reads and writes the block-compressed data store format.
+ * Lines are grouped into blocks of roughly {@link #TARGET_BLOCK_BYTES} uncompressed bytes, and each block is
+ * deflated independently. A block index at the end of the file records where every block starts and which rows
+ * it holds, so a full scan can inflate all blocks in parallel and a point read only has to inflate one block,
+ * which is how rows are read on demand from a block store.
+ * <p>
+ * File layout: a header (magic, version), the compressed blocks back to back, the block index
+ * (block count, then offset, compressed length, uncompressed length, first row, row count and checksum per block,
+ * then the checksum of the index itself), and a trailer holding the index offset followed by the magic again.
+ * <p>
+ * Checksums are CRC32C values of the compressed bytes, so a corrupt block is detected before it is inflated.
+ * They are verified whenever a block is read. A corrupt block found while loading the store is left out of the
+ * lines read and reported through {@link #getCorruptRecords()}, so that the rest of the store is still loaded.
+ * Files of the first version have no checksums and are still read; they gain checksums when they are next written.
+ */
+public class BlockStoreFile {
+
+    /**
+     * The file name extension that selects the block-compressed format.
+     */
+    public static final String EXTENSION = ".blk";
+    /**
+     * The approximate number of uncompressed bytes grouped into one block.
+     */
+    public static final int TARGET_BLOCK_BYTES = 64 * 1024;
+    /**
+     * The magic number identifying a block store file ("CBLK").
+     */
+    private static final int MAGIC = 0x43424C4B;
+    /**
+     * The version of the file layout written, which adds checksums to the first version.
+     */
+    private static final int VERSION = 2;
+    /**
+     * The version of the file layout without checksums, which is still read.
+     */
+    private static final int UNCHECKED_VERSION = 1;
+    /**
+     * The checksum recorded for the blocks of a file without checksums.
+     */
+    private static final long NO_CHECKSUM = -1;
+    /**
+     * The size of the header in bytes.
+     */
+    private static final int HEADER_BYTES = 8;
+    /**
+     * The size of a block index entry in bytes.
+     */
+    private static final int INDEX_ENTRY_BYTES = 28;
+    /**
+     * The size of the trailer in bytes.
+     */
+    private static final int TRAILER_BYTES = 12;
+    /**
+     * The deflate level used for blocks, favouring speed as records compress well regardless.
+     */
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * The file name of the block store.
+     */
+    private final String FILENAME;
+    /**
+     * The writer used to replace the file atomically.
+     */
+    private final AtomicFileWriter fileWriter;
+    /**
+     * The block index of the file, loaded on first use and replaced on every write.
+     */
+    private BlockInfo[] blockIndex;
+    /**
+     * The corrupt blocks found by the last load of the store, in file order.
+     */
+    private List<CorruptRecord> corruptRecords = List.of();
+
+    /**
+     * The location and row range of a single compressed block.
+     *
+     * @param offset The file offset of the compressed block.
+     * @param compressedLength The length of the compressed block in bytes.
+     * @param uncompressedLength The length of the block once inflated.
+     * @param firstRow The zero-based index of the first row in the block.
+     * @param rowCount The number of rows in the block.
+     * @param checksum The CRC32C checksum of the compressed block, or {@link #NO_CHECKSUM} if the file has none.
+     */
+    record BlockInfo(long offset, int compressedLength, int uncompressedLength, int firstRow, int rowCount,
+                     long checksum) {
+    }
+
+    /**
+     * Constructs a BlockStoreFile for the specified file, forcing every write to the storage device.
+     * The file is not touched until it is read or written.
+     *
+     * @param FILENAME The name of the block store file.
+     */
+    public BlockStoreFile(String FILENAME) {
+        this(FILENAME, new AtomicFileWriter(FILENAME, DurabilityPolicy.always()));
+    }
+
+    /**
+     * Constructs a BlockStoreFile for the specified file that replaces it through the given writer.
+     * The file is not touched until it is read or written.
+     *
+     * @param FILENAME The name of the block store file.
+     * @param fileWriter The writer used to replace the file atomically.
+     */
+    public BlockStoreFile(String FILENAME, AtomicFileWriter fileWriter) {
+        this.FILENAME = FILENAME;
+        this.fileWriter = fileWriter;
+    }
+
+    /**
+     * Checks whether a file name selects the block-compressed format.
+     *
+     * @param filename The file name to check.
+     * @return true if the file should be stored as compressed blocks, false otherwise.
+     */
+    public static boolean isBlockStoreFile(String filename) {
+        return filename.endsWith(EXTENSION);
+    }
+
+    /**
+     * Reads every line in the file, inflating blocks in parallel and assembling them in row order.
+     * An empty file is treated as an empty store. The rows of a corrupt block are left out, and the block is
+     * reported through {@link #getCorruptRecords()}.
+     *
+     * @return The lines of the intact blocks of the file in order.
+     * @throws IOException if the file cannot be read or is not a valid block store.
+     */
+    public List<String> readAll() throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ)) {
+            BlockInfo[] blocks = loadIndex(channel);
+
+            String[][] decoded = new String[blocks.length][];
+            List<CorruptRecord> corrupt = Collections.synchronizedList(new ArrayList<>());
+            try {
+                IntStream.range(0, blocks.length).parallel().forEach(i -> {
+                    try {
+                        decoded[i] = readRows(channel, blocks[i]);
+                    }
+                    catch (CorruptBlockException e) {
+                        decoded[i] = new String[0];
+                        corrupt.add(new CorruptRecord(blocks[i].firstRow(), blocks[i].offset(), null));
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            List<String> lines = new ArrayList<>(totalRows(blocks));
+            for (String[] rows : decoded) {
+                lines.addAll(Arrays.asList(rows));
+            }
+            corrupt.sort((a, b) -> Integer.compare(a.getRow(), b.getRow()));
+            this.corruptRecords = List.copyOf(corrupt);
+            return lines;
+        }
+    }
+
+    /**
+     * Reads a single line, inflating only the block that holds it.
+     *
+     * @param index The zero-based index of the line.
+     * @return The line at the index, or null if the index is out of bounds.
+     * @throws IOException if the file cannot be read, is not a valid block store, or the block is corrupt.
+     */
+    public String readLine(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ)) {
+            BlockInfo[] blocks = loadIndex(channel);
+            if (index < 0 || index >= totalRows(blocks)) {
+                return null;
+            }
+
+            BlockInfo block = blocks[findBlock(blocks, index)];
+            return readRows(channel, block)[index - block.firstRow()];
+        }
+    }
+
+    /**
+     * Gets the corrupt blocks found by the last load of the store. Their rows are not part of the lines read, so
+     * the next write of the store drops them.
+     *
+     * @return The corrupt blocks in file order.
+     */
+    public List<CorruptRecord> getCorruptRecords() {
+        return corruptRecords;
+    }
+
+    /**
+     * Gets the number of rows a corrupt block held, as recorded in the block index.
+     *
+     * @param record A corrupt block, which must still be part of the store.
+     * @return The number of rows of the block, or 0 if it is not part of the store.
+     */
+    public int getRowCount(CorruptRecord record) {
+        for (BlockInfo block : blockIndex == null ? new BlockInfo[0] : blockIndex) {
+            if (block.offset() == record.getOffset()) {
+                return block.rowCount();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Appends corrupt blocks to the quarantine file next to the store, so that their contents are kept once they
+     * are dropped from the store. Each block is written on a line of its own as the line number of its first
+     * row, its offset and its compressed bytes in Base64, separated by tabs, like the rows quarantined from a
+     * plain text store. The quarantine file is forced to the device before returning.
+     *
+     * @param records The corrupt blocks, which must still be part of the store.
+     * @throws IOException if the store cannot be read or the quarantine file cannot be written.
+     */
+    public void quarantine(List<CorruptRecord> records) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (FileChannel channel = FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ)) {
+            for (BlockInfo block : loadIndex(channel)) {
+                for (CorruptRecord record : records) {
+                    if (block.offset() == record.getOffset()) {
+                        ByteBuffer compressed = readFully(channel, block.offset(), block.compressedLength());
+                        text.append(record.getRow() + 1).append('\t').append(record.getOffset()).append('\t')
+                                .append(Base64.getEncoder().encodeToString(compressed.array()))
+                                .append(System.lineSeparator());
+                    }
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(FILENAME + TextStoreFile.QUARANTINE_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes the lines to the file as independently compressed blocks, atomically replacing its previous contents.
+     * Blocks are compressed in parallel and then written in order.
+     *
+     * @param lines The lines to write.
+     * @throws IOException if an I/O error occurs during writing to the file.
+     */
+    public void write(List<String> lines) throws IOException {
+        List<byte[]> rawBlocks = new ArrayList<>();
+        List<Integer> rowCounts = new ArrayList<>();
+
+        ByteArrayOutputStream current = new ByteArrayOutputStream(TARGET_BLOCK_BYTES + 1024);
+        int rowsInCurrent = 0;
+        for (String line : lines) {
+            current.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+            current.write('\n');
+            rowsInCurrent++;
+            if (current.size() >= TARGET_BLOCK_BYTES) {
+                rawBlocks.add(current.toByteArray());
+                rowCounts.add(rowsInCurrent);
+                current.reset();
+                rowsInCurrent = 0;
+            }
+        }
+        if (rowsInCurrent > 0) {
+            rawBlocks.add(current.toByteArray());
+            rowCounts.add(rowsInCurrent);
+        }
+
+        byte[][] compressed = new byte[rawBlocks.size()][];
+        IntStream.range(0, rawBlocks.size()).parallel().forEach(i -> compressed[i] = deflate(rawBlocks.get(i)));
+
+        BlockInfo[] blocks = new BlockInfo[compressed.length];
+        try {
+            fileWriter.write(stream -> writeBlocks(new DataOutputStream(stream), compressed, rawBlocks, rowCounts, blocks));
+        }
+        catch (IOException e) {
+            throw new IOException("Failed to write block store: " + FILENAME, e);
+        }
+
+        this.blockIndex = blocks;
+        this.corruptRecords = List.of();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Writes the header, the compressed blocks, the block index and the trailer, filling in the block index
+     * as the blocks are laid out.
+     *
+     * @param out The stream to write to.
+     * @param compressed The compressed blocks.
+     * @param rawBlocks The uncompressed blocks.
+     * @param rowCounts The number of rows in each block.
+     * @param blocks The block index to fill in.
+     * @throws IOException if an I/O error occurs while writing.
+     */
+    private static void writeBlocks(DataOutputStream out, byte[][] compressed, List<byte[]> rawBlocks,
+                                    List<Integer> rowCounts, BlockInfo[] blocks) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        long offset = HEADER_BYTES;
+        int firstRow = 0;
+        for (int i = 0; i < compressed.length; i++) {
+            out.write(compressed[i]);
+            blocks[i] = new BlockInfo(offset, compressed[i].length, rawBlocks.get(i).length, firstRow,
+                    rowCounts.get(i), checksum(compressed[i], 0, compressed[i].length));
+            offset += compressed[i].length;
+            firstRow += rowCounts.get(i);
+        }
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(4 + blocks.length * INDEX_ENTRY_BYTES);
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        index.writeInt(blocks.length);
+        for (BlockInfo block : blocks) {
+            index.writeLong(block.offset());
+            index.writeInt(block.compressedLength());
+            index.writeInt(block.uncompressedLength());
+            index.writeInt(block.firstRow());
+            index.writeInt(block.rowCount());
+            index.writeInt((int) block.checksum());
+        }
+        byte[] indexArray = indexBytes.toByteArray();
+        out.write(indexArray);
+        out.writeInt((int) checksum(indexArray, 0, indexArray.length));
+        out.writeLong(offset);
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    /**
+     * Returns the block index of the file, reading it from the trailer if it has not been loaded yet.
+     *
+     * @param channel An open channel on the file.
+     * @return The block index.
+     * @throws IOException if the file cannot be read or is not a valid block store.
+     */
+    private BlockInfo[] loadIndex(FileChannel channel) throws IOException {
+        if (blockIndex == null) {
+            blockIndex = readIndex(channel);
+        }
+        return blockIndex;
+    }
+
+    /**
+     * Reads the block index from the trailer of the file, verifying its checksum.
+     *
+     * @param channel An open channel on the file.
+     * @return The block index.
+     * @throws IOException if the file cannot be read or is not a valid block store.
+     */
+    BlockInfo[] readIndex(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize == 0) {
+            return new BlockInfo[0];
+        }
+        if (fileSize < HEADER_BYTES + TRAILER_BYTES) {
+            throw new IOException("Not a valid block store: " + FILENAME);
+        }
+
+        ByteBuffer header = readFully(channel, 0, HEADER_BYTES);
+        ByteBuffer trailer = readFully(channel, fileSize - TRAILER_BYTES, TRAILER_BYTES);
+        long indexOffset = trailer.getLong();
+        int magic = header.getInt();
+        int version = header.getInt();
+        if (magic != MAGIC || trailer.getInt() != MAGIC || (version != VERSION && version != UNCHECKED_VERSION)
+                || indexOffset < HEADER_BYTES || indexOffset > fileSize - TRAILER_BYTES) {
+            throw new IOException("Not a valid block store: " + FILENAME);
+        }
+
+        ByteBuffer index = readFully(channel, indexOffset, (int) (fileSize - TRAILER_BYTES - indexOffset));
+        if (version == VERSION) {
+            int length = index.limit() - 4;
+            if (length < 4 || checksum(index.array(), 0, length) != Integer.toUnsignedLong(index.getInt(length))) {
+                throw new IOException("Corrupt block index in " + FILENAME);
+            }
+        }
+
+        BlockInfo[] blocks = new BlockInfo[index.getInt()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new BlockInfo(index.getLong(), index.getInt(), index.getInt(), index.getInt(), index.getInt(),
+                    version == VERSION ? Integer.toUnsignedLong(index.getInt()) : NO_CHECKSUM);
+        }
+        return blocks;
+    }
+
+    /**
+     * Reads and inflates a single block and splits it into its rows.
+     *
+     * @param channel An open channel on the file.
+     * @param block The block to read.
+     * @return The rows of the block.
+     * @throws IOException if the block cannot be read or is corrupt.
+     */
+    String[] readRows(FileChannel channel, BlockInfo block) throws IOException {
+        return splitRows(inflate(channel, block), block.rowCount());
+    }
+
+    /**
+     * Finds the block holding the specified row by binary search on the first row of each block.
+     *
+     * @param blocks The block index.
+     * @param row The zero-based index of the row.
+     * @return The position of the block in the index.
+     */
+    static int findBlock(BlockInfo[] blocks, int row) {
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blocks[mid].firstRow() <= row) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the total number of rows described by a block index.
+     *
+     * @param blocks The block index.
+     * @return The number of rows in all blocks.
+     */
+    static int totalRows(BlockInfo[] blocks) {
+        return blocks.length == 0 ? 0 : blocks[blocks.length - 1].firstRow() + blocks[blocks.length - 1].rowCount();
+    }
+
+    /**
+     * Reads a block and checks its checksum, as is done when scrubbing the store. Blocks of a file without
+     * checksums are checked by inflating them instead.
+     *
+     * @param channel An open channel on the file.
+     * @param block The block to check.
+     * @return The corrupt block, or null if it is intact.
+     * @throws IOException if the block cannot be read.
+     */
+    CorruptRecord verifyBlock(FileChannel channel, BlockInfo block) throws IOException {
+        try {
+            if (block.checksum() == NO_CHECKSUM) {
+                inflate(channel, block);
+            }
+            else {
+                readBlock(channel, block);
+            }
+            return null;
+        }
+        catch (CorruptBlockException e) {
+            return new CorruptRecord(block.firstRow(), block.offset(), null);
+        }
+    }
+
+    /**
+     * Reads and inflates a single block.
+     *
+     * @param channel An open channel on the file.
+     * @param block The block to read.
+     * @return The uncompressed block contents.
+     * @throws IOException if the block cannot be read or is corrupt.
+     */
+    private byte[] inflate(FileChannel channel, BlockInfo block) throws IOException {
+        ByteBuffer compressed = readBlock(channel, block);
+        byte[] raw = new byte[block.uncompressedLength()];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != raw.length) {
+                throw new CorruptBlockException("Corrupt block at offset " + block.offset() + " in " + FILENAME);
+            }
+        }
+        catch (DataFormatException e) {
+            throw new CorruptBlockException("Corrupt block at offset " + block.offset() + " in " + FILENAME);
+        }
+        finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    /**
+     * Reads a compressed block and verifies its checksum, if the file has checksums.
+     *
+     * @param channel An open channel on the file.
+     * @param block The block to read.
+     * @return A buffer holding the compressed block, ready to be read.
+     * @throws IOException if the block cannot be read or its checksum does not match.
+     */
+    private ByteBuffer readBlock(FileChannel channel, BlockInfo block) throws IOException {
+        ByteBuffer compressed = readFully(channel, block.offset(), block.compressedLength());
+        if (block.checksum() != NO_CHECKSUM
+                && checksum(compressed.array(), 0, block.compressedLength()) != block.checksum()) {
+            throw new CorruptBlockException("Checksum mismatch in block at offset " + block.offset() + " in "
+                    + FILENAME);
+        }
+        return compressed;
+    }
+
+    /**
+     * Computes the CRC32C checksum of a range of bytes.
+     *
+     * @param bytes The buffer holding the bytes.
+     * @param offset The position of the first byte.
+     * @param length The number of bytes.
+     * @return The checksum, as an unsigned 32-bit value.
+     */
+    private static long checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Compresses a single block.
+     *
+     * @param raw The uncompressed block contents.
+     * @return The compressed block.
+     */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Splits the contents of an inflated block into its newline-terminated rows.
+     *
+     * @param raw The uncompressed block contents.
+     * @param rowCount The number of rows in the block.
+     * @return The rows of the block.
+     */
+    private static String[] splitRows(byte[] raw, int rowCount) {
+        String[] rows = new String[rowCount];
+        int start = 0;
+        int row = 0;
+        for (int i = 0; i < raw.length && row < rowCount; i++) {
+            if (raw[i] == '\n') {
+                rows[row++] = new String(raw, start, i - start, StandardCharsets.UTF_8);
+                start = i + 1;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads an exact number of bytes from the channel at the given position.
+     *
+     * @param channel An open channel on the file.
+     * @param position The file offset to read from.
+     * @param length The number of bytes to read.
+     * @return A buffer holding the bytes, ready to be read.
+     * @throws IOException if the file ends before all bytes are read.
+     */
+    private ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("Unexpected end of block store: " + FILENAME);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Signals that a block was read but its contents are corrupt, as opposed to the file not being readable.
+     */
+    private static class CorruptBlockException extends IOException {
+
+        /**
+         * The serialization version of the exception.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs a CorruptBlockException with the specified detail message.
+         *
+         * @param message The detail message.
+         */
+        CorruptBlockException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package receiver;
+
+/**
+ * The ChangeEvent class describes one committed change to the lines of a FileEditor, as published by a
+ * {@link ChangeFeed}. Events carry a sequence number that increases by one for every change, so consumers can tell
+ * whether they have missed any, and they can be written to and parsed from a single line of the change log.
+ */
+public final class ChangeEvent {
+
+    /**
+     * The kinds of change an event can describe.
+     */
+    public enum Type {
+        /**
+         * A line was appended.
+         */
+        ADD,
+        /**
+         * A line was replaced.
+         */
+        UPDATE,
+        /**
+         * A line was removed.
+         */
+        DELETE,
+        /**
+         * The last line was removed to undo an add.
+         */
+        UNDO_ADD,
+        /**
+         * A line was restored to its content before an update.
+         */
+        UNDO_UPDATE,
+        /**
+         * A deleted line was inserted back at its original index.
+         */
+        UNDO_DELETE
+    }
+
+    /**
+     * The field separator of the change log format.
+     */
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * The sequence number of the change.
+     */
+    private final long sequence;
+    /**
+     * The time the change was published, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+    /**
+     * The kind of change.
+     */
+    private final Type type;
+    /**
+     * The zero-based index of the line the change applies to.
+     */
+    private final int index;
+    /**
+     * The content of the line after the change, or the removed line for removals.
+     */
+    private final String row;
+
+    /**
+     * Constructs a ChangeEvent.
+     *
+     * @param sequence The sequence number of the change.
+     * @param timestamp The time the change was published, in milliseconds since the epoch.
+     * @param type The kind of change.
+     * @param index The zero-based index of the line the change applies to.
+     * @param row The content of the line after the change, or the removed line for removals.
+     */
+    public ChangeEvent(long sequence, long timestamp, Type type, int index, String row) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.index = index;
+        this.row = row;
+    }
+
+    /**
+     * Gets the sequence number of the change.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the time the change was published.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the kind of change.
+     *
+     * @return The type of the change.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the index of the line the change applies to.
+     *
+     * @return The zero-based index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the content of the line after the change, or the removed line for removals.
+     *
+     * @return The row.
+     */
+    public String getRow() {
+        return row;
+    }
+
+    /**
+     * Formats the event as a single line of the change log: the sequence number, timestamp, type, index and row,
+     * separated by tabs. Backslashes, tabs and line breaks in the row are escaped. The line break is not included.
+     *
+     * @return The formatted line.
+     */
+    public String toLogLine() {
+        return sequence + String.valueOf(SEPARATOR) + timestamp + SEPARATOR + type.name() + SEPARATOR + index
+                + SEPARATOR + escapeRow(row);
+    }
+
+    /**
+     * Parses a line of the change log written by {@link #toLogLine()}.
+     *
+     * @param line The line, without its line break.
+     * @return The parsed event.
+     * @throws IllegalArgumentException if the line is not a valid change log entry.
+     */
+    public static ChangeEvent parse(String line) {
+        String[] fields = line.split(String.valueOf(SEPARATOR), 5);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Malformed change log entry: " + line);
+        }
+
+        try {
+            return new ChangeEvent(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Type.valueOf(fields[2]),
+                    Integer.parseInt(fields[3]), unescapeRow(fields[4]));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed change log entry: " + line);
+        }
+    }
+
+    /**
+     * Escapes backslashes, tabs and line breaks in a row so that it fits on a single line of the change log.
+     *
+     * @param row The row.
+     * @return The escaped row.
+     */
+    public static String escapeRow(String row) {
+        StringBuilder escaped = new StringBuilder(row.length());
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Reverses {@link #escapeRow(String)}.
+     *
+     * @param escaped The escaped row.
+     * @return The row.
+     */
+    public static String unescapeRow(String escaped) {
+        StringBuilder row = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                row.append(switch (next) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> next;
+                });
+            }
+            else {
+                row.append(c);
+            }
+        }
+        return row.toString();
+    }
+
+    /**
+     * Returns the event in its change log format.
+     *
+     * @return The formatted line.
+     */
+    @Override
+    public String toString() {
+        return toLogLine();
+    }
+}
@@ -0,0 +1,435 @@
+package receiver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * The ChangeFeed class publishes the committed changes of a FileEditor as an ordered stream of {@link ChangeEvent}s.
+ * <p>
+ * The FileEditor hands each event to a bounded ring buffer without taking a lock, and a background dispatcher
+ * thread drains the buffer, appends the events to a change log file and delivers them to in-process subscribers.
+ * Other processes can follow the log from any byte offset with a {@link ChangeLogReader}. The writer only ever
+ * waits when the buffer is full, so a slow subscriber or disk holds up at most one buffer of changes.
+ * <p>
+ * The log is forced to the storage device according to a {@link DurabilityPolicy}, before the events are
+ * delivered. Sequence numbers continue from the last event in an existing log, and a partial entry left at the end
+ * of the log by a crash is truncated when the feed is opened.
+ * <p>
+ * If the log cannot be appended to or forced, the feed fails: nothing more is delivered, so the log never has a
+ * hole, and publishing or waiting for delivery throws from then on.
+ */
+public class ChangeFeed implements AutoCloseable {
+
+    /**
+     * The default number of events the buffer holds.
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 1 << 14;
+    /**
+     * The time the writer waits before checking again when the buffer is full or it awaits delivery, in nanoseconds.
+     */
+    private static final long FULL_BUFFER_WAIT_NANOS = 50_000;
+    /**
+     * The longest time the dispatcher sleeps when the buffer is empty, in nanoseconds.
+     */
+    private static final long IDLE_WAIT_NANOS = 10_000_000;
+
+    /**
+     * The ring buffer of events waiting to be dispatched.
+     */
+    private final AtomicReferenceArray<ChangeEvent> buffer;
+    /**
+     * The mask mapping a position to its slot in the buffer.
+     */
+    private final int mask;
+    /**
+     * The position of the next event the dispatcher takes. Written only by the dispatcher.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The position of the next event the writer puts. Written only by the writer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * The in-process subscribers.
+     */
+    private final List<Consumer<ChangeEvent>> subscribers = new CopyOnWriteArrayList<>();
+    /**
+     * The change log the events are appended to.
+     */
+    private final FileChannel log;
+    /**
+     * The thread draining the buffer.
+     */
+    private final Thread dispatcher;
+    /**
+     * The sequence number of the last event published.
+     */
+    private long lastSequence;
+    /**
+     * The sequence number of the last event written to the log and delivered to the subscribers.
+     */
+    private volatile long lastDeliveredSequence;
+    /**
+     * The size of the change log once the last delivered event was appended.
+     */
+    private volatile long deliveredLogOffset;
+    /**
+     * Whether the feed has been closed.
+     */
+    private volatile boolean closed;
+    /**
+     * The policy deciding when the change log is forced to the storage device.
+     */
+    private volatile DurabilityPolicy policy = DurabilityPolicy.always();
+    /**
+     * The error that failed the feed, or null if it has not failed.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Constructs a ChangeFeed appending to the given change log, with the default buffer capacity.
+     *
+     * @param logFilename The name of the change log file, which is created if it does not exist.
+     * @throws IOException if the change log cannot be opened.
+     */
+    public ChangeFeed(String logFilename) throws IOException {
+        this(logFilename, DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Constructs a ChangeFeed appending to the given change log.
+     *
+     * @param logFilename The name of the change log file, which is created if it does not exist.
+     * @param bufferCapacity The number of events the buffer holds before the writer waits, rounded up to a power
+     * of two.
+     * @throws IOException if the change log cannot be opened.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public ChangeFeed(String logFilename, int bufferCapacity) throws IOException {
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException("Buffer capacity must be positive: " + bufferCapacity);
+        }
+
+        int capacity = Integer.highestOneBit(bufferCapacity);
+        if (capacity < bufferCapacity) {
+            capacity <<= 1;
+        }
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.log = FileChannel.open(Path.of(logFilename), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            this.lastSequence = recoverLastSequence(log);
+        }
+        catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        this.lastDeliveredSequence = lastSequence;
+        log.position(log.size());
+        this.deliveredLogOffset = log.size();
+
+        this.dispatcher = new Thread(this::dispatch, "change-feed-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Registers an in-process subscriber. It receives every event published from now on, in order, on the
+     * dispatcher thread, after the event has been written to the change log.
+     *
+     * @param subscriber The subscriber.
+     */
+    public void subscribe(Consumer<ChangeEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Removes an in-process subscriber.
+     *
+     * @param subscriber The subscriber.
+     */
+    public void unsubscribe(Consumer<ChangeEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Publishes a committed change, assigning it the next sequence number. Changes must be published from a
+     * single thread at a time, which is the case for the FileEditor owning the feed. The call waits only while
+     * the buffer is full.
+     *
+     * @param type The kind of change.
+     * @param index The zero-based index of the line the change applies to.
+     * @param row The content of the line after the change, or the removed line for removals.
+     * @return The published event.
+     * @throws IllegalStateException if the feed has been closed or has failed.
+     */
+    public ChangeEvent publish(ChangeEvent.Type type, int index, String row) {
+        if (closed) {
+            throw new IllegalStateException("Change feed has been closed.");
+        }
+        checkDispatching();
+
+        long position = tail.get();
+        while (position - head.get() > mask) {
+            checkDispatching();
+            LockSupport.unpark(dispatcher);
+            LockSupport.parkNanos(FULL_BUFFER_WAIT_NANOS);
+        }
+        ChangeEvent event = new ChangeEvent(++lastSequence, System.currentTimeMillis(), type, index, row);
+        buffer.lazySet((int) position & mask, event);
+        tail.lazySet(position + 1);
+        LockSupport.unpark(dispatcher);
+        return event;
+    }
+
+    /**
+     * Gets the sequence number of the last event published.
+     *
+     * @return The sequence number, or 0 if nothing has ever been published to the log.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the sequence number of the last event written to the change log and delivered to the subscribers.
+     *
+     * @return The sequence number.
+     */
+    public long getLastDeliveredSequence() {
+        return lastDeliveredSequence;
+    }
+
+    /**
+     * Gets the size of the change log once the last delivered event was appended. After
+     * {@link #awaitDelivery()}, a {@link ChangeLogReader} starting at this offset receives exactly the events
+     * published from then on.
+     *
+     * @return The byte offset.
+     */
+    public long getDeliveredLogOffset() {
+        return deliveredLogOffset;
+    }
+
+    /**
+     * Waits until every event published so far has been written to the change log, forced according to the
+     * durability policy, and delivered.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     * @throws IllegalStateException if the feed fails before every event is delivered.
+     */
+    public void awaitDelivery() throws InterruptedException {
+        long target = lastSequence;
+        while (lastDeliveredSequence < target) {
+            if (closed && !dispatcher.isAlive()) {
+                return;
+            }
+            checkDispatching();
+            LockSupport.unpark(dispatcher);
+            LockSupport.parkNanos(FULL_BUFFER_WAIT_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Sets the durability policy that decides when the change log is forced to the storage device.
+     * The default is {@link DurabilityPolicy#always()}, which forces every batch of events before delivering it.
+     *
+     * @param policy The durability policy to apply.
+     */
+    public void setDurabilityPolicy(DurabilityPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Checks whether the feed has failed.
+     *
+     * @return true if the change log could not be appended to or forced, false otherwise.
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Closes the feed, dispatching every event still in the buffer before closing the change log.
+     *
+     * @throws IOException if the change log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Runs the dispatcher: drains the buffer in batches, appends each batch to the change log, forces it according
+     * to the durability policy and then delivers it to the subscribers, until the feed is closed and the buffer is
+     * empty. If the log cannot be appended to or forced, the feed fails and the dispatcher stops without
+     * delivering the batch.
+     */
+    private void dispatch() {
+        StringBuilder batch = new StringBuilder();
+        ChangeEvent[] events = new ChangeEvent[mask + 1];
+        boolean unforced = false;
+        long lastForceNanos = System.nanoTime();
+        while (true) {
+            long from = head.get();
+            long to = tail.get();
+            if (from == to) {
+                try {
+                    if (unforced && (closed || forceDue(lastForceNanos))) {
+                        log.force(false);
+                        unforced = false;
+                        lastForceNanos = System.nanoTime();
+                    }
+                }
+                catch (IOException e) {
+                    fail(e);
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                continue;
+            }
+
+            int count = (int) (to - from);
+            batch.setLength(0);
+            for (int i = 0; i < count; i++) {
+                int slot = (int) (from + i) & mask;
+                events[i] = buffer.get(slot);
+                buffer.lazySet(slot, null);
+                batch.append(events[i].toLogLine()).append('\n');
+            }
+            head.lazySet(to);
+
+            try {
+                ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    log.write(bytes);
+                }
+                unforced = policy.getMode() != DurabilityPolicy.Mode.NEVER;
+                if (policy.getMode() == DurabilityPolicy.Mode.ALWAYS || (unforced && forceDue(lastForceNanos))) {
+                    log.force(false);
+                    unforced = false;
+                    lastForceNanos = System.nanoTime();
+                }
+                deliveredLogOffset = log.position();
+            }
+            catch (IOException e) {
+                fail(e);
+                return;
+            }
+
+            long delivered = events[count - 1].getSequence();
+            for (int i = 0; i < count; i++) {
+                for (Consumer<ChangeEvent> subscriber : subscribers) {
+                    try {
+                        subscriber.accept(events[i]);
+                    }
+                    catch (RuntimeException e) {
+                        System.out.println("Change subscriber failed: " + e.getMessage());
+                    }
+                }
+                events[i] = null;
+            }
+            lastDeliveredSequence = delivered;
+        }
+    }
+
+    /**
+     * Checks whether the log is due to be forced under the INTERVAL policy.
+     *
+     * @param lastForceNanos The time the log was last forced, in {@link System#nanoTime()} units.
+     * @return true if the policy is INTERVAL and its interval has elapsed, false otherwise.
+     */
+    private boolean forceDue(long lastForceNanos) {
+        DurabilityPolicy current = policy;
+        return current.getMode() == DurabilityPolicy.Mode.INTERVAL
+                && System.nanoTime() - lastForceNanos >= current.getIntervalMillis() * 1_000_000;
+    }
+
+    /**
+     * Fails the feed after the change log could not be appended to or forced. The log is cut back to the last
+     * delivered event where possible, so that it does not end with events that were never delivered.
+     *
+     * @param e The error.
+     */
+    private void fail(IOException e) {
+        failure = e;
+        System.out.println("Change feed failed, no more changes are delivered: " + e);
+        try {
+            log.truncate(deliveredLogOffset);
+        }
+        catch (IOException ignored) {
+            // A partial entry left behind is truncated when the feed is next opened
+        }
+    }
+
+    /**
+     * Checks that the dispatcher is still delivering events.
+     *
+     * @throws IllegalStateException if the feed has failed or its dispatcher has stopped.
+     */
+    private void checkDispatching() {
+        if (failure != null) {
+            throw new IllegalStateException("Change feed has failed: " + failure, failure);
+        }
+        if (!dispatcher.isAlive() && !closed) {
+            throw new IllegalStateException("Change feed dispatcher has stopped.");
+        }
+    }
+
+    /**
+     * Finds the sequence number of the last complete entry in a change log, truncating any partial entry that
+     * follows it. Only the end of the log is read.
+     *
+     * @param log The change log.
+     * @return The last sequence number, or 0 if the log holds no complete entry.
+     * @throws IOException if the log cannot be read or truncated.
+     */
+    private static long recoverLastSequence(FileChannel log) throws IOException {
+        long size = log.size();
+        long end = ChangeLogReader.lastLineBreakBefore(log, size);
+        if (end < 0) {
+            log.truncate(0);
+            return 0;
+        }
+        if (end + 1 < size) {
+            log.truncate(end + 1);
+        }
+
+        long start = ChangeLogReader.lastLineBreakBefore(log, end) + 1;
+        ByteBuffer line = ByteBuffer.allocate((int) (end - start));
+        while (line.hasRemaining() && log.read(line, start + line.position()) >= 0) {
+            // Keep reading until the entry is complete
+        }
+        return ChangeEvent.parse(new String(line.array(), StandardCharsets.UTF_8)).getSequence();
+    }
+}
@@ -0,0 +1,152 @@
+package receiver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ChangeLogReader class follows the change log written by a {@link ChangeFeed}, starting from any byte offset.
+ * Each call to {@link #poll()} returns the complete entries appended since the previous call, so a consumer in
+ * another process can tail the log and resume from the offset it last saved.
+ */
+public class ChangeLogReader implements AutoCloseable {
+
+    /**
+     * The maximum number of bytes read by a single poll.
+     */
+    private static final int MAX_POLL_BYTES = 1 << 20;
+    /**
+     * The number of bytes read at a time when searching backwards for a line break.
+     */
+    private static final int SEARCH_WINDOW_BYTES = 4096;
+
+    /**
+     * The change log being followed.
+     */
+    private final FileChannel log;
+    /**
+     * The offset of the first byte not yet returned.
+     */
+    private long offset;
+
+    /**
+     * Constructs a ChangeLogReader following the given change log from its beginning.
+     *
+     * @param logFilename The name of the change log file.
+     * @throws IOException if the change log cannot be opened.
+     */
+    public ChangeLogReader(String logFilename) throws IOException {
+        this(logFilename, 0);
+    }
+
+    /**
+     * Constructs a ChangeLogReader following the given change log from the given offset.
+     *
+     * @param logFilename The name of the change log file.
+     * @param offset The byte offset to start from, which must be the start of an entry, such as an offset
+     * previously returned by {@link #getOffset()}.
+     * @throws IOException if the change log cannot be opened.
+     */
+    public ChangeLogReader(String logFilename, long offset) throws IOException {
+        this.log = FileChannel.open(Path.of(logFilename), StandardOpenOption.READ);
+        this.offset = offset;
+    }
+
+    /**
+     * Reads the complete entries appended since the last poll. An entry still being written is left for the next
+     * poll. At most about one megabyte of entries is returned per call.
+     *
+     * @return The new events, in order, or an empty list if there are none.
+     * @throws IOException if the change log cannot be read.
+     * @throws IllegalArgumentException if the log holds a malformed entry.
+     */
+    public List<ChangeEvent> poll() throws IOException {
+        long available = log.size() - offset;
+        if (available <= 0) {
+            return List.of();
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(available, MAX_POLL_BYTES));
+        while (bytes.hasRemaining() && log.read(bytes, offset + bytes.position()) >= 0) {
+            // Keep reading until the buffer is full
+        }
+
+        List<ChangeEvent> events = new ArrayList<>();
+        byte[] data = bytes.array();
+        int lineStart = 0;
+        for (int i = 0; i < bytes.position(); i++) {
+            if (data[i] == '\n') {
+                events.add(ChangeEvent.parse(new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8)));
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart == 0 && bytes.position() == MAX_POLL_BYTES) {
+            throw new IllegalArgumentException("Change log entry at offset " + offset + " is too long.");
+        }
+        offset += lineStart;
+        return events;
+    }
+
+    /**
+     * Gets the offset of the first byte not yet returned, from which a new reader can resume.
+     *
+     * @return The byte offset.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the number of bytes appended to the change log after the offset of the first byte not yet returned.
+     *
+     * @return The number of pending bytes.
+     * @throws IOException if the size of the change log cannot be read.
+     */
+    public long getPendingBytes() throws IOException {
+        return Math.max(0, log.size() - offset);
+    }
+
+    /**
+     * Closes the change log.
+     *
+     * @throws IOException if the change log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Finds the last line break before a position in a file by reading backwards from it.
+     *
+     * @param channel The file.
+     * @param before The position to search before.
+     * @return The offset of the line break, or -1 if there is none.
+     * @throws IOException if the file cannot be read.
+     */
+    static long lastLineBreakBefore(FileChannel channel, long before) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SEARCH_WINDOW_BYTES);
+        long end = before;
+        while (end > 0) {
+            long start = Math.max(0, end - SEARCH_WINDOW_BYTES);
+            window.clear().limit((int) (end - start));
+            while (window.hasRemaining() && channel.read(window, start + window.position()) >= 0) {
+                // Keep reading until the window is full
+            }
+            for (int i = window.position() - 1; i >= 0; i--) {
+                if (window.get(i) == '\n') {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+}
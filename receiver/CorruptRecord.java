@@ -0,0 +1,72 @@
+package receiver;
+
+/**
+ * The CorruptRecord class describes a record of the data store whose checksum does not match its contents.
+ * In a plain text store the record is one row; in a block-compressed store it is a whole block, as the rows of a
+ * corrupt block cannot be told apart.
+ */
+public class CorruptRecord {
+
+    /**
+     * The zero-based index of the row, or of the first row of the block.
+     */
+    private final int row;
+    /**
+     * The byte offset of the record in the store.
+     */
+    private final long offset;
+    /**
+     * The raw contents of the row, or null for a block whose contents cannot be decoded.
+     */
+    private final String content;
+
+    /**
+     * Constructs a CorruptRecord.
+     *
+     * @param row The zero-based index of the row, or of the first row of the block.
+     * @param offset The byte offset of the record in the store.
+     * @param content The raw contents of the row, or null for a block whose contents cannot be decoded.
+     */
+    public CorruptRecord(int row, long offset, String content) {
+        this.row = row;
+        this.offset = offset;
+        this.content = content;
+    }
+
+    /**
+     * Gets the zero-based index of the row, or of the first row of the block.
+     *
+     * @return The row index.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Gets the byte offset of the record in the store.
+     *
+     * @return The byte offset.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the raw contents of the row, as far as they can be decoded.
+     *
+     * @return The contents, or null for a block.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Describes the record for reports.
+     *
+     * @return The one-based line number and the offset of the record.
+     */
+    @Override
+    public String toString() {
+        return "line " + (row + 1) + " at offset " + offset;
+    }
+}
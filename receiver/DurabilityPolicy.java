@@ -0,0 +1,117 @@
+package receiver;
+
+/**
+ * The DurabilityPolicy class describes when completed writes are made durable on the storage device.
+ * Every write of the data store is made atomic by forcing a fully written temp file to the device and renaming it
+ * over the store, so a power loss never leaves the store empty or corrupt. That force orders the data before the
+ * rename and is made under every policy. The policy decides how long a completed write, that is the rename or a
+ * row patched in place, may sit in the operating system's cache, during which a power loss brings back the
+ * previous contents of the store.
+ * <ul>
+ *     <li>{@link #always()} forces every completed write before it returns, trading latency for durability.</li>
+ *     <li>{@link #everyMillis(long)} forces completed writes in the background at most once per interval,
+ *     so at most one interval of writes can be lost.</li>
+ *     <li>{@link #never()} leaves making completed writes durable entirely to the operating system.</li>
+ * </ul>
+ */
+public final class DurabilityPolicy {
+
+    /**
+     * The ways in which writes can be forced to the storage device.
+     */
+    public enum Mode {
+        /**
+         * Make every write durable before it completes.
+         */
+        ALWAYS,
+        /**
+         * Make outstanding writes durable periodically in the background.
+         */
+        INTERVAL,
+        /**
+         * Never make writes durable explicitly.
+         */
+        NEVER
+    }
+
+    /**
+     * The mode of this policy.
+     */
+    private final Mode mode;
+    /**
+     * The interval between background syncs in milliseconds, used only in INTERVAL mode.
+     */
+    private final long intervalMillis;
+
+    /**
+     * Constructs a DurabilityPolicy. Use the static factory methods instead.
+     *
+     * @param mode The mode of the policy.
+     * @param intervalMillis The interval between background syncs in milliseconds.
+     */
+    private DurabilityPolicy(Mode mode, long intervalMillis) {
+        this.mode = mode;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Returns a policy that makes every write durable on the storage device before it completes.
+     *
+     * @return The policy.
+     */
+    public static DurabilityPolicy always() {
+        return new DurabilityPolicy(Mode.ALWAYS, 0);
+    }
+
+    /**
+     * Returns a policy that makes outstanding writes durable on the storage device once per interval.
+     *
+     * @param intervalMillis The interval between syncs in milliseconds.
+     * @return The policy.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    public static DurabilityPolicy everyMillis(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Sync interval must be positive.");
+        }
+        return new DurabilityPolicy(Mode.INTERVAL, intervalMillis);
+    }
+
+    /**
+     * Returns a policy that never makes writes durable explicitly, leaving flushing to the operating system.
+     * Writes of the data store are still forced as far as their atomicity requires.
+     *
+     * @return The policy.
+     */
+    public static DurabilityPolicy never() {
+        return new DurabilityPolicy(Mode.NEVER, 0);
+    }
+
+    /**
+     * Gets the mode of this policy.
+     *
+     * @return The mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the interval between background syncs.
+     *
+     * @return The interval in milliseconds, or 0 if the policy is not periodic.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Returns a readable description of the policy.
+     *
+     * @return The description.
+     */
+    @Override
+    public String toString() {
+        return mode == Mode.INTERVAL ? "fsync every " + intervalMillis + "ms" : "fsync " + mode.name().toLowerCase();
+    }
+}
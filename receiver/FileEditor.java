@@ -1,18 +1,29 @@
 package receiver;
 
 import exceptions.CustomException;
+import query.Field;
+import query.FuzzyMatch;
+import query.Query;
+import query.QueryPlanner;
+import query.QueryResult;
+import query.SecondaryIndex;
+import query.SortedIndex;
+import query.TrigramIndex;
 import validators.EmailValidator;
 import validators.NameValidator;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The FileEditor class manages file operations such as adding, deleting, updating, and listing lines.
  * It handles the core file manipulation logic for the application.
  */
-public class FileEditor {
+public final class FileEditor {
 
     /**
      * The number of input parameters expected for an add command.
@@ -22,26 +33,135 @@ public class FileEditor {
      * Stores the lines read from or to be written to the file.
      */
     private final List<String> lines;
+    /**
+     * The lines list when rows are read on demand, or null when the whole file is loaded.
+     */
+    private final LazyLineList lazyLines;
     /**
      * The file name with which the FileEditor will work.
      */
     private final String FILENAME;
+    /**
+     * The pool used to share a single instance of repeated lines. Rows are held as whole Strings, so only rows
+     * that are equal as a whole are shared; a {@link TokenizedLineList} pools their name and email domain tokens
+     * instead.
+     */
+    private final StringPool stringPool = new StringPool();
+    /**
+     * The writer used to replace the file atomically on every store, according to its durability policy.
+     */
+    private final AtomicFileWriter fileWriter;
+    /**
+     * The block-compressed store backing the file, or null if the file is stored as plain text.
+     */
+    private final BlockStoreFile blockStoreFile;
+    /**
+     * The plain text store backing the file, or null if the file is stored as compressed blocks.
+     */
+    private final TextStoreFile textStoreFile;
+    /**
+     * The rows whose contents changed since the file was last stored.
+     */
+    private final BitSet dirtyRows = new BitSet();
+    /**
+     * Whether rows were added or removed since the file was last stored, which requires a full rewrite.
+     */
+    private boolean structureDirty;
+    /**
+     * The lines as they were when the current transaction began, or null if no transaction is open.
+     */
+    private List<String> transactionCheckpoint;
+    /**
+     * The feed committed changes are published to, or null if changes are not published.
+     */
+    private ChangeFeed changeFeed;
+    /**
+     * The changes made since the file was last stored, published once they are committed.
+     */
+    private final List<ChangeEvent> pendingChanges = new ArrayList<>();
+    /**
+     * The reason the file could not be loaded, or null if it was. The file is never written while it is set, so
+     * that a store that failed to load is not replaced by the empty lines held instead.
+     */
+    private IOException loadFailure;
+    /**
+     * The deletions of the corrupt rows dropped when the file was loaded, published to the first change feed set,
+     * so that replicas still holding the rows drop them as well.
+     */
+    private final List<ChangeEvent> droppedAtLoad = new ArrayList<>();
+    /**
+     * The secondary indexes kept up to date over the lines, used to answer queries.
+     */
+    private final List<SecondaryIndex> indexes = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a FileEditor for managing file operations on a specified file.
      * It attempts to read the existing content of the file upon initialization.
+     * Lines are held in a {@link VersionedLineList}, so snapshots of them are taken without copying.
+     * Files ending in {@value BlockStoreFile#EXTENSION} are stored as compressed blocks instead of plain text.
      *
      * @param FILENAME The name of the file to be managed.
      */
     public FileEditor(String FILENAME) {
+        this(FILENAME, new VersionedLineList());
+    }
+
+    /**
+     * Constructs a FileEditor for managing file operations on a specified file, holding its lines in the
+     * given list. Passing an {@link OffHeapRecordStore} keeps the row contents outside the Java heap, and passing
+     * a {@link TokenizedLineList} holds each name and email domain once however many rows repeat it.
+     * The list is expected to be empty and is filled from the file upon initialization.
+     *
+     * @param FILENAME The name of the file to be managed.
+     * @param lines The list used to hold the lines of the file.
+     */
+    public FileEditor(String FILENAME, List<String> lines) {
+        this(FILENAME, lines, null);
+    }
+
+    /**
+     * Constructs a FileEditor that reads rows on demand instead of loading the whole file.
+     * Only the line offset index is built at startup, or loaded from its {@value TextStoreFile#INDEX_SIDECAR_SUFFIX}
+     * sidecar file, and rows are decoded on first access and kept in the given cache. For a block-compressed store
+     * only the block index is read at startup, and reading a row inflates the one block holding it.
+     *
+     * @param FILENAME The name of the file to be managed.
+     * @param rowCache The cache holding decoded rows.
+     */
+    public FileEditor(String FILENAME, RowCache rowCache) {
+        this(FILENAME, null, rowCache);
+    }
+
+    /**
+     * Constructs a FileEditor holding its lines either in the given list or, if a row cache is given,
+     * in a list that reads rows on demand.
+     *
+     * @param FILENAME The name of the file to be managed.
+     * @param lines The list used to hold the lines of the file, or null when reading rows on demand.
+     * @param rowCache The cache holding decoded rows, or null when loading the whole file.
+     */
+    private FileEditor(String FILENAME, List<String> lines, RowCache rowCache) {
         this.FILENAME = FILENAME;
-        this.lines = new ArrayList<>();
+        this.fileWriter = new AtomicFileWriter(FILENAME, DurabilityPolicy.always());
+        this.blockStoreFile = BlockStoreFile.isBlockStoreFile(FILENAME) ? new BlockStoreFile(FILENAME, fileWriter) : null;
+        this.textStoreFile = blockStoreFile == null ? new TextStoreFile(FILENAME, fileWriter) : null;
+        if (rowCache == null) {
+            this.lazyLines = null;
+        }
+        else if (blockStoreFile != null) {
+            this.lazyLines = new LazyLineList(FILENAME, blockStoreFile, rowCache, stringPool::canonicalize);
+        }
+        else {
+            this.lazyLines = new LazyLineList(FILENAME, rowCache, stringPool::canonicalize);
+        }
+        this.lines = lazyLines == null ? lines : lazyLines;
 
         try {
             readFile();
         }
         catch (IOException e) {
-            System.out.println(e.getMessage());
+            loadFailure = e;
+            System.out.println(e.getMessage() + ". The file is left untouched and will not be written.");
         }
     }
 
@@ -54,6 +174,18 @@ public class FileEditor {
      * @throws IllegalArgumentException If the input string format is invalid.
      */
     public void addAction(String inputString) throws IOException, IllegalArgumentException{
+        addPreparedLine(prepareAddLine(inputString));
+    }
+
+    /**
+     * Validates and formats the input of an add action without changing anything, so that it can run ahead of
+     * the add and on any thread. The checks and their messages are those of {@link #addAction(String)}.
+     *
+     * @param inputString The string containing the data to be added to the file.
+     * @return The formatted line to add.
+     * @throws IllegalArgumentException If the input string format is invalid.
+     */
+    public String prepareAddLine(String inputString) throws IllegalArgumentException {
         if (inputString == null || inputString.trim().isEmpty()) {
             throw new IllegalArgumentException("Input string cannot be null or empty.");
         }
@@ -83,8 +215,20 @@ public class FileEditor {
         String trimmedFirstName = toTitleCase(parts[0].trim());
         String trimmedLastName = toTitleCase(parts[1].trim());
 
-        String formattedLineToAdd = trimmedFirstName + " " + trimmedLastName + " " + email;
+        return stringPool.canonicalize(trimmedFirstName + " " + trimmedLastName + " " + email);
+    }
+
+    /**
+     * Adds a line already validated and formatted by {@link #prepareAddLine(String)} to the file.
+     *
+     * @param formattedLineToAdd The formatted line to add.
+     * @throws IOException If an I/O error occurs during writing to the file.
+     */
+    public void addPreparedLine(String formattedLineToAdd) throws IOException {
         lines.add(formattedLineToAdd);
+        structureDirty = true;
+        recordChange(ChangeEvent.Type.ADD, lines.size() - 1, formattedLineToAdd);
+        updateIndexes(null, formattedLineToAdd);
 
         storeToFile(); // Throws IOException
 
@@ -103,6 +247,9 @@ public class FileEditor {
         }
         String undidLines = lines.getLast();
         lines.removeLast();
+        structureDirty = true;
+        recordChange(ChangeEvent.Type.UNDO_ADD, lines.size(), undidLines);
+        updateIndexes(undidLines, null);
 
         // If storeToFile() throws an IOException, it will be propagated up to the caller
         storeToFile();
@@ -124,7 +271,10 @@ public class FileEditor {
             throw new IndexOutOfBoundsException("Delete action failed: Index " + index + " is out of bounds.");
         }
             // Remove the element at the specified index
-            lines.remove(index);
+            String deletedLine = lines.remove(index);
+            structureDirty = true;
+            recordChange(ChangeEvent.Type.DELETE, index, deletedLine);
+            updateIndexes(deletedLine, null);
 
             // Write the updated list back to the file
             storeToFile();
@@ -144,6 +294,9 @@ public class FileEditor {
             throw new IndexOutOfBoundsException("Undo Delete action failed: Index " + index + " is out of bounds.");
         }
             lines.add(index, deletedLine);
+            structureDirty = true;
+            recordChange(ChangeEvent.Type.UNDO_DELETE, index, deletedLine);
+            updateIndexes(null, deletedLine);
             storeToFile();  // Assume storeToFile() could throw an IOException
             System.out.println("Undo delete: Restored '" + deletedLine + "' at index " + index);
 
@@ -157,11 +310,20 @@ public class FileEditor {
      * @throws IOException If an I/O error occurs during file modification.
      */
     public void updateAction(int index, String inputString) throws IOException, IllegalArgumentException {
-        // Check if the index is valid
-        if (index < 0 || index >= lines.size()) {
-            throw new IndexOutOfBoundsException("Update action failed: Index " + index + " is out of bounds.");
-        }
+        checkUpdateIndex(index);
+        applyPreparedUpdate(index, prepareUpdate(inputString));
+    }
 
+    /**
+     * Validates and formats the input of an update action without changing anything, so that it can run ahead of
+     * the update and on any thread. The checks and their messages are those of {@link #updateAction(int, String)},
+     * which checks the index first.
+     *
+     * @param inputString The new content, starting with the line number.
+     * @return The validated and formatted fields to update.
+     * @throws IllegalArgumentException If the input string format is invalid.
+     */
+    public PreparedUpdate prepareUpdate(String inputString) throws IllegalArgumentException {
         // Split the input into parts
         String[] inputParts = inputString.split(";");
 
@@ -197,40 +359,77 @@ public class FileEditor {
             throw new IllegalArgumentException("Invalid email input.");
         }
 
-        // Format and update the line
-        String[] beforeUpdatedLineParts = getLineAtIndex(index).split(" ");
+        // If the email field is a regular input and not an email address
+        if (!email.isEmpty() && emailValidationResults[1]) {
+            email = toTitleCase(email);
+        }
+        return new PreparedUpdate(trimmedFirstName, trimmedLastName, email);
+    }
 
-        // If there is an email field to update
-        if (!email.isEmpty()) {
-            // If the field is a regular input and not an email address
-            if (emailValidationResults[1]) {
-                email = toTitleCase(email);
-                beforeUpdatedLineParts[2] = email;
-            }
+    /**
+     * Updates a line in the file at the specified index with fields already validated and formatted by
+     * {@link #prepareUpdate(String)}.
+     *
+     * @param index The index of the line to be updated.
+     * @param update The validated and formatted fields to update.
+     * @throws IOException If an I/O error occurs during file modification.
+     */
+    public void applyPreparedUpdate(int index, PreparedUpdate update) throws IOException {
+        checkUpdateIndex(index);
+        String line = getLineAtIndex(index);
+        if (line.split(" ").length < ADDCMD_NUM_OF_INPUT_PARAMS) {
+            throw new IllegalArgumentException("Update action failed: Line at index " + index + " is malformed.");
+        }
+        applyUpdatedLine(index, formatUpdatedLine(line, update));
+    }
 
-            // If input is an email address
-            else {
-                beforeUpdatedLineParts[2] = email;
-            }
-            beforeUpdatedLineParts[0] = trimmedFirstName;
-            beforeUpdatedLineParts[1] = trimmedLastName;
+    /**
+     * Computes the line that an update leaves behind, without changing anything, so that several updates of the
+     * same line can be folded into one.
+     *
+     * @param line The line before the update, which must hold at least a first name, a last name and an email.
+     * @param update The validated and formatted fields to update.
+     * @return The line after the update.
+     */
+    public String formatUpdatedLine(String line, PreparedUpdate update) {
+        String[] beforeUpdatedLineParts = line.split(" ");
 
+        // If there is an email field to update
+        if (!update.getEmail().isEmpty()) {
+            beforeUpdatedLineParts[2] = update.getEmail();
+            beforeUpdatedLineParts[0] = update.getFirstName();
+            beforeUpdatedLineParts[1] = update.getLastName();
         }
 
         // If there is firstName, lastName to update
-        else if (!trimmedLastName.isEmpty()) {
-            beforeUpdatedLineParts[0] = trimmedFirstName;
-            beforeUpdatedLineParts[1] = trimmedLastName;
+        else if (!update.getLastName().isEmpty()) {
+            beforeUpdatedLineParts[0] = update.getFirstName();
+            beforeUpdatedLineParts[1] = update.getLastName();
         }
 
         // If only firstName to update
         else {
-            beforeUpdatedLineParts[0] = trimmedFirstName;
+            beforeUpdatedLineParts[0] = update.getFirstName();
         }
 
-        String formattedLineToAdd = String.join(" ", beforeUpdatedLineParts);
+        return stringPool.canonicalize(String.join(" ", beforeUpdatedLineParts));
+    }
 
-        lines.set(index, formattedLineToAdd);
+    /**
+     * Replaces a line in the file with the result of one or more updates, computed by
+     * {@link #formatUpdatedLine(String, PreparedUpdate)}.
+     *
+     * @param index The index of the line to be updated.
+     * @param formattedLine The updated line.
+     * @throws IOException If an I/O error occurs during file modification.
+     */
+    public void applyUpdatedLine(int index, String formattedLine) throws IOException {
+        checkUpdateIndex(index);
+
+        String previousLine = lines.set(index, formattedLine);
+        dirtyRows.set(index);
+        recordChange(ChangeEvent.Type.UPDATE, index, formattedLine);
+        updateIndexes(previousLine, formattedLine);
 
         // Write the updated list back to the file
         storeToFile();
@@ -251,14 +450,100 @@ public class FileEditor {
             throw new IndexOutOfBoundsException("Undo update failed: Index " + index + " is out of bounds.");
         }
         // Directly replace the line at the index with the original line
-        lines.set(index, beforeUpdatedLine);
+        String updatedLine = lines.set(index, beforeUpdatedLine);
+        dirtyRows.set(index);
+        recordChange(ChangeEvent.Type.UNDO_UPDATE, index, beforeUpdatedLine);
+        updateIndexes(updatedLine, beforeUpdatedLine);
         storeToFile();
         System.out.println("Undo update: Restored '" + beforeUpdatedLine + "' at index " + index);
     }
 
 
+    /**
+     * Applies changes published by another FileEditor's {@link ChangeFeed}, as a replica does to follow it.
+     * The rows are applied as they were committed, without validation, and the file is written once for the
+     * whole batch. If any change does not fit the current lines, none of them are applied.
+     *
+     * @param changes The changes to apply, in sequence order.
+     * @throws IOException If an I/O error occurs during file modification.
+     * @throws IndexOutOfBoundsException If a change refers to a line that does not exist.
+     */
+    public void applyChanges(List<ChangeEvent> changes) throws IOException {
+        boolean ownTransaction = !isInTransaction();
+        if (ownTransaction) {
+            beginTransaction();
+        }
+
+        try {
+            for (ChangeEvent change : changes) {
+                String row = stringPool.canonicalize(change.getRow());
+                switch (change.getType()) {
+                    case ADD -> {
+                        lines.add(row);
+                        updateIndexes(null, row);
+                    }
+                    case UNDO_ADD -> updateIndexes(lines.removeLast(), null);
+                    case DELETE -> updateIndexes(lines.remove(change.getIndex()), null);
+                    case UNDO_DELETE -> {
+                        lines.add(change.getIndex(), row);
+                        updateIndexes(null, row);
+                    }
+                    case UPDATE, UNDO_UPDATE -> {
+                        updateIndexes(lines.set(change.getIndex(), row), row);
+                        dirtyRows.set(change.getIndex());
+                    }
+                }
+                if (change.getType() != ChangeEvent.Type.UPDATE && change.getType() != ChangeEvent.Type.UNDO_UPDATE) {
+                    structureDirty = true;
+                }
+                recordChange(change.getType(), change.getIndex(), row);
+            }
+        }
+        catch (RuntimeException e) {
+            if (ownTransaction) {
+                rollbackTransaction();
+            }
+            throw e;
+        }
+
+        if (ownTransaction) {
+            commitTransaction();
+        }
+    }
+
+    /**
+     * Replaces every line with the given lines and rewrites the file, as a replica does to load a snapshot.
+     *
+     * @param newLines The new lines.
+     * @throws IOException If an I/O error occurs during file modification.
+     */
+    public void replaceAllLines(List<String> newLines) throws IOException {
+        List<String> canonicalLines = new ArrayList<>(newLines.size());
+        for (String line : newLines) {
+            canonicalLines.add(stringPool.canonicalize(line));
+        }
+        lines.clear();
+        lines.addAll(canonicalLines);
+        structureDirty = true;
+        pendingChanges.clear();
+        rebuildIndexes();
+        storeToFile();
+    }
+
     // UTILITY FUNCTIONS
 
+    /**
+     * Checks that an update action refers to an existing line.
+     *
+     * @param index The index of the line to be updated.
+     * @throws IndexOutOfBoundsException If the index is out of the file's bounds.
+     */
+    private void checkUpdateIndex(int index) {
+        if (index < 0 || index >= lines.size()) {
+            throw new IndexOutOfBoundsException("Update action failed: Index " + index + " is out of bounds.");
+        }
+    }
+
     /**
      * Converts a given string to title case, where the first letter of each word is capitalized,
      * and the rest of the letters are in lowercase.
@@ -291,25 +576,369 @@ public class FileEditor {
     }
 
     /**
-     * Writes the current state of the lines list to the file, overwriting its current contents.
+     * Writes the current state of the lines list to the file.
+     * When a single existing row changed and still fits in its slot of a plain text file, just that row is
+     * rewritten in place, so the cost does not grow with the size of the store. Several rows are never patched in
+     * place, as a crash between the patches would leave part of a transaction on disk. Rows read on demand are never
+     * patched in place while a snapshot of them is open, as it reads them from the file. Otherwise the whole file is
+     * atomically replaced, and a crash during the write leaves the previous contents of the file intact.
+     * The changes are published once they are stored; if the write fails, they stay pending and are published
+     * with the next write that succeeds, as that write stores them too.
      *
      * @throws IOException if an I/O error occurs during writing to the file.
      */
     private void storeToFile() throws IOException {
+        if (transactionCheckpoint != null) {
+            return; // Deferred until the transaction commits
+        }
+
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(FILENAME, false));
-            for (String line : lines) {
-                writer.write(line + System.lineSeparator());
+            if (loadFailure != null) {
+                throw new IOException(FILENAME + " could not be loaded, so it is not overwritten: "
+                        + loadFailure.getMessage());
+            }
+            if (blockStoreFile != null) {
+                blockStoreFile.write(lines);
+                if (lazyLines != null) {
+                    resetLazyLines();
+                }
+            }
+            else if (structureDirty || dirtyRows.cardinality() != 1
+                    || (lazyLines != null && lazyLines.hasOpenSnapshots())
+                    || !textStoreFile.rewriteInPlace(lines, dirtyRows.stream().toArray())) {
+                textStoreFile.write(lines);
+                if (lazyLines != null) {
+                    resetLazyLines();
+                }
             }
-            writer.close();
         }
         catch (IOException e) {
+            // The changes stay in memory and are stored by the next write, so they are published with it
             throw new IOException("Failed to write to file: " + e);
         }
+
+        dirtyRows.clear();
+        structureDirty = false;
+        publishPendingChanges();
+    }
+
+    /**
+     * Records a change to be published to the change feed once it is committed to the file.
+     *
+     * @param type The kind of change.
+     * @param index The zero-based index of the line the change applies to.
+     * @param row The content of the line after the change, or the removed line for removals.
+     */
+    private void recordChange(ChangeEvent.Type type, int index, String row) {
+        if (changeFeed != null) {
+            pendingChanges.add(new ChangeEvent(0, 0, type, index, row));
+        }
+    }
+
+    /**
+     * Publishes the committed changes to the change feed, in the order they were made. Under the
+     * {@link DurabilityPolicy#always()} policy, this waits until they are forced to the change log, so that a
+     * committed change is never lost from the log by a crash. The changes are already committed to the file, so a
+     * failed change feed is reported without failing them.
+     */
+    private void publishPendingChanges() {
+        try {
+            if (changeFeed != null && !pendingChanges.isEmpty()) {
+                for (ChangeEvent change : pendingChanges) {
+                    changeFeed.publish(change.getType(), change.getIndex(), change.getRow());
+                }
+                if (fileWriter.getPolicy().getMode() == DurabilityPolicy.Mode.ALWAYS) {
+                    changeFeed.awaitDelivery();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IllegalStateException e) {
+            System.out.println("Changes to " + FILENAME + " were stored but not published: " + e.getMessage());
+        }
+        finally {
+            pendingChanges.clear();
+        }
+    }
+
+    /**
+     * Points the rows read on demand at the file as it is now, after it was loaded or rewritten.
+     *
+     * @throws IOException if the file cannot be opened.
+     */
+    private void resetLazyLines() throws IOException {
+        if (blockStoreFile != null) {
+            lazyLines.reset();
+        }
+        else {
+            lazyLines.reset(textStoreFile.getSlotOffsets(), textStoreFile.getSlotCapacities(),
+                    textStoreFile.getSlotCount());
+        }
+    }
+
+    /**
+     * Applies a change of one line to every secondary index.
+     *
+     * @param removedRow The row that was removed or replaced, or null if none was.
+     * @param addedRow The row that was added or replaced another, or null if none was.
+     */
+    private void updateIndexes(String removedRow, String addedRow) {
+        for (SecondaryIndex index : indexes) {
+            if (removedRow != null) {
+                index.remove(removedRow);
+            }
+            if (addedRow != null) {
+                index.insert(addedRow);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds every secondary index from the current lines, after the lines were replaced wholesale.
+     */
+    private void rebuildIndexes() {
+        for (SecondaryIndex index : indexes) {
+            buildIndex(index);
+        }
+    }
+
+    /**
+     * Fills an index with the current lines, removing anything it held before.
+     *
+     * @param index The index.
+     */
+    private void buildIndex(SecondaryIndex index) {
+        try (Snapshot snapshot = openSnapshot()) {
+            index.build(snapshot.getLines());
+        }
+    }
+
+    /**
+     * Adds a secondary index over the lines. The index is filled with the current lines and then kept up to date
+     * by every action, so that queries can use it.
+     *
+     * @param index The index, which should be empty.
+     */
+    public void addIndex(SecondaryIndex index) {
+        buildIndex(index);
+        indexes.add(index);
+    }
+
+    /**
+     * Removes a secondary index, which then stops being updated.
+     *
+     * @param index The index.
+     */
+    public void removeIndex(SecondaryIndex index) {
+        indexes.remove(index);
+    }
+
+    /**
+     * Gets the secondary indexes kept over the lines.
+     *
+     * @return The indexes.
+     */
+    public List<SecondaryIndex> getIndexes() {
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * Runs a query over the lines, using a secondary index where the {@link QueryPlanner} can, and otherwise
+     * scanning a snapshot of the lines in parallel.
+     *
+     * @param query The query.
+     * @return The matching lines and the plan used.
+     */
+    public QueryResult query(Query query) {
+        try (Snapshot snapshot = openSnapshot()) {
+            return QueryPlanner.execute(query, snapshot.getLines(), indexes);
+        }
+    }
+
+    /**
+     * Finds the lines closest to a possibly misspelled text, such as "Jonh Smtih", ranked by edit distance.
+     * A {@link TrigramIndex} kept over the lines narrows the search to the rows containing words close to those of
+     * the text; without one, every line of a snapshot is compared with the text.
+     *
+     * @param text The text to search for.
+     * @param limit The maximum number of lines to return.
+     * @return The closest lines, closest first.
+     */
+    public List<FuzzyMatch> fuzzySearch(String text, int limit) {
+        for (SecondaryIndex index : indexes) {
+            if (index instanceof TrigramIndex trigramIndex) {
+                return trigramIndex.search(text, limit);
+            }
+        }
+
+        try (Snapshot snapshot = openSnapshot()) {
+            return TrigramIndex.searchByScan(snapshot.getLines(), text, limit);
+        }
+    }
+
+    /**
+     * Sets the feed every committed add, update, delete and undo is published to, in commit order.
+     * Changes made inside a transaction are published when it commits, and never if it is rolled back.
+     * The first feed set is also sent a deletion of every corrupt row dropped when the file was loaded, as
+     * {@link #repairCorruptRecords(List)} does for the rows it drops.
+     *
+     * @param changeFeed The change feed, or null to stop publishing changes.
+     */
+    public void setChangeFeed(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+        pendingChanges.clear();
+        if (changeFeed != null) {
+            changeFeed.setDurabilityPolicy(fileWriter.getPolicy());
+            if (!droppedAtLoad.isEmpty()) {
+                pendingChanges.addAll(droppedAtLoad);
+                droppedAtLoad.clear();
+                System.out.println("Publishing the deletion of " + pendingChanges.size()
+                        + " corrupt row(s) dropped when " + FILENAME + " was loaded.");
+                publishPendingChanges();
+            }
+        }
+    }
+
+    /**
+     * Gets the feed committed changes are published to.
+     *
+     * @return The change feed, or null if changes are not published.
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Sets the durability policy that decides when stored data is forced to the storage device.
+     * Every store is atomic regardless of the policy; the policy trades write latency against how much
+     * recently stored data a power loss can discard. The default is {@link DurabilityPolicy#always()}.
+     * The policy applies to the change log of the change feed too.
+     *
+     * @param policy The durability policy to apply.
+     */
+    public void setDurabilityPolicy(DurabilityPolicy policy) {
+        fileWriter.setPolicy(policy);
+        if (changeFeed != null) {
+            changeFeed.setDurabilityPolicy(policy);
+        }
+    }
+
+    /**
+     * Begins a transaction. Until it is committed or rolled back, actions only change the lines in memory and
+     * nothing is written to the file. The state at this point is kept as a checkpoint to roll back to:
+     * with the default {@link VersionedLineList} this is just the current version, so it costs nothing, and an
+     * {@link OffHeapRecordStore} or a {@link TokenizedLineList} is pinned by a snapshot in constant time instead
+     * of being copied.
+     *
+     * @throws IllegalStateException if a transaction is already open.
+     */
+    public void beginTransaction() {
+        if (transactionCheckpoint != null) {
+            throw new IllegalStateException("A transaction is already open.");
+        }
+
+        if (lines instanceof VersionedLineList versionedLines) {
+            transactionCheckpoint = versionedLines.currentVersion();
+        }
+        else if (lazyLines != null) {
+            transactionCheckpoint = Collections.emptyList(); // Rolled back by re-reading the unchanged slot index
+        }
+        else if (lines instanceof OffHeapRecordStore offHeapLines) {
+            transactionCheckpoint = offHeapLines.snapshot();
+        }
+        else if (lines instanceof TokenizedLineList tokenizedLines) {
+            transactionCheckpoint = tokenizedLines.snapshot();
+        }
+        else {
+            transactionCheckpoint = new ArrayList<>(lines);
+        }
+    }
+
+    /**
+     * Commits the open transaction, writing every change made since it began to the file in a single store.
+     * If the store fails, the transaction is rolled back so that the lines in memory still match the file.
+     *
+     * @throws IOException if an I/O error occurs during writing to the file.
+     * @throws IllegalStateException if no transaction is open.
+     */
+    public void commitTransaction() throws IOException {
+        if (transactionCheckpoint == null) {
+            throw new IllegalStateException("No transaction is open.");
+        }
+
+        List<String> checkpoint = transactionCheckpoint;
+        transactionCheckpoint = null;
+        if (!structureDirty && dirtyRows.isEmpty()) {
+            publishPendingChanges();
+            return;
+        }
+
+        try {
+            storeToFile();
+        }
+        catch (IOException e) {
+            transactionCheckpoint = checkpoint;
+            rollbackTransaction();
+            throw e;
+        }
+    }
+
+    /**
+     * Rolls back the open transaction, restoring the lines to the checkpoint taken when it began.
+     * As nothing was written to the file during the transaction, the file needs no changes.
+     *
+     * @throws IOException if the file cannot be reopened when rows are read on demand.
+     * @throws IllegalStateException if no transaction is open.
+     */
+    public void rollbackTransaction() throws IOException {
+        if (transactionCheckpoint == null) {
+            throw new IllegalStateException("No transaction is open.");
+        }
+
+        List<String> checkpoint = transactionCheckpoint;
+        transactionCheckpoint = null;
+        dirtyRows.clear();
+        structureDirty = false;
+        pendingChanges.clear();
+
+        if (lines instanceof VersionedLineList versionedLines) {
+            versionedLines.restore((VersionedLineList.Version) checkpoint);
+        }
+        else if (lazyLines != null) {
+            resetLazyLines();
+        }
+        else if (lines instanceof OffHeapRecordStore offHeapLines) {
+            offHeapLines.restore(checkpoint);
+        }
+        else if (lines instanceof TokenizedLineList tokenizedLines) {
+            tokenizedLines.restore(checkpoint);
+        }
+        else {
+            lines.clear();
+            lines.addAll(checkpoint);
+        }
+        rebuildIndexes();
+    }
+
+    /**
+     * Checks whether a transaction is open.
+     *
+     * @return true if a transaction is open, false otherwise.
+     */
+    public boolean isInTransaction() {
+        return transactionCheckpoint != null;
     }
 
     /**
      * Reads the contents of the file into the lines list, initializing the state of the FileEditor.
+     * Plain text files are decoded in parallel chunks, canonicalizing each line and verifying its checksum in the
+     * same pass. When rows are read on demand, only the line offset index or block index is loaded.
+     * Corrupt rows, or the corrupt blocks of a block-compressed store, are moved to the
+     * {@value TextStoreFile#QUARANTINE_SUFFIX} file next to the store and the rest is loaded, and a store written
+     * before rows had checksums is rewritten with them. If the file cannot be loaded at all, the constructor keeps
+     * the FileEditor from ever writing it.
      *
      * @throws IOException if an I/O error occurs during reading from the file.
      */
@@ -324,32 +953,211 @@ public class FileEditor {
             }
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lines.add(line);
+        if (blockStoreFile != null && lazyLines != null) {
+            resetLazyLines(); // Corrupt blocks are found as they are read or scrubbed
+            return;
+        }
+        if (blockStoreFile != null) {
+            for (String line : blockStoreFile.readAll()) {
+                lines.add(stringPool.canonicalize(line));
+            }
+            List<CorruptRecord> corruptBlocks = blockStoreFile.getCorruptRecords();
+            if (!corruptBlocks.isEmpty()) {
+                for (int i = corruptBlocks.size() - 1; i >= 0; i--) {
+                    CorruptRecord block = corruptBlocks.get(i);
+                    int lastRow = block.getRow() + blockStoreFile.getRowCount(block) - 1;
+                    for (int row = lastRow; row >= block.getRow(); row--) {
+                        droppedAtLoad.add(new ChangeEvent(0, 0, ChangeEvent.Type.DELETE, row, ""));
+                    }
+                }
+                blockStoreFile.quarantine(corruptBlocks);
+                System.out.println("Moved " + corruptBlocks.size() + " corrupt block(s) of " + FILENAME + " to "
+                        + FILENAME + TextStoreFile.QUARANTINE_SUFFIX + ".");
+                blockStoreFile.write(lines);
+            }
+            return;
+        }
+
+        try {
+            if (lazyLines != null) {
+                textStoreFile.loadIndex();
+                resetLazyLines();
+            }
+            else {
+                lines.addAll(textStoreFile.readAll(stringPool::canonicalize));
             }
         }
         catch (IOException e) {
             throw new IOException("Failed to read file: " + FILENAME, e);
         }
+
+        List<CorruptRecord> corruptRecords = textStoreFile.getCorruptRecords();
+        if (!corruptRecords.isEmpty()) {
+            for (int i = corruptRecords.size() - 1; i >= 0; i--) {
+                CorruptRecord record = corruptRecords.get(i);
+                droppedAtLoad.add(new ChangeEvent(0, 0, ChangeEvent.Type.DELETE, record.getRow(),
+                        record.getContent() == null ? "" : record.getContent()));
+            }
+            textStoreFile.quarantine(corruptRecords);
+            System.out.println("Moved " + corruptRecords.size() + " corrupt line(s) of " + FILENAME + " to "
+                    + FILENAME + TextStoreFile.QUARANTINE_SUFFIX + ".");
+        }
+        if (!corruptRecords.isEmpty() || !textStoreFile.isChecksummed()) {
+            textStoreFile.write(lazyLines == null ? lines
+                    : textStoreFile.isChecksummed() ? lazyLines
+                    : textStoreFile.readAll()); // Rows without checksums cannot be read on demand
+            if (lazyLines != null) {
+                resetLazyLines();
+            }
+        }
+    }
+
+    /**
+     * Opens a scrubber that reads the whole store back from disk and verifies every checksum, at no more than
+     * the given rate. The scrubber checks the store as it is now, and should be closed once done.
+     *
+     * @param bytesPerSecond The maximum number of bytes read per second.
+     * @return The scrubber.
+     * @throws IOException if the store cannot be opened.
+     * @throws IllegalArgumentException if the rate is not positive.
+     */
+    public StoreScrubber openScrubber(long bytesPerSecond) throws IOException {
+        return blockStoreFile != null
+                ? new StoreScrubber(FILENAME, blockStoreFile, bytesPerSecond)
+                : new StoreScrubber(FILENAME, textStoreFile, bytesPerSecond);
+    }
+
+    /**
+     * Repairs the store after a scrub found corrupt records in it.
+     * When the whole file is loaded, the lines in memory were verified as they were loaded, so the store is
+     * rewritten from them. When rows are read on demand, corrupt rows cannot be read, so they are deleted, along
+     * with every row of a corrupt block; the deletions are published to the change feed like any other. Corrupt
+     * rows of a plain text store are checked again first, skipping any rewritten since the scrub. They are moved to
+     * the {@value TextStoreFile#QUARANTINE_SUFFIX} file next to the store, as are the corrupt blocks that are
+     * deleted.
+     *
+     * @param corruptRecords The corrupt records found by the scrub.
+     * @return The number of records repaired or deleted.
+     * @throws IOException if the store cannot be read or written.
+     * @throws IllegalStateException if a transaction is open.
+     */
+    public int repairCorruptRecords(List<CorruptRecord> corruptRecords) throws IOException {
+        if (transactionCheckpoint != null) {
+            throw new IllegalStateException("The store cannot be repaired while a transaction is open.");
+        }
+
+        List<CorruptRecord> records = blockStoreFile != null ? corruptRecords
+                : textStoreFile.recheck(corruptRecords);
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        if (textStoreFile != null) {
+            textStoreFile.quarantine(records);
+        }
+        else if (lazyLines != null) {
+            blockStoreFile.quarantine(records);
+        }
+        if (lazyLines != null) {
+            for (int i = records.size() - 1; i >= 0; i--) {
+                CorruptRecord record = records.get(i);
+                int rowCount = blockStoreFile != null ? blockStoreFile.getRowCount(record) : 1;
+                for (int row = record.getRow() + rowCount - 1; row >= record.getRow(); row--) {
+                    lazyLines.discard(row);
+                    recordChange(ChangeEvent.Type.DELETE, row, record.getContent() == null ? "" : record.getContent());
+                }
+            }
+            structureDirty = true;
+            rebuildIndexes();
+        }
+        storeToFile();
+        return records.size();
     }
 
     /**
      * Displays the lines of the file to the standard output. Used to list the current contents of the file.
+     * The lines are read from a snapshot, so the listing is consistent even if the file is modified meanwhile.
      *
      * @throws CustomException if there are no lines to display.
      */
     public void getLines() throws CustomException {
-        if (lines.isEmpty()) {
-            throw new CustomException("There are no lines to display.");
+        try (Snapshot snapshot = openSnapshot()) {
+            List<String> snapshotLines = snapshot.getLines();
+            if (snapshotLines.isEmpty()) {
+                throw new CustomException("There are no lines to display.");
+            }
+
+            for (String line : snapshotLines) {
+                System.out.println(line);
+            }
         }
+    }
 
-        for (String line : lines) {
+    /**
+     * Displays the lines of the file to the standard output sorted by a field. If a {@link SortedIndex} is kept on
+     * the field, the lines are printed while walking it, without sorting or buffering them; otherwise a snapshot of
+     * the lines is sorted first.
+     *
+     * @param orderBy The field to sort by.
+     * @param descending Whether to sort in descending instead of ascending order.
+     * @throws CustomException if there are no lines to display.
+     */
+    public void getLines(Field orderBy, boolean descending) throws CustomException {
+        for (SecondaryIndex index : indexes) {
+            if (index instanceof SortedIndex sortedIndex && sortedIndex.getField() == orderBy) {
+                boolean empty = true;
+                for (String line : sortedIndex.inOrder(descending)) {
+                    System.out.println(line);
+                    empty = false;
+                }
+                if (empty) {
+                    throw new CustomException("There are no lines to display.");
+                }
+                return;
+            }
+        }
+
+        List<String> sortedLines = query(new Query(null, Query.NO_LIMIT, orderBy, descending)).getRows();
+        if (sortedLines.isEmpty()) {
+            throw new CustomException("There are no lines to display.");
+        }
+        for (String line : sortedLines) {
             System.out.println(line);
         }
     }
 
+    /**
+     * Pins a consistent, read-only view of the current lines that can be iterated from any thread while the
+     * file keeps being modified. With the default {@link VersionedLineList} this takes constant time and never
+     * blocks writers. A {@link TokenizedLineList} is pinned in constant time too, and so are an
+     * {@link OffHeapRecordStore} or rows read on demand, and
+     * their rows are read through the store as the snapshot is read, so they are never all copied onto the heap.
+     * Other line lists are copied, which takes linear time and must not overlap with writers.
+     *
+     * @return The snapshot, which should be closed once it has been read.
+     * @throws UncheckedIOException if the file cannot be opened to read rows on demand.
+     */
+    public Snapshot openSnapshot() {
+        if (lines instanceof VersionedLineList versionedLines) {
+            return new Snapshot(versionedLines.currentVersion());
+        }
+        if (lines instanceof OffHeapRecordStore offHeapLines) {
+            return new Snapshot(offHeapLines.snapshot());
+        }
+        if (lines instanceof TokenizedLineList tokenizedLines) {
+            return new Snapshot(tokenizedLines.snapshot());
+        }
+        if (lazyLines != null) {
+            try {
+                return lazyLines.snapshot();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to open a snapshot of " + FILENAME, e);
+            }
+        }
+        return new Snapshot(Collections.unmodifiableList(new ArrayList<>(lines)));
+    }
+
     /**
      * Retrieves a specific line from the file based on the index provided.
      *
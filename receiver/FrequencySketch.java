@@ -0,0 +1,125 @@
+package receiver;
+
+/**
+ * The FrequencySketch class estimates how often each key has been requested recently, using a count-min sketch
+ * of small saturating counters. Once the number of recorded requests reaches a sample size proportional to the
+ * width of the sketch, every counter is halved, so that old popularity fades and recent requests dominate.
+ */
+class FrequencySketch {
+
+    /**
+     * The number of independent counter rows.
+     */
+    private static final int DEPTH = 4;
+    /**
+     * The highest value a counter can hold.
+     */
+    private static final int MAX_COUNT = 15;
+    /**
+     * The largest number of counters in a row.
+     */
+    private static final int MAX_WIDTH = 1 << 24;
+
+    /**
+     * The counter rows.
+     */
+    private final byte[][] table;
+    /**
+     * The mask used to map a hash to a counter.
+     */
+    private final int mask;
+    /**
+     * The number of recorded requests after which the counters are halved.
+     */
+    private final int sampleSize;
+    /**
+     * The number of requests recorded since the counters were last halved.
+     */
+    private int additions;
+
+    /**
+     * Constructs a FrequencySketch sized for the specified number of distinct keys.
+     *
+     * @param expectedKeys The number of distinct keys the sketch should tell apart.
+     */
+    FrequencySketch(long expectedKeys) {
+        int width = (int) Math.min(MAX_WIDTH, Math.max(64, Long.highestOneBit(Math.max(1, expectedKeys)) << 1));
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * Records a request for the key.
+     *
+     * @param key The requested key.
+     */
+    void increment(long key) {
+        long hash = mix(key);
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            if (table[row][index] < MAX_COUNT) {
+                table[row][index]++;
+            }
+        }
+        if (++additions >= sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * Estimates how often the key has been requested recently.
+     *
+     * @param key The key.
+     * @return The estimated request count, at most {@value #MAX_COUNT}.
+     */
+    int frequency(long key) {
+        long hash = mix(key);
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Halves every counter.
+     */
+    private void age() {
+        for (byte[] counters : table) {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    /**
+     * Maps a hash to a counter in the given row.
+     *
+     * @param hash The mixed hash of the key.
+     * @param row The counter row.
+     * @return The counter index.
+     */
+    private int indexOf(long hash, int row) {
+        int low = (int) hash;
+        int high = (int) (hash >>> 32) | 1;
+        return (low + row * high) & mask;
+    }
+
+    /**
+     * Spreads the bits of a key so that nearby offsets map to unrelated counters.
+     *
+     * @param key The key.
+     * @return The mixed hash.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+}
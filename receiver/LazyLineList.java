@@ -0,0 +1,481 @@
+package receiver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * The LazyLineList class is a List of lines that reads each row from the store only when it is accessed.
+ * At startup it holds just the slot index of a plain text store, or the block index of a block-compressed store,
+ * and decoded rows are kept in a bounded {@link RowCache}.
+ * <p>
+ * Each row is referenced either by its place in the file, or, once it has been added or replaced in memory, by its
+ * position in a list of materialized rows. The place of a row in a plain text store is the file offset of its slot;
+ * in a block store it is the row number, and reading it inflates the one block holding it. The rows of the last
+ * block inflated are kept, so reading the rows in order inflates every block once. After the file is rewritten,
+ * {@link #reset} points every row back at its new place and drops the materialized rows. This class is not
+ * thread-safe.
+ * <p>
+ * A {@link #snapshot()} pins the current rows without reading them: it shares the row references, which the list
+ * then copies on its next change, and reads rows from the file as it was when the snapshot was taken. A rewrite
+ * replaces the file by renaming a new one over it, so the snapshot keeps reading the previous file. Rows must not
+ * be patched in place while a snapshot is open.
+ */
+public class LazyLineList extends AbstractList<String> implements RandomAccess {
+
+    /**
+     * The file name of the store the rows are read from.
+     */
+    private final String FILENAME;
+    /**
+     * The block store the rows are read from, or null if they are read from a plain text store.
+     */
+    private final BlockStoreFile blockStoreFile;
+    /**
+     * The cache of decoded rows, keyed by their place in the file.
+     */
+    private final RowCache rowCache;
+    /**
+     * The function applied to each row read from the file.
+     */
+    private final UnaryOperator<String> rowMapper;
+    /**
+     * Rows added or replaced in memory since the file was last rewritten.
+     */
+    private List<String> materialized = new ArrayList<>();
+    /**
+     * The channel rows are read through, reopened whenever the file is replaced.
+     */
+    private FileChannel channel;
+    /**
+     * The block index of the file, or null if the rows are read from a plain text store.
+     */
+    private BlockStoreFile.BlockInfo[] blocks;
+    /**
+     * The block inflated last, or null if none has been since the file was last reset.
+     */
+    private BlockStoreFile.BlockInfo lastBlock;
+    /**
+     * The rows of the block inflated last.
+     */
+    private String[] lastBlockRows;
+    /**
+     * The reference of each row: its place in the file if non-negative, or -(i + 1) for materialized row i.
+     */
+    private long[] refs = new long[0];
+    /**
+     * The slot capacity of each row read from the file.
+     */
+    private int[] capacities = new int[0];
+    /**
+     * The number of rows in the list.
+     */
+    private int size;
+    /**
+     * Whether the row references and materialized rows are shared with a snapshot, and must be copied before they
+     * are changed.
+     */
+    private boolean shared;
+    /**
+     * The number of snapshots not closed yet.
+     */
+    private final AtomicInteger openSnapshots = new AtomicInteger();
+
+    /**
+     * A read-only view of the rows as they were when a snapshot was taken, reading rows from the file on demand.
+     */
+    private static final class FrozenRows extends AbstractList<String> implements RandomAccess {
+
+        /**
+         * The channel on the file as it was when the snapshot was taken.
+         */
+        private final FileChannel channel;
+        /**
+         * The block store the rows are read from, or null if they are read from a plain text store.
+         */
+        private final BlockStoreFile blockStoreFile;
+        /**
+         * The block index of the file as it was when the snapshot was taken, or null for a plain text store.
+         */
+        private final BlockStoreFile.BlockInfo[] blocks;
+        /**
+         * The reference of each row.
+         */
+        private final long[] refs;
+        /**
+         * The slot capacity of each row read from the file.
+         */
+        private final int[] capacities;
+        /**
+         * The rows held in memory.
+         */
+        private final List<String> materialized;
+        /**
+         * The number of rows.
+         */
+        private final int size;
+        /**
+         * The function applied to each row read from the file.
+         */
+        private final UnaryOperator<String> rowMapper;
+
+        /**
+         * Constructs a FrozenRows view.
+         *
+         * @param channel The channel on the file as it was when the snapshot was taken.
+         * @param blockStoreFile The block store the rows are read from, or null for a plain text store.
+         * @param blocks The block index of the file, or null for a plain text store.
+         * @param refs The reference of each row.
+         * @param capacities The slot capacity of each row read from the file.
+         * @param materialized The rows held in memory.
+         * @param size The number of rows.
+         * @param rowMapper The function applied to each row read from the file.
+         */
+        FrozenRows(FileChannel channel, BlockStoreFile blockStoreFile, BlockStoreFile.BlockInfo[] blocks, long[] refs,
+                   int[] capacities, List<String> materialized, int size, UnaryOperator<String> rowMapper) {
+            this.channel = channel;
+            this.blockStoreFile = blockStoreFile;
+            this.blocks = blocks;
+            this.refs = refs;
+            this.capacities = capacities;
+            this.materialized = materialized;
+            this.size = size;
+            this.rowMapper = rowMapper;
+        }
+
+        /**
+         * Returns the row at the specified index, reading it from the file if it is not held in memory.
+         * Rows read are not cached, so that the view can be read from any thread.
+         *
+         * @param index The zero-based index of the row.
+         * @return The row.
+         * @throws IndexOutOfBoundsException if the index is out of range.
+         * @throws UncheckedIOException if the row cannot be read from the file.
+         */
+        @Override
+        public String get(int index) {
+            checkIndex(index, size);
+            long ref = refs[index];
+            if (ref < 0) {
+                return materialized.get((int) (-ref - 1));
+            }
+            try {
+                if (blocks != null) {
+                    BlockStoreFile.BlockInfo block = blocks[BlockStoreFile.findBlock(blocks, (int) ref)];
+                    return rowMapper.apply(blockStoreFile.readRows(channel, block)[(int) ref - block.firstRow()]);
+                }
+                return rowMapper.apply(TextStoreFile.readRow(channel, ref, capacities[index]));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read row " + index + " of a snapshot", e);
+            }
+        }
+
+        /**
+         * Returns the number of rows in the view.
+         *
+         * @return The number of rows.
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Constructs an empty LazyLineList over the specified plain text store. Call {@link #reset(long[], int[], int)}
+     * to point it at the file's rows.
+     *
+     * @param FILENAME The name of the text store file.
+     * @param rowCache The cache of decoded rows.
+     * @param rowMapper The function applied to each row read from the file.
+     */
+    public LazyLineList(String FILENAME, RowCache rowCache, UnaryOperator<String> rowMapper) {
+        this(FILENAME, null, rowCache, rowMapper);
+    }
+
+    /**
+     * Constructs an empty LazyLineList over the specified block store. Call {@link #reset()} to point it at the
+     * file's rows.
+     *
+     * @param FILENAME The name of the block store file.
+     * @param blockStoreFile The block store the rows are read from.
+     * @param rowCache The cache of decoded rows.
+     * @param rowMapper The function applied to each row read from the file.
+     */
+    public LazyLineList(String FILENAME, BlockStoreFile blockStoreFile, RowCache rowCache,
+                        UnaryOperator<String> rowMapper) {
+        this.FILENAME = FILENAME;
+        this.blockStoreFile = blockStoreFile;
+        this.rowCache = rowCache;
+        this.rowMapper = rowMapper;
+    }
+
+    /**
+     * Points the list at the rows of a plain text store as described by its slot index, discarding cached and
+     * materialized rows. The file is reopened, as it may have been replaced.
+     *
+     * @param offsets The file offset of each row's slot.
+     * @param slotCapacities The capacity of each row's slot.
+     * @param count The number of rows in the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public void reset(long[] offsets, int[] slotCapacities, int count) throws IOException {
+        reopen();
+        refs = Arrays.copyOf(offsets, Math.max(16, count));
+        capacities = Arrays.copyOf(slotCapacities, refs.length);
+        size = count;
+    }
+
+    /**
+     * Points the list at the rows of a block store as described by its block index, which is read from the file,
+     * discarding cached and materialized rows. The file is reopened, as it may have been replaced.
+     *
+     * @throws IOException if the file cannot be opened or its block index cannot be read.
+     * @throws IllegalStateException if the rows are read from a plain text store.
+     */
+    public void reset() throws IOException {
+        if (blockStoreFile == null) {
+            throw new IllegalStateException("A plain text store is reset from its slot index.");
+        }
+
+        reopen();
+        blocks = blockStoreFile.readIndex(channel);
+        size = BlockStoreFile.totalRows(blocks);
+        refs = new long[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            refs[i] = i;
+        }
+        capacities = new int[refs.length];
+    }
+
+    /**
+     * Returns the row at the specified index, reading and caching it if it is not already in memory.
+     *
+     * @param index The zero-based index of the row.
+     * @return The row.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     * @throws UncheckedIOException if the row cannot be read from the file.
+     */
+    @Override
+    public String get(int index) {
+        checkIndex(index, size);
+        long ref = refs[index];
+        if (ref < 0) {
+            return materialized.get((int) (-ref - 1));
+        }
+
+        String row = rowCache.get(ref);
+        if (row == null) {
+            try {
+                row = rowMapper.apply(blocks != null ? readBlockRow((int) ref)
+                        : TextStoreFile.readRow(channel, ref, capacities[index]));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read row " + index + " from " + FILENAME, e);
+            }
+            rowCache.put(ref, row);
+        }
+        return row;
+    }
+
+    /**
+     * Returns the number of rows in the list.
+     *
+     * @return The number of rows.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replaces the row at the specified index with a row held in memory.
+     *
+     * @param index The zero-based index of the row.
+     * @param line The new row.
+     * @return The row previously at the index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String set(int index, String line) {
+        String previous = get(index);
+        unshare();
+        long ref = refs[index];
+        if (ref < 0) {
+            materialized.set((int) (-ref - 1), line);
+        }
+        else {
+            refs[index] = materialize(line);
+        }
+        return previous;
+    }
+
+    /**
+     * Inserts a row held in memory at the specified index, shifting later rows up by one.
+     *
+     * @param index The zero-based index at which to insert.
+     * @param line The row to insert.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public void add(int index, String line) {
+        checkIndex(index, size + 1);
+        unshare();
+        if (size == refs.length) {
+            refs = Arrays.copyOf(refs, Math.max(16, size * 2));
+            capacities = Arrays.copyOf(capacities, refs.length);
+        }
+        System.arraycopy(refs, index, refs, index + 1, size - index);
+        System.arraycopy(capacities, index, capacities, index + 1, size - index);
+        refs[index] = materialize(line);
+        capacities[index] = 0;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Removes the row at the specified index, shifting later rows down by one.
+     *
+     * @param index The zero-based index of the row.
+     * @return The removed row.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String remove(int index) {
+        String removed = get(index);
+        discard(index);
+        return removed;
+    }
+
+    /**
+     * Removes the row at the specified index without reading it, for rows that cannot be read.
+     *
+     * @param index The zero-based index of the row.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public void discard(int index) {
+        checkIndex(index, size);
+        unshare();
+        System.arraycopy(refs, index + 1, refs, index, size - index - 1);
+        System.arraycopy(capacities, index + 1, capacities, index, size - index - 1);
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Pins a read-only view of the current rows in constant time, without reading them. The view reads the rows
+     * held in the file from a channel of its own, which is closed when the snapshot is closed.
+     *
+     * @return The snapshot, which should be closed once it has been read.
+     * @throws IOException if the file cannot be opened.
+     */
+    public Snapshot snapshot() throws IOException {
+        FileChannel snapshotChannel = FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ);
+        shared = true;
+        openSnapshots.incrementAndGet();
+        FrozenRows rows = new FrozenRows(snapshotChannel, blockStoreFile, blocks, refs, capacities, materialized, size,
+                rowMapper);
+        return new Snapshot(rows, () -> {
+            openSnapshots.decrementAndGet();
+            try {
+                snapshotChannel.close();
+            }
+            catch (IOException ignored) {
+                // The channel was only read from, so there is nothing to lose
+            }
+        });
+    }
+
+    /**
+     * Checks whether any snapshot is still open, in which case rows must not be patched in place.
+     *
+     * @return true if a snapshot is open, false otherwise.
+     */
+    public boolean hasOpenSnapshots() {
+        return openSnapshots.get() > 0;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Reopens the file and discards the cached and materialized rows, before the list is pointed at the file's rows.
+     *
+     * @throws IOException if the file cannot be opened.
+     */
+    private void reopen() throws IOException {
+        FileChannel reopened = FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ);
+        if (channel != null) {
+            channel.close();
+        }
+        channel = reopened;
+
+        materialized = new ArrayList<>();
+        shared = false;
+        lastBlock = null;
+        lastBlockRows = null;
+        rowCache.clear();
+        modCount++;
+    }
+
+    /**
+     * Reads a row of a block store, inflating the block holding it unless it was the last one inflated.
+     *
+     * @param row The row number in the file.
+     * @return The row as stored.
+     * @throws IOException if the block cannot be read or is corrupt.
+     */
+    private String readBlockRow(int row) throws IOException {
+        if (lastBlock == null || row < lastBlock.firstRow() || row >= lastBlock.firstRow() + lastBlock.rowCount()) {
+            BlockStoreFile.BlockInfo block = blocks[BlockStoreFile.findBlock(blocks, row)];
+            lastBlockRows = blockStoreFile.readRows(channel, block);
+            lastBlock = block;
+        }
+        return lastBlockRows[row - lastBlock.firstRow()];
+    }
+
+    /**
+     * Copies the row references and materialized rows if a snapshot shares them, so that they can be changed.
+     */
+    private void unshare() {
+        if (shared) {
+            refs = refs.clone();
+            capacities = capacities.clone();
+            materialized = new ArrayList<>(materialized);
+            shared = false;
+        }
+    }
+
+    /**
+     * Holds a row in memory until the next reset.
+     *
+     * @param line The row to hold.
+     * @return The reference to the materialized row.
+     */
+    private long materialize(String line) {
+        materialized.add(line);
+        return -materialized.size();
+    }
+
+    /**
+     * Checks that an index falls within the range [0, bound).
+     *
+     * @param index The index to check.
+     * @param bound The exclusive upper bound.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + bound);
+        }
+    }
+}
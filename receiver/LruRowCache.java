@@ -0,0 +1,72 @@
+package receiver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The LruRowCache class is a {@link RowCache} that evicts the least recently used rows once full.
+ */
+public class LruRowCache extends RowCache {
+
+    /**
+     * The cached rows in access order, least recently used first.
+     */
+    private final LinkedHashMap<Long, String> rows = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The total weight of the cached rows.
+     */
+    private long weight;
+
+    /**
+     * Constructs an LruRowCache with the given capacity.
+     *
+     * @param capacity The maximum number of rows, or of bytes, to cache.
+     * @param unit The unit in which the capacity is measured.
+     */
+    public LruRowCache(long capacity, Unit unit) {
+        super(capacity, unit);
+    }
+
+    /**
+     * Looks up a row, marking it as most recently used.
+     *
+     * @param offset The file offset the row was read from.
+     * @return The cached row, or null if it is not cached.
+     */
+    @Override
+    protected String lookup(long offset) {
+        return rows.get(offset);
+    }
+
+    /**
+     * Stores a row as the most recently used, then evicts least recently used rows until the cache fits.
+     *
+     * @param offset The file offset the row was read from.
+     * @param row The decoded row.
+     */
+    @Override
+    protected void store(long offset, String row) {
+        String previous = rows.put(offset, row);
+        if (previous != null) {
+            weight -= weigh(previous);
+        }
+        weight += weigh(row);
+
+        Iterator<Map.Entry<Long, String>> eldest = rows.entrySet().iterator();
+        while (weight > capacity && eldest.hasNext()) {
+            weight -= weigh(eldest.next().getValue());
+            eldest.remove();
+            recordEviction();
+        }
+    }
+
+    /**
+     * Removes every row.
+     */
+    @Override
+    protected void removeAll() {
+        rows.clear();
+        weight = 0;
+    }
+}
@@ -0,0 +1,417 @@
+package receiver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The OffHeapRecordStore class is a List of lines whose contents live outside the Java heap.
+ * Every record is stored as UTF-8 bytes in a direct ByteBuffer arena, and the only per-row state kept on the heap
+ * is an int offset and an int length in two primitive arrays. Records are decoded into Strings lazily, only when
+ * they are read through get(), so heap usage and GC work stay roughly constant as the store grows.
+ * <p>
+ * Space left behind by removed or replaced records is reclaimed by compacting the arena once more than half of it
+ * is garbage. This class is not thread-safe, in the same way as the ArrayList it replaces.
+ * <p>
+ * A {@link #snapshot()} pins the current records without copying them: it shares the arena and the index arrays,
+ * which the store then copies on its next change, and the bytes it refers to are never overwritten afterwards.
+ * Snapshots can be read from any thread while the store keeps being modified, and the store can be restored to one
+ * with {@link #restore(List)}, which takes constant time while the snapshot still shares the current arena.
+ */
+public class OffHeapRecordStore extends AbstractList<String> implements RandomAccess {
+
+    /**
+     * The initial capacity of the arena in bytes.
+     */
+    private static final int INITIAL_ARENA_BYTES = 64 * 1024;
+    /**
+     * The initial number of slots in the offset and length index.
+     */
+    private static final int INITIAL_INDEX_SLOTS = 1024;
+    /**
+     * The arena size in bytes below which garbage is never compacted.
+     */
+    private static final int MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    /**
+     * The direct buffer holding the encoded records.
+     */
+    private ByteBuffer arena;
+    /**
+     * The number of arena bytes in use, including garbage.
+     */
+    private int arenaUsed;
+    /**
+     * The number of arena bytes held by records that are no longer live.
+     */
+    private int garbageBytes;
+    /**
+     * The arena offset of each record, in row order.
+     */
+    private int[] offsets;
+    /**
+     * The encoded length of each record, in row order.
+     */
+    private int[] lengths;
+    /**
+     * The number of records in the store.
+     */
+    private int size;
+    /**
+     * Whether the index arrays are shared with a snapshot, and must be copied before they are changed.
+     */
+    private boolean indexShared;
+    /**
+     * The number of bytes at the start of the arena that a snapshot may refer to, and must not be overwritten.
+     */
+    private int frozenBytes;
+
+    /**
+     * A read-only view of the records as they were when a snapshot was taken.
+     */
+    private static final class FrozenRecords extends AbstractList<String> implements RandomAccess {
+
+        /**
+         * The arena holding the records.
+         */
+        private final ByteBuffer arena;
+        /**
+         * The arena offset of each record.
+         */
+        private final int[] offsets;
+        /**
+         * The encoded length of each record.
+         */
+        private final int[] lengths;
+        /**
+         * The number of records.
+         */
+        private final int size;
+        /**
+         * The number of arena bytes held by the records.
+         */
+        private final int liveBytes;
+
+        /**
+         * Constructs a FrozenRecords view.
+         *
+         * @param arena The arena holding the records.
+         * @param offsets The arena offset of each record.
+         * @param lengths The encoded length of each record.
+         * @param size The number of records.
+         * @param liveBytes The number of arena bytes held by the records.
+         */
+        FrozenRecords(ByteBuffer arena, int[] offsets, int[] lengths, int size, int liveBytes) {
+            this.arena = arena;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.size = size;
+            this.liveBytes = liveBytes;
+        }
+
+        /**
+         * Decodes the record at the specified index.
+         *
+         * @param index The zero-based index of the record.
+         * @return The record as a String.
+         * @throws IndexOutOfBoundsException if the index is out of range.
+         */
+        @Override
+        public String get(int index) {
+            checkIndex(index, size);
+            return decode(arena, offsets[index], lengths[index]);
+        }
+
+        /**
+         * Returns the number of records in the view.
+         *
+         * @return The number of records.
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Constructs an empty OffHeapRecordStore.
+     */
+    public OffHeapRecordStore() {
+        this.arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+        this.offsets = new int[INITIAL_INDEX_SLOTS];
+        this.lengths = new int[INITIAL_INDEX_SLOTS];
+    }
+
+    /**
+     * Decodes the record at the specified index.
+     *
+     * @param index The zero-based index of the record.
+     * @return The record as a String.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String get(int index) {
+        checkIndex(index, size);
+        return decode(arena, offsets[index], lengths[index]);
+    }
+
+    /**
+     * Returns the number of records in the store.
+     *
+     * @return The number of records.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replaces the record at the specified index. The new record overwrites the old bytes when it fits in them
+     * and no snapshot may refer to them, and is appended to the arena otherwise.
+     *
+     * @param index The zero-based index of the record to replace.
+     * @param line The new record.
+     * @return The record previously at the index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String set(int index, String line) {
+        String previous = get(index);
+        byte[] bytes = encode(line);
+        unshareIndex();
+
+        if (bytes.length <= lengths[index] && offsets[index] >= frozenBytes) {
+            arena.put(offsets[index], bytes);
+            garbageBytes += lengths[index] - bytes.length;
+        }
+        else {
+            garbageBytes += lengths[index];
+            offsets[index] = append(bytes);
+        }
+        lengths[index] = bytes.length;
+
+        compactIfWasteful();
+        return previous;
+    }
+
+    /**
+     * Inserts a record at the specified index, shifting later records up by one.
+     *
+     * @param index The zero-based index at which to insert.
+     * @param line The record to insert.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public void add(int index, String line) {
+        checkIndex(index, size + 1);
+        byte[] bytes = encode(line);
+        int offset = append(bytes);
+        unshareIndex();
+
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        System.arraycopy(offsets, index, offsets, index + 1, size - index);
+        System.arraycopy(lengths, index, lengths, index + 1, size - index);
+        offsets[index] = offset;
+        lengths[index] = bytes.length;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Removes the record at the specified index, shifting later records down by one.
+     *
+     * @param index The zero-based index of the record to remove.
+     * @return The removed record.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String remove(int index) {
+        String removed = get(index);
+        garbageBytes += lengths[index];
+        unshareIndex();
+
+        System.arraycopy(offsets, index + 1, offsets, index, size - index - 1);
+        System.arraycopy(lengths, index + 1, lengths, index, size - index - 1);
+        size--;
+        modCount++;
+
+        compactIfWasteful();
+        return removed;
+    }
+
+    /**
+     * Removes all records and releases the arena contents for reuse, or replaces the arena if a snapshot may
+     * still refer to its contents.
+     */
+    @Override
+    public void clear() {
+        if (frozenBytes > 0) {
+            arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+            frozenBytes = 0;
+        }
+        size = 0;
+        arenaUsed = 0;
+        garbageBytes = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the number of arena bytes currently in use, including garbage not yet compacted.
+     *
+     * @return The number of bytes in use.
+     */
+    public int getArenaBytesUsed() {
+        return arenaUsed;
+    }
+
+    /**
+     * Pins a read-only view of the current records in constant time, without copying them.
+     *
+     * @return The records as they are now, unaffected by later changes to the store.
+     */
+    public List<String> snapshot() {
+        indexShared = true;
+        frozenBytes = arenaUsed;
+        return new FrozenRecords(arena, offsets, lengths, size, arenaUsed - garbageBytes);
+    }
+
+    /**
+     * Restores the records to a snapshot. A snapshot of this store whose arena is still in use is restored in
+     * constant time by sharing its index again, and the records written since it was taken become garbage. Any
+     * other list, including a snapshot whose arena has since been grown or compacted, is copied into the store.
+     *
+     * @param snapshot The snapshot to restore, usually taken with {@link #snapshot()}.
+     */
+    public void restore(List<String> snapshot) {
+        if (!(snapshot instanceof FrozenRecords frozen) || frozen.arena != arena) {
+            clear();
+            addAll(snapshot);
+            return;
+        }
+
+        offsets = frozen.offsets;
+        lengths = frozen.lengths;
+        indexShared = true;
+        size = frozen.size;
+        garbageBytes = arenaUsed - frozen.liveBytes;
+        frozenBytes = arenaUsed; // Later snapshots may still refer to the records written since
+        modCount++;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Decodes a record from an arena.
+     *
+     * @param arena The arena holding the record.
+     * @param offset The arena offset of the record.
+     * @param length The encoded length of the record.
+     * @return The record as a String.
+     */
+    private static String decode(ByteBuffer arena, int offset, int length) {
+        byte[] bytes = new byte[length];
+        arena.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the index arrays if a snapshot shares them, so that they can be changed.
+     */
+    private void unshareIndex() {
+        if (indexShared) {
+            offsets = offsets.clone();
+            lengths = lengths.clone();
+            indexShared = false;
+        }
+    }
+
+    /**
+     * Encodes a record to UTF-8.
+     *
+     * @param line The record to encode.
+     * @return The encoded bytes.
+     * @throws NullPointerException if the record is null, as the store cannot represent null rows.
+     */
+    private static byte[] encode(String line) {
+        if (line == null) {
+            throw new NullPointerException("Off-heap store cannot hold null lines.");
+        }
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends encoded bytes to the end of the arena, growing it if necessary.
+     *
+     * @param bytes The bytes to append.
+     * @return The arena offset the bytes were written at.
+     */
+    private int append(byte[] bytes) {
+        ensureArenaCapacity(bytes.length);
+        int offset = arenaUsed;
+        arena.put(offset, bytes);
+        arenaUsed += bytes.length;
+        return offset;
+    }
+
+    /**
+     * Grows the arena so that it can hold the specified number of additional bytes.
+     *
+     * @param extraBytes The number of bytes about to be appended.
+     * @throws OutOfMemoryError if the arena would exceed the 2GB limit of an int-addressed buffer.
+     */
+    private void ensureArenaCapacity(int extraBytes) {
+        long required = (long) arenaUsed + extraBytes;
+        if (required <= arena.capacity()) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new OutOfMemoryError("Off-heap store exceeded its 2GB arena limit.");
+        }
+
+        long newCapacity = Math.max(required, (long) arena.capacity() * 2);
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(newCapacity, Integer.MAX_VALUE));
+        grown.put(0, arena, 0, arenaUsed);
+        arena = grown;
+        frozenBytes = 0; // Snapshots keep the previous arena
+    }
+
+    /**
+     * Rewrites the live records into a fresh arena once more than half of the current one is garbage.
+     */
+    private void compactIfWasteful() {
+        if (arenaUsed < MIN_COMPACTION_BYTES || garbageBytes * 2 < arenaUsed) {
+            return;
+        }
+
+        ByteBuffer compacted = ByteBuffer.allocateDirect(Math.max(INITIAL_ARENA_BYTES, (arenaUsed - garbageBytes) * 2));
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            compacted.put(position, arena, offsets[i], lengths[i]);
+            offsets[i] = position;
+            position += lengths[i];
+        }
+        arena = compacted;
+        arenaUsed = position;
+        garbageBytes = 0;
+        frozenBytes = 0; // Snapshots keep the previous arena
+    }
+
+    /**
+     * Checks that an index falls within the range [0, bound).
+     *
+     * @param index The index to check.
+     * @param bound The exclusive upper bound.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + bound);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package receiver;
+
+/**
+ * The PreparedUpdate class holds the fields of an update action once they have been validated and formatted by
+ * {@link FileEditor#prepareUpdate(String)}, ready to be applied to a line by
+ * {@link FileEditor#applyPreparedUpdate(int, PreparedUpdate)}.
+ */
+public class PreparedUpdate {
+
+    /**
+     * The title-cased first name.
+     */
+    private final String firstName;
+    /**
+     * The title-cased last name, or an empty string if only the first name is updated.
+     */
+    private final String lastName;
+    /**
+     * The formatted email, or an empty string if the email is not updated.
+     */
+    private final String email;
+
+    /**
+     * Constructs a PreparedUpdate.
+     *
+     * @param firstName The title-cased first name.
+     * @param lastName The title-cased last name, or an empty string if only the first name is updated.
+     * @param email The formatted email, or an empty string if the email is not updated.
+     */
+    PreparedUpdate(String firstName, String lastName, String email) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+    }
+
+    /**
+     * Gets the title-cased first name.
+     *
+     * @return The first name.
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+    /**
+     * Gets the title-cased last name.
+     *
+     * @return The last name, or an empty string if only the first name is updated.
+     */
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * Gets the formatted email.
+     *
+     * @return The email, or an empty string if the email is not updated.
+     */
+    public String getEmail() {
+        return email;
+    }
+}
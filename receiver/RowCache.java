@@ -0,0 +1,227 @@
+package receiver;
+
+/**
+ * The RowCache class holds a bounded set of decoded rows for a FileEditor that reads its rows on demand.
+ * Every row read through getLineAtIndex, including the before-image captured by UpdateCommand and the line captured
+ * by DeleteCommand, is served from the cache when present.
+ * <p>
+ * Rows are keyed by the file offset they were read from, or by their row number in the file for a block store,
+ * which stays stable while rows are inserted or removed around them. The capacity is measured either in entries
+ * or in approximate heap bytes, and the eviction policy is chosen by the factory method: {@link #lru} evicts the
+ * least recently used row, while {@link #windowTinyLfu} only lets a new row displace an existing one if it has
+ * been requested more often, which resists scans such as a full listing flushing out frequently read rows. Hit,
+ * miss and eviction counts are kept for tuning.
+ */
+public abstract class RowCache {
+
+    /**
+     * The units in which the capacity of a cache is measured.
+     */
+    public enum Unit {
+        /**
+         * Each cached row counts as one.
+         */
+        ENTRIES,
+        /**
+         * Each cached row counts as its approximate heap footprint in bytes.
+         */
+        BYTES
+    }
+
+    /**
+     * The approximate heap overhead of one cached row in bytes, covering the String, its array and the map entry.
+     */
+    private static final int ROW_OVERHEAD_BYTES = 96;
+
+    /**
+     * The maximum total weight of the cached rows.
+     */
+    protected final long capacity;
+    /**
+     * The unit in which the capacity and row weights are measured.
+     */
+    protected final Unit unit;
+    /**
+     * The number of lookups that found their row in the cache.
+     */
+    private long hitCount;
+    /**
+     * The number of lookups that did not find their row in the cache.
+     */
+    private long missCount;
+    /**
+     * The number of rows removed to make room for others.
+     */
+    private long evictionCount;
+
+    /**
+     * Constructs a RowCache with the given capacity. Use the static factory methods instead.
+     *
+     * @param capacity The maximum total weight of the cached rows.
+     * @param unit The unit in which the capacity is measured.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    protected RowCache(long capacity, Unit unit) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Row cache capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.unit = unit;
+    }
+
+    /**
+     * Returns a cache that evicts the least recently used row once full.
+     *
+     * @param capacity The maximum number of rows, or of bytes, to cache.
+     * @param unit The unit in which the capacity is measured.
+     * @return The cache.
+     */
+    public static RowCache lru(long capacity, Unit unit) {
+        return new LruRowCache(capacity, unit);
+    }
+
+    /**
+     * Returns a cache using the W-TinyLFU policy: new rows enter a small LRU window, and a row leaving the window
+     * is only admitted to the main segmented LRU cache if it is requested more often than the row it would evict.
+     *
+     * @param capacity The maximum number of rows, or of bytes, to cache.
+     * @param unit The unit in which the capacity is measured.
+     * @return The cache.
+     */
+    public static RowCache windowTinyLfu(long capacity, Unit unit) {
+        return new TinyLfuRowCache(capacity, unit);
+    }
+
+    /**
+     * Returns the cached row read from the specified offset, recording a hit or a miss.
+     *
+     * @param offset The file offset the row was read from.
+     * @return The cached row, or null if it is not cached.
+     */
+    public synchronized String get(long offset) {
+        String row = lookup(offset);
+        if (row == null) {
+            missCount++;
+        }
+        else {
+            hitCount++;
+        }
+        return row;
+    }
+
+    /**
+     * Offers a row read from the specified offset to the cache, which may evict other rows or decline it.
+     *
+     * @param offset The file offset the row was read from.
+     * @param row The decoded row.
+     */
+    public synchronized void put(long offset, String row) {
+        if (weigh(row) <= capacity) {
+            store(offset, row);
+        }
+    }
+
+    /**
+     * Removes every row from the cache, used when the file is rewritten and offsets change.
+     * Statistics are kept.
+     */
+    public synchronized void clear() {
+        removeAll();
+    }
+
+    /**
+     * Gets the number of lookups that found their row in the cache.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups that did not find their row in the cache.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the number of rows removed to make room for others.
+     *
+     * @return The eviction count.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets the fraction of lookups that found their row in the cache.
+     *
+     * @return The hit rate between 0 and 1, or 0 if there have been no lookups.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Gets the maximum total weight of the cached rows.
+     *
+     * @return The capacity, in the cache's unit.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns a summary of the cache statistics.
+     *
+     * @return The summary.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%s(capacity=%d %s, hits=%d, misses=%d, evictions=%d, hitRate=%.2f)",
+                getClass().getSimpleName(), capacity, unit.name().toLowerCase(), hitCount, missCount,
+                evictionCount, getHitRate());
+    }
+
+    /**
+     * Returns the weight of a row in the cache's unit.
+     *
+     * @param row The row to weigh.
+     * @return The weight of the row.
+     */
+    protected long weigh(String row) {
+        return unit == Unit.ENTRIES ? 1 : ROW_OVERHEAD_BYTES + 2L * row.length();
+    }
+
+    /**
+     * Records that a row was removed to make room for others.
+     */
+    protected void recordEviction() {
+        evictionCount++;
+    }
+
+    /**
+     * Looks up a row without touching the statistics. Called with the cache lock held.
+     *
+     * @param offset The file offset the row was read from.
+     * @return The cached row, or null if it is not cached.
+     */
+    protected abstract String lookup(long offset);
+
+    /**
+     * Stores a row no heavier than the capacity, evicting as the policy requires. Called with the cache lock held.
+     *
+     * @param offset The file offset the row was read from.
+     * @param row The decoded row.
+     */
+    protected abstract void store(long offset, String row);
+
+    /**
+     * Removes every row. Called with the cache lock held.
+     */
+    protected abstract void removeAll();
+}
@@ -0,0 +1,65 @@
+package receiver;
+
+import java.util.List;
+
+/**
+ * The Snapshot class pins a consistent, read-only view of a FileEditor's lines.
+ * The view does not change while the FileEditor keeps being modified, so it can be iterated completely from any
+ * thread without a lock. Closing the snapshot releases the view so that the pinned version can be reclaimed.
+ */
+public class Snapshot implements AutoCloseable {
+
+    /**
+     * The pinned lines, or null once the snapshot is closed.
+     */
+    private List<String> lines;
+    /**
+     * The action releasing what the pinned lines are read through, or null if there is none.
+     */
+    private final Runnable release;
+
+    /**
+     * Constructs a Snapshot pinning the given read-only lines.
+     *
+     * @param lines The lines to pin, which must never change.
+     */
+    public Snapshot(List<String> lines) {
+        this(lines, null);
+    }
+
+    /**
+     * Constructs a Snapshot pinning the given read-only lines, which are read through resources released when the
+     * snapshot is closed.
+     *
+     * @param lines The lines to pin, which must never change.
+     * @param release The action releasing the resources, run once when the snapshot is closed, or null if none.
+     */
+    public Snapshot(List<String> lines, Runnable release) {
+        this.lines = lines;
+        this.release = release;
+    }
+
+    /**
+     * Gets the pinned lines.
+     *
+     * @return The read-only lines of the snapshot.
+     * @throws IllegalStateException if the snapshot has been closed.
+     */
+    public List<String> getLines() {
+        if (lines == null) {
+            throw new IllegalStateException("Snapshot has been closed.");
+        }
+        return lines;
+    }
+
+    /**
+     * Releases the pinned lines.
+     */
+    @Override
+    public void close() {
+        if (lines != null && release != null) {
+            release.run();
+        }
+        lines = null;
+    }
+}
@@ -0,0 +1,278 @@
+package receiver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The StoreScrubber class reads the whole data store back from disk in steps and verifies the checksum of every
+ * record, so that corruption is found even in records nobody reads. It checks the store as it was when the scrub
+ * began: the file is held open and its index captured, so rewrites made meanwhile do not disturb it.
+ * <p>
+ * Reads are throttled to a given number of bytes per second, so that a scrub running in the background leaves
+ * most of the device's bandwidth to other work. The scrubber never sleeps: a step ends early once the next read
+ * is not due yet, and {@link #nanosUntilNextRead()} tells the caller how long to wait, so the thread running the
+ * scrub is free to do other work meanwhile.
+ */
+public class StoreScrubber implements AutoCloseable {
+
+    /**
+     * The maximum number of bytes of a plain text store read at once.
+     */
+    private static final int READ_BYTES = 1 << 20;
+
+    /**
+     * The plain text store being scrubbed, or null if the store is block-compressed.
+     */
+    private final TextStoreFile textStoreFile;
+    /**
+     * The block-compressed store being scrubbed, or null if the store is plain text.
+     */
+    private final BlockStoreFile blockStoreFile;
+    /**
+     * The channel the store is read through.
+     */
+    private final FileChannel channel;
+    /**
+     * The maximum number of bytes read per second.
+     */
+    private final long bytesPerSecond;
+    /**
+     * The slot offsets of a plain text store when the scrub began.
+     */
+    private final long[] slotOffsets;
+    /**
+     * The slot capacities of a plain text store when the scrub began.
+     */
+    private final int[] slotCapacities;
+    /**
+     * The number of slots of a plain text store, or of blocks of a block-compressed store, to scrub.
+     */
+    private final int recordCount;
+    /**
+     * The block index of a block-compressed store when the scrub began.
+     */
+    private final BlockStoreFile.BlockInfo[] blocks;
+    /**
+     * The corrupt records found so far, in file order.
+     */
+    private final List<CorruptRecord> corruptRecords = new ArrayList<>();
+    /**
+     * The index of the next slot or block to scrub.
+     */
+    private int next;
+    /**
+     * The number of rows scrubbed so far.
+     */
+    private int scrubbedRows;
+    /**
+     * The number of bytes read so far.
+     */
+    private long scrubbedBytes;
+    /**
+     * The time, in {@link System#nanoTime()} units, before which the next read should not start.
+     */
+    private long nextReadNanos = System.nanoTime();
+
+    /**
+     * Constructs a StoreScrubber over a plain text store.
+     *
+     * @param FILENAME The name of the store file.
+     * @param textStoreFile The store, whose slot index is captured.
+     * @param bytesPerSecond The maximum number of bytes read per second.
+     * @throws IOException if the store cannot be opened.
+     */
+    StoreScrubber(String FILENAME, TextStoreFile textStoreFile, long bytesPerSecond) throws IOException {
+        this.textStoreFile = textStoreFile;
+        this.blockStoreFile = null;
+        this.bytesPerSecond = checkRate(bytesPerSecond);
+        this.channel = open(FILENAME);
+        this.slotOffsets = textStoreFile.getSlotOffsets();
+        this.slotCapacities = textStoreFile.getSlotCapacities();
+        this.recordCount = textStoreFile.getSlotCount();
+        this.blocks = null;
+    }
+
+    /**
+     * Constructs a StoreScrubber over a block-compressed store.
+     *
+     * @param FILENAME The name of the store file.
+     * @param blockStoreFile The store, whose block index is read from the file.
+     * @param bytesPerSecond The maximum number of bytes read per second.
+     * @throws IOException if the store cannot be opened or its block index is corrupt.
+     */
+    StoreScrubber(String FILENAME, BlockStoreFile blockStoreFile, long bytesPerSecond) throws IOException {
+        this.textStoreFile = null;
+        this.blockStoreFile = blockStoreFile;
+        this.bytesPerSecond = checkRate(bytesPerSecond);
+        this.channel = open(FILENAME);
+        this.slotOffsets = null;
+        this.slotCapacities = null;
+        try {
+            this.blocks = blockStoreFile.readIndex(channel);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.recordCount = blocks.length;
+    }
+
+    /**
+     * Scrubs the next rows of the store. A block-compressed store is scrubbed a whole block at a time, so a step
+     * may go past the given number of rows to finish a block. The step stops early, possibly without reading
+     * anything, once the next read is not due yet.
+     *
+     * @param maxRows The maximum number of rows to scrub in this step.
+     * @return true if the whole store has been scrubbed, false if more steps remain.
+     * @throws IOException if the store cannot be read.
+     */
+    public boolean scrub(int maxRows) throws IOException {
+        int stepRows = 0;
+        while (next < recordCount && stepRows < maxRows && nanosUntilNextRead() == 0) {
+            stepRows += textStoreFile != null ? scrubRows(maxRows - stepRows) : scrubBlock();
+        }
+        scrubbedRows += stepRows;
+        return next == recordCount;
+    }
+
+    /**
+     * Gets how long to wait before the next read, to keep reads within the rate.
+     *
+     * @return The wait in nanoseconds, or 0 if the next read is due.
+     */
+    public long nanosUntilNextRead() {
+        return Math.max(0, nextReadNanos - System.nanoTime());
+    }
+
+    /**
+     * Gets the corrupt records found so far.
+     *
+     * @return The corrupt records in file order.
+     */
+    public List<CorruptRecord> getCorruptRecords() {
+        return corruptRecords;
+    }
+
+    /**
+     * Gets the number of rows scrubbed so far.
+     *
+     * @return The number of rows.
+     */
+    public int getScrubbedRows() {
+        return scrubbedRows;
+    }
+
+    /**
+     * Gets the number of bytes read so far.
+     *
+     * @return The number of bytes.
+     */
+    public long getScrubbedBytes() {
+        return scrubbedBytes;
+    }
+
+    /**
+     * Closes the store.
+     *
+     * @throws IOException if the store cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Scrubs consecutive rows of a plain text store, reading their slots together.
+     *
+     * @param maxRows The maximum number of rows to scrub.
+     * @return The number of rows scrubbed.
+     * @throws IOException if the store cannot be read.
+     */
+    private int scrubRows(int maxRows) throws IOException {
+        int first = next;
+        long start = slotOffsets[first];
+        int end = first + 1;
+        while (end < recordCount && end - first < maxRows
+                && slotOffsets[end] + slotCapacities[end] - start <= READ_BYTES) {
+            end++;
+        }
+
+        int length = (int) (slotOffsets[end - 1] + slotCapacities[end - 1] - start);
+        throttle(length);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break; // The rows past the end of the file are reported as corrupt
+            }
+        }
+
+        for (int row = first; row < end; row++) {
+            CorruptRecord record = TextStoreFile.verifyRow(buffer.array(), (int) (slotOffsets[row] - start),
+                    row, slotOffsets[row], slotCapacities[row]);
+            if (record != null) {
+                corruptRecords.add(record);
+            }
+        }
+        next = end;
+        return end - first;
+    }
+
+    /**
+     * Scrubs the next block of a block-compressed store.
+     *
+     * @return The number of rows in the block.
+     * @throws IOException if the store cannot be read.
+     */
+    private int scrubBlock() throws IOException {
+        BlockStoreFile.BlockInfo block = blocks[next++];
+        throttle(block.compressedLength());
+        CorruptRecord record = blockStoreFile.verifyBlock(channel, block);
+        if (record != null) {
+            corruptRecords.add(record);
+        }
+        return block.rowCount();
+    }
+
+    /**
+     * Accounts for the given number of bytes about to be read, pushing back the time the next read is due.
+     * Time the scrub spends idle between reads is not saved up, so reads never burst above the rate.
+     *
+     * @param bytes The number of bytes about to be read.
+     */
+    private void throttle(long bytes) {
+        nextReadNanos = Math.max(nextReadNanos, System.nanoTime()) + (long) (bytes * 1e9 / bytesPerSecond);
+        scrubbedBytes += bytes;
+    }
+
+    /**
+     * Opens the store for reading.
+     *
+     * @param FILENAME The name of the store file.
+     * @return The channel.
+     * @throws IOException if the store cannot be opened.
+     */
+    private static FileChannel open(String FILENAME) throws IOException {
+        return FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ);
+    }
+
+    /**
+     * Checks that a read rate is positive.
+     *
+     * @param bytesPerSecond The maximum number of bytes read per second.
+     * @return The rate.
+     * @throws IllegalArgumentException if the rate is not positive.
+     */
+    private static long checkRate(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Scrub rate must be positive.");
+        }
+        return bytesPerSecond;
+    }
+}
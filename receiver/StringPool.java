@@ -0,0 +1,77 @@
+package receiver;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The StringPool class canonicalizes equal Strings to a single shared instance, so that repeated values such as
+ * duplicate rows are held on the heap only once.
+ * <p>
+ * The pool is a fixed-size, direct-mapped table: each String hashes to exactly one slot, and a colliding value
+ * simply replaces the previous occupant. This keeps the pool bounded with no per-entry bookkeeping objects,
+ * and lets any number of threads use it without locking. A replaced value is not lost, it only stops being shared
+ * with values canonicalized afterwards.
+ */
+public class StringPool {
+
+    /**
+     * The default number of slots in a pool.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The slots holding the canonical instances.
+     */
+    private final AtomicReferenceArray<String> slots;
+    /**
+     * The mask used to map a hash to a slot.
+     */
+    private final int mask;
+
+    /**
+     * Constructs a StringPool with the default capacity.
+     */
+    public StringPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a StringPool with at least the specified number of slots, rounded up to a power of two.
+     *
+     * @param capacity The minimum number of slots.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public StringPool(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Pool capacity must be between 1 and 2^30.");
+        }
+        int slotCount = Integer.highestOneBit(capacity);
+        if (slotCount < capacity) {
+            slotCount <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.mask = slotCount - 1;
+    }
+
+    /**
+     * Returns the canonical instance equal to the given String, registering the String itself as the canonical
+     * instance if no equal value currently occupies its slot.
+     *
+     * @param value The String to canonicalize.
+     * @return An instance equal to the value, or null if the value is null.
+     */
+    public String canonicalize(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        String existing = slots.get(slot);
+        if (value.equals(existing)) {
+            return existing;
+        }
+        slots.set(slot, value);
+        return value;
+    }
+}
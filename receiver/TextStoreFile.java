@@ -0,0 +1,803 @@
+package receiver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * The TextStoreFile class reads and writes the plain text data store format, one line per row.
+ * Alongside the rows it keeps a slot index recording the byte offset and byte capacity of every line in the file,
+ * so that a changed row can be rewritten in place instead of rewriting the whole file.
+ * <p>
+ * A row fits in its slot when its encoded length does not exceed the slot's capacity. A shorter row is padded with
+ * trailing spaces, which are stripped again when the file is read, and the freed bytes stay available to later
+ * updates of the same row. A row that no longer fits causes the caller to fall back to a full atomic rewrite.
+ * <p>
+ * Every row ends with a tab and the CRC32C checksum of its contents in eight hex digits, before any padding.
+ * Checksums are verified by the parallel scan that loads the store and by every single-row read. A row whose
+ * checksum does not match, or that has none in a store whose other rows do, is left out of the slot index and
+ * reported through {@link #getCorruptRecords()}. A store written before checksums were added has none at all;
+ * its rows are accepted as they are until the store is next rewritten.
+ */
+public class TextStoreFile {
+
+    /**
+     * The byte used to pad a row that is shorter than its slot.
+     */
+    private static final byte PADDING = ' ';
+    /**
+     * The line separator written after every row.
+     */
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    /**
+     * The byte separating a row from its checksum.
+     */
+    private static final byte CHECKSUM_SEPARATOR = '\t';
+    /**
+     * The number of bytes the checksum adds to a row: the separator and eight hex digits.
+     */
+    private static final int CHECKSUM_BYTES = 9;
+    /**
+     * The hex digits used to write checksums.
+     */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The result of checking a row that has no checksum.
+     */
+    private static final int MISSING_CHECKSUM = -1;
+    /**
+     * The result of checking a row whose checksum does not match its contents.
+     */
+    private static final int CHECKSUM_MISMATCH = -2;
+
+    /**
+     * The suffix of the file corrupt rows are moved to.
+     */
+    public static final String QUARANTINE_SUFFIX = ".quarantine";
+
+    /**
+     * The approximate number of bytes decoded by one parallel load task.
+     */
+    public static final int CHUNK_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The suffix of the sidecar file holding the saved slot index.
+     */
+    public static final String INDEX_SIDECAR_SUFFIX = ".idx";
+    /**
+     * The magic number identifying a slot index sidecar of a checksummed store ("LID2").
+     * Sidecars of stores written before checksums were added are rejected, so that such stores are scanned.
+     */
+    private static final int INDEX_SIDECAR_MAGIC = 0x4C494432;
+    /**
+     * The position of the store modification time in the sidecar, after the magic and the store size.
+     */
+    private static final int INDEX_SIDECAR_MODIFIED_OFFSET = 12;
+
+    /**
+     * The file name of the text store.
+     */
+    private final String FILENAME;
+    /**
+     * The writer used to replace or patch the file.
+     */
+    private final AtomicFileWriter fileWriter;
+    /**
+     * The byte offset of each row's slot in the file.
+     */
+    private long[] slotOffsets = new long[0];
+    /**
+     * The number of bytes available to each row's slot, excluding the line separator.
+     */
+    private int[] slotCapacities = new int[0];
+    /**
+     * The number of rows covered by the slot index.
+     */
+    private int slotCount;
+    /**
+     * Whether the slot index is kept in a sidecar file, which is the case once it has been loaded on its own.
+     */
+    private boolean indexSidecarEnabled;
+    /**
+     * Whether the rows of the store carry checksums, which is false only for a store written before they were added.
+     */
+    private boolean checksummed = true;
+    /**
+     * The corrupt rows found by the last scan of the store, in file order.
+     */
+    private List<CorruptRecord> corruptRecords = List.of();
+
+    /**
+     * The rows of one chunk of the file, with the slot of each row.
+     *
+     * @param rows The decoded rows in order, or null if only the slots were indexed. Rows that failed their
+     * checksum are null.
+     * @param offsets The file offset of each row's slot.
+     * @param capacities The capacity of each row's slot.
+     * @param count The number of rows in the chunk.
+     * @param suspects The rows of the chunk without a valid checksum, in order.
+     */
+    private record Chunk(List<String> rows, long[] offsets, int[] capacities, int count, List<Suspect> suspects) {
+    }
+
+    /**
+     * A row without a valid checksum.
+     *
+     * @param row The position of the row in its chunk.
+     * @param mismatched Whether the row has a checksum that does not match, rather than none at all.
+     * @param content The raw contents of the row, without padding.
+     */
+    private record Suspect(int row, boolean mismatched, String content) {
+    }
+
+    /**
+     * Constructs a TextStoreFile for the specified file that replaces and patches it through the given writer.
+     *
+     * @param FILENAME The name of the text store file.
+     * @param fileWriter The writer used to replace or patch the file.
+     */
+    public TextStoreFile(String FILENAME, AtomicFileWriter fileWriter) {
+        this.FILENAME = FILENAME;
+        this.fileWriter = fileWriter;
+    }
+
+    /**
+     * Reads every line in the file and rebuilds the slot index from the byte position of each line.
+     * Both "\n" and "\r\n" line endings are accepted, and slot padding is stripped from each line.
+     *
+     * @return The lines of the file in order.
+     * @throws IOException if the file cannot be read.
+     */
+    public List<String> readAll() throws IOException {
+        return readAll(UnaryOperator.identity());
+    }
+
+    /**
+     * Reads every line in the file and rebuilds the slot index from the byte position of each line.
+     * The file is split into chunks of about {@link #CHUNK_BYTES} that start and end on line boundaries,
+     * the chunks are decoded concurrently on the common fork-join pool, and the results are assembled in order.
+     * The row mapper is applied to each decoded row on the worker threads, so any per-row work such as
+     * canonicalization is done in the same parallel pass. The speedup grows with the number of processors;
+     * on a single processor the chunks are decoded one after another in about the time of a sequential scan.
+     * Both "\n" and "\r\n" line endings are accepted, and slot padding is stripped from each line. Checksums are
+     * verified in the same pass, and corrupt rows are left out of the result and reported through
+     * {@link #getCorruptRecords()}. Rows a crash left partly rewritten in place are first rolled back to their
+     * previous contents.
+     *
+     * @param rowMapper The function applied to each decoded row. It must be safe to call from several threads.
+     * @return The mapped lines of the file in order.
+     * @throws IOException if the file cannot be read.
+     */
+    public List<String> readAll(UnaryOperator<String> rowMapper) throws IOException {
+        recoverRows();
+        return scan(rowMapper);
+    }
+
+    /**
+     * Loads the slot index without decoding any rows, for use when rows are read on demand.
+     * The index is taken from the sidecar file if it still matches the store, and is otherwise rebuilt by
+     * scanning the store in parallel and saved to the sidecar for the next start. The scan verifies checksums
+     * like {@link #readAll(UnaryOperator)} does, while rows indexed from the sidecar are verified as they are read.
+     * Rows a crash left partly rewritten in place are first rolled back to their previous contents.
+     *
+     * @throws IOException if the store cannot be read.
+     */
+    public void loadIndex() throws IOException {
+        indexSidecarEnabled = true;
+        recoverRows();
+        if (readIndexSidecar()) {
+            return;
+        }
+        scan(null);
+        if (checksummed && corruptRecords.isEmpty()) {
+            saveIndexSidecar(); // Otherwise the store is about to be rewritten, which saves it
+        }
+    }
+
+    /**
+     * Reads the bytes of a single row's slot, verifies its checksum and decodes the row, dropping any slot padding.
+     * Rows are only read this way from checksummed stores, as stores without checksums are rewritten on loading.
+     *
+     * @param channel An open channel on the store.
+     * @param offset The file offset of the slot.
+     * @param capacity The capacity of the slot.
+     * @return The decoded row.
+     * @throws IOException if the slot cannot be read or the row is corrupt.
+     */
+    public static String readRow(FileChannel channel, long offset, int capacity) throws IOException {
+        byte[] bytes = readSlot(channel, offset, capacity);
+        int length = checkRow(bytes, 0, trimPadding(bytes, 0, capacity), new CRC32C());
+        if (length < 0) {
+            throw new IOException("Corrupt row at offset " + offset + ": "
+                    + (length == MISSING_CHECKSUM ? "missing checksum" : "checksum mismatch"));
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether a row's slot, already read into a buffer, holds a corrupt row, as is done when scrubbing
+     * the store.
+     *
+     * @param bytes The buffer holding the slot.
+     * @param position The position of the slot in the buffer.
+     * @param row The zero-based index of the row.
+     * @param offset The file offset of the slot.
+     * @param capacity The capacity of the slot.
+     * @return The corrupt row, or null if its checksum matches.
+     */
+    static CorruptRecord verifyRow(byte[] bytes, int position, int row, long offset, int capacity) {
+        int length = trimPadding(bytes, position, capacity);
+        if (checkRow(bytes, position, length, new CRC32C()) >= 0) {
+            return null;
+        }
+        return new CorruptRecord(row, offset, new String(bytes, position, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks whether the store carries checksums. A store written before checksums were added does not, and
+     * should be rewritten so that its rows can be verified.
+     *
+     * @return true if the rows of the store carry checksums, false otherwise.
+     */
+    public boolean isChecksummed() {
+        return checksummed;
+    }
+
+    /**
+     * Gets the corrupt rows found by the last scan of the store. They are not part of the slot index, so the next
+     * full rewrite of the store drops them.
+     *
+     * @return The corrupt rows in file order.
+     */
+    public List<CorruptRecord> getCorruptRecords() {
+        return corruptRecords;
+    }
+
+    /**
+     * Checks the given rows again against the current slot index, keeping those that are still corrupt.
+     * A row that has since been rewritten, or whose slot has moved, is no longer reported.
+     *
+     * @param records The rows found corrupt earlier.
+     * @return The rows that are still corrupt, in the given order.
+     * @throws IOException if the store cannot be read.
+     */
+    public List<CorruptRecord> recheck(List<CorruptRecord> records) throws IOException {
+        List<CorruptRecord> stillCorrupt = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ)) {
+            for (CorruptRecord record : records) {
+                int row = record.getRow();
+                if (row < slotCount && slotOffsets[row] == record.getOffset()) {
+                    byte[] bytes = readSlot(channel, slotOffsets[row], slotCapacities[row]);
+                    CorruptRecord current = verifyRow(bytes, 0, row, slotOffsets[row], slotCapacities[row]);
+                    if (current != null) {
+                        stillCorrupt.add(current);
+                    }
+                }
+            }
+        }
+        return stillCorrupt;
+    }
+
+    /**
+     * Appends corrupt rows to the quarantine file next to the store, so that their contents are kept once they
+     * are dropped from the store. Each row is written on a line of its own as its line number, its offset and
+     * its raw contents, separated by tabs. The quarantine file is forced to the device before returning.
+     *
+     * @param records The corrupt rows.
+     * @throws IOException if the quarantine file cannot be written.
+     */
+    public void quarantine(List<CorruptRecord> records) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (CorruptRecord record : records) {
+            text.append(record.getRow() + 1).append('\t').append(record.getOffset()).append('\t')
+                    .append(record.getContent()).append(System.lineSeparator());
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(FILENAME + QUARANTINE_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Gets the file offset of every row's slot. Only the first {@link #getSlotCount()} entries are valid.
+     *
+     * @return The slot offsets.
+     */
+    public long[] getSlotOffsets() {
+        return slotOffsets;
+    }
+
+    /**
+     * Gets the capacity of every row's slot. Only the first {@link #getSlotCount()} entries are valid.
+     *
+     * @return The slot capacities.
+     */
+    public int[] getSlotCapacities() {
+        return slotCapacities;
+    }
+
+    /**
+     * Gets the number of rows in the slot index.
+     *
+     * @return The number of rows.
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Writes all lines to the file, atomically replacing its previous contents, and rebuilds the slot index
+     * so that every slot is exactly as long as its row.
+     *
+     * @param lines The lines to write.
+     * @throws IOException if an I/O error occurs during writing to the file.
+     */
+    public void write(List<String> lines) throws IOException {
+        long[] offsets = new long[Math.max(16, lines.size())];
+        int[] capacities = new int[offsets.length];
+        CRC32C crc = new CRC32C();
+
+        fileWriter.write(out -> {
+            long position = 0;
+            int row = 0;
+            for (String line : lines) {
+                byte[] bytes = encodeRow(line, crc);
+                out.write(bytes);
+                out.write(LINE_SEPARATOR);
+                offsets[row] = position;
+                capacities[row] = bytes.length;
+                position += bytes.length + LINE_SEPARATOR.length;
+                row++;
+            }
+        });
+
+        this.slotOffsets = offsets;
+        this.slotCapacities = capacities;
+        this.slotCount = lines.size();
+        this.checksummed = true;
+        this.corruptRecords = List.of();
+        if (indexSidecarEnabled) {
+            saveIndexSidecar();
+        }
+    }
+
+    /**
+     * Rewrites the given rows in place within their existing slots, leaving the rest of the file untouched.
+     * Nothing is written unless every row fits in its slot, in which case the caller should rewrite the file.
+     * The previous contents of the slots are journaled before they are patched, and a crash that interrupts a patch
+     * rolls it back when the store is next loaded, so a torn row is never quarantined as corrupt. The rows are
+     * patched one after another, so a crash after some of the patches are forced may leave only those rewritten;
+     * callers that need several rows to change together should rewrite the file instead.
+     *
+     * @param lines The current lines, which must have the same row count as the file.
+     * @param rows The zero-based indices of the rows that changed.
+     * @return true if all rows were rewritten in place, false if a full rewrite is required.
+     * @throws IOException if an I/O error occurs during writing to the file.
+     */
+    public boolean rewriteInPlace(List<String> lines, int[] rows) throws IOException {
+        if (lines.size() != slotCount || !checksummed) {
+            return false;
+        }
+
+        CRC32C crc = new CRC32C();
+        byte[][] patches = new byte[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            if (row < 0 || row >= slotCount) {
+                return false;
+            }
+            byte[] bytes = encodeRow(lines.get(row), crc);
+            if (bytes.length > slotCapacities[row]) {
+                return false;
+            }
+            byte[] patch = Arrays.copyOf(bytes, slotCapacities[row]);
+            Arrays.fill(patch, bytes.length, patch.length, PADDING);
+            patches[i] = patch;
+        }
+
+        long[] positions = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            positions[i] = slotOffsets[rows[i]];
+        }
+        fileWriter.writeInPlace(positions, patches);
+        if (indexSidecarEnabled) {
+            touchIndexSidecar();
+        }
+        return true;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Rolls back the rows a crash left partly rewritten in place, before the store is read.
+     *
+     * @throws IOException if the journal cannot be read or the store cannot be restored.
+     */
+    private void recoverRows() throws IOException {
+        int restored = fileWriter.recover();
+        if (restored > 0) {
+            System.out.println("Rolled back " + restored + " rows of " + FILENAME
+                    + " interrupted while being rewritten in place.");
+        }
+    }
+
+    /**
+     * Restamps the sidecar with the store's new modification time after rows were patched in place,
+     * which leaves every slot where it was. If the sidecar cannot be restamped it is deleted, to be rebuilt later.
+     */
+    private void touchIndexSidecar() {
+        Path sidecar = Path.of(FILENAME + INDEX_SIDECAR_SUFFIX);
+        try (RandomAccessFile file = new RandomAccessFile(sidecar.toFile(), "rw")) {
+            file.seek(INDEX_SIDECAR_MODIFIED_OFFSET);
+            file.writeLong(Files.getLastModifiedTime(Path.of(FILENAME)).toMillis());
+        }
+        catch (IOException e) {
+            try {
+                Files.deleteIfExists(sidecar);
+            }
+            catch (IOException ignored) {
+                // A stale sidecar is rejected on load anyway, as its modification time no longer matches.
+            }
+        }
+    }
+
+    /**
+     * Scans the whole store in parallel chunks, verifying checksums, rebuilding the slot index from the rows that
+     * pass and optionally decoding them. Rows without a checksum are corrupt unless no row of the store has one.
+     *
+     * @param rowMapper The function applied to each decoded row, or null to index the slots only.
+     * @return The mapped rows in file order, or null if the slots were indexed only.
+     * @throws IOException if the store cannot be read.
+     */
+    private List<String> scan(UnaryOperator<String> rowMapper) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(FILENAME), StandardOpenOption.READ)) {
+            long[] boundaries = findChunkBoundaries(channel);
+            int chunkCount = boundaries.length - 1;
+
+            Chunk[] chunks = new Chunk[chunkCount];
+            try {
+                IntStream.range(0, chunkCount).parallel().forEach(i -> {
+                    try {
+                        chunks[i] = readChunk(channel, boundaries[i], boundaries[i + 1], rowMapper);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int total = 0;
+            int unchecked = 0;
+            for (Chunk chunk : chunks) {
+                total += chunk.count();
+                for (Suspect suspect : chunk.suspects()) {
+                    unchecked += suspect.mismatched() ? 0 : 1;
+                }
+            }
+            boolean withChecksums = unchecked < total || total == 0;
+
+            long[] offsets = new long[total];
+            int[] capacities = new int[total];
+            List<String> rows = rowMapper == null ? null : new ArrayList<>(total);
+            List<CorruptRecord> corrupt = new ArrayList<>();
+            int position = 0;
+            int firstRow = 0;
+            for (Chunk chunk : chunks) {
+                int from = 0;
+                for (Suspect suspect : chunk.suspects()) {
+                    if (suspect.mismatched() || withChecksums) {
+                        position = copyRows(chunk, from, suspect.row(), offsets, capacities, position, rows);
+                        corrupt.add(new CorruptRecord(firstRow + suspect.row(), chunk.offsets()[suspect.row()],
+                                suspect.content()));
+                        from = suspect.row() + 1;
+                    }
+                }
+                position = copyRows(chunk, from, chunk.count(), offsets, capacities, position, rows);
+                firstRow += chunk.count();
+            }
+
+            this.slotOffsets = offsets;
+            this.slotCapacities = capacities;
+            this.slotCount = position;
+            this.checksummed = withChecksums;
+            this.corruptRecords = corrupt;
+            return rows;
+        }
+    }
+
+    /**
+     * Appends a range of rows of a chunk, with their slots, to the rows and slot index being assembled.
+     *
+     * @param chunk The scanned chunk.
+     * @param from The position in the chunk of the first row to append.
+     * @param to The position in the chunk just past the last row to append.
+     * @param offsets The slot offsets being assembled.
+     * @param capacities The slot capacities being assembled.
+     * @param position The number of slots assembled so far.
+     * @param rows The rows being assembled, or null if the slots are indexed only.
+     * @return The number of slots assembled after appending the range.
+     */
+    private static int copyRows(Chunk chunk, int from, int to, long[] offsets, int[] capacities, int position,
+                                List<String> rows) {
+        System.arraycopy(chunk.offsets(), from, offsets, position, to - from);
+        System.arraycopy(chunk.capacities(), from, capacities, position, to - from);
+        if (rows != null) {
+            rows.addAll(chunk.rows().subList(from, to));
+        }
+        return position + to - from;
+    }
+
+    /**
+     * Loads the slot index from the sidecar file if it was saved for the current version of the store.
+     * The sidecar records the size and modification time of the store it describes.
+     *
+     * @return true if the index was loaded, false if the sidecar is missing, stale or unreadable.
+     */
+    private boolean readIndexSidecar() {
+        Path sidecar = Path.of(FILENAME + INDEX_SIDECAR_SUFFIX);
+        if (!Files.exists(sidecar)) {
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            Path store = Path.of(FILENAME);
+            if (in.readInt() != INDEX_SIDECAR_MAGIC || in.readLong() != Files.size(store)
+                    || in.readLong() != Files.getLastModifiedTime(store).toMillis()) {
+                return false;
+            }
+
+            int count = in.readInt();
+            long[] offsets = new long[count];
+            int[] capacities = new int[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+                capacities[i] = in.readInt();
+            }
+
+            this.slotOffsets = offsets;
+            this.slotCapacities = capacities;
+            this.slotCount = count;
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Saves the slot index to the sidecar file, stamped with the current size and modification time of the store.
+     * The sidecar can always be rebuilt from the store, so failing to save it is reported but not fatal.
+     */
+    private void saveIndexSidecar() {
+        Path store = Path.of(FILENAME);
+        try {
+            long storeSize = Files.size(store);
+            long storeModified = Files.getLastModifiedTime(store).toMillis();
+            new AtomicFileWriter(FILENAME + INDEX_SIDECAR_SUFFIX, DurabilityPolicy.never()).write(stream -> {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(INDEX_SIDECAR_MAGIC);
+                out.writeLong(storeSize);
+                out.writeLong(storeModified);
+                out.writeInt(slotCount);
+                for (int i = 0; i < slotCount; i++) {
+                    out.writeLong(slotOffsets[i]);
+                    out.writeInt(slotCapacities[i]);
+                }
+                out.flush();
+            });
+        }
+        catch (IOException e) {
+            System.out.println("Failed to save line index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Splits the file into byte ranges of about {@link #CHUNK_BYTES}, moving each split point forward to just
+     * after the next line separator so that no line spans two chunks.
+     *
+     * @param channel An open channel on the file.
+     * @return The chunk boundaries, starting with 0 and ending with the file size.
+     * @throws IOException if the file cannot be read.
+     */
+    private static long[] findChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = CHUNK_BYTES;
+        while (position < size) {
+            long boundary = -1;
+            long scan = position;
+            while (boundary < 0 && scan < size) {
+                probe.clear();
+                int n = channel.read(probe, scan);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        boundary = scan + i + 1;
+                        break;
+                    }
+                }
+                scan += n;
+            }
+            if (boundary < 0 || boundary >= size) {
+                break;
+            }
+            boundaries.add(boundary);
+            position = boundary + CHUNK_BYTES;
+        }
+
+        boundaries.add(size);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Reads and decodes the lines in one chunk of the file.
+     *
+     * @param channel An open channel on the file.
+     * @param start The file offset of the first byte in the chunk, which starts a line.
+     * @param end The file offset just past the chunk, which ends a line or the file.
+     * @param rowMapper The function applied to each decoded row, or null to index the slots only.
+     * @return The decoded chunk.
+     * @throws IOException if the chunk cannot be read.
+     */
+    private static Chunk readChunk(FileChannel channel, long start, long end, UnaryOperator<String> rowMapper)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file while loading chunk at offset " + start);
+            }
+        }
+        byte[] bytes = buffer.array();
+
+        List<String> rows = rowMapper == null ? null : new ArrayList<>();
+        List<Suspect> suspects = new ArrayList<>();
+        CRC32C crc = new CRC32C();
+        long[] offsets = new long[16];
+        int[] capacities = new int[16];
+        int count = 0;
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int length = lineEnd - lineStart;
+            if (lineEnd < bytes.length && length > 0 && bytes[lineEnd - 1] == '\r') {
+                length--;
+            }
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                capacities = Arrays.copyOf(capacities, capacities.length * 2);
+            }
+            offsets[count] = start + lineStart;
+            capacities[count] = length;
+
+            int trimmed = trimPadding(bytes, lineStart, length);
+            int payload = checkRow(bytes, lineStart, trimmed, crc);
+            if (payload < 0) {
+                suspects.add(new Suspect(count, payload == CHECKSUM_MISMATCH,
+                        new String(bytes, lineStart, trimmed, StandardCharsets.UTF_8)));
+            }
+            if (rows != null) {
+                rows.add(payload == CHECKSUM_MISMATCH ? null
+                        : rowMapper.apply(new String(bytes, lineStart, payload < 0 ? trimmed : payload,
+                                StandardCharsets.UTF_8)));
+            }
+            count++;
+
+            lineStart = lineEnd + 1;
+        }
+        return new Chunk(rows, offsets, capacities, count, suspects);
+    }
+
+    /**
+     * Reads the bytes of a single row's slot.
+     *
+     * @param channel An open channel on the store.
+     * @param offset The file offset of the slot.
+     * @param capacity The capacity of the slot.
+     * @return The bytes of the slot, including any padding.
+     * @throws IOException if the slot cannot be read.
+     */
+    private static byte[] readSlot(FileChannel channel, long offset, int capacity) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file while reading row at offset " + offset);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Finds the length of a row without the slot padding after it.
+     *
+     * @param bytes The buffer holding the row.
+     * @param offset The position of the row in the buffer.
+     * @param length The number of bytes in the row's slot.
+     * @return The number of bytes belonging to the row.
+     */
+    private static int trimPadding(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        while (end > offset && bytes[end - 1] == PADDING) {
+            end--;
+        }
+        return end - offset;
+    }
+
+    /**
+     * Checks the checksum at the end of a row.
+     *
+     * @param bytes The buffer holding the row.
+     * @param offset The position of the row in the buffer.
+     * @param length The number of bytes belonging to the row, without padding.
+     * @param crc The checksum calculator to use, which is reset first.
+     * @return The length of the row's contents without the checksum, or {@link #MISSING_CHECKSUM} or
+     * {@link #CHECKSUM_MISMATCH} if the row is not verified.
+     */
+    private static int checkRow(byte[] bytes, int offset, int length, CRC32C crc) {
+        int payload = length - CHECKSUM_BYTES;
+        if (payload < 0 || bytes[offset + payload] != CHECKSUM_SEPARATOR) {
+            return MISSING_CHECKSUM;
+        }
+
+        long expected = 0;
+        for (int i = offset + payload + 1; i < offset + length; i++) {
+            int digit = Character.digit(bytes[i], 16);
+            if (digit < 0) {
+                return MISSING_CHECKSUM;
+            }
+            expected = expected << 4 | digit;
+        }
+
+        crc.reset();
+        crc.update(bytes, offset, payload);
+        return crc.getValue() == expected ? payload : CHECKSUM_MISMATCH;
+    }
+
+    /**
+     * Encodes a row followed by its checksum.
+     *
+     * @param line The row.
+     * @param crc The checksum calculator to use, which is reset first.
+     * @return The encoded row.
+     */
+    private static byte[] encodeRow(String line, CRC32C crc) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        crc.update(bytes);
+        long checksum = crc.getValue();
+
+        byte[] encoded = Arrays.copyOf(bytes, bytes.length + CHECKSUM_BYTES);
+        encoded[bytes.length] = CHECKSUM_SEPARATOR;
+        for (int i = encoded.length - 1; i > bytes.length; i--) {
+            encoded[i] = HEX_DIGITS[(int) (checksum & 0xF)];
+            checksum >>>= 4;
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,257 @@
+package receiver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The TinyLfuRowCache class is a {@link RowCache} using the W-TinyLFU policy.
+ * New rows enter a small LRU window holding about 1% of the capacity. A row pushed out of the window competes for
+ * a place in the main cache with the row the main cache would evict next, and wins only if a
+ * {@link FrequencySketch} estimates it has been requested more often. The main cache is a segmented LRU: rows
+ * start in a probation segment and move to a protected segment, holding about 80% of the main cache, when read again.
+ */
+public class TinyLfuRowCache extends RowCache {
+
+    /**
+     * The percentage of the capacity given to the admission window.
+     */
+    private static final int WINDOW_PERCENT = 1;
+    /**
+     * The percentage of the main cache given to the protected segment.
+     */
+    private static final int PROTECTED_PERCENT = 80;
+    /**
+     * The assumed weight of an average row in bytes, used to size the sketch for byte capacities.
+     */
+    private static final int AVERAGE_ROW_BYTES = 160;
+
+    /**
+     * The rows in the admission window, least recently used first.
+     */
+    private final LinkedHashMap<Long, String> window = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The rows in the probation segment of the main cache, least recently used first.
+     */
+    private final LinkedHashMap<Long, String> probation = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The rows in the protected segment of the main cache, least recently used first.
+     */
+    private final LinkedHashMap<Long, String> protectedRows = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The estimated recent request count of every key.
+     */
+    private final FrequencySketch sketch;
+    /**
+     * The maximum weight of the admission window.
+     */
+    private final long windowCapacity;
+    /**
+     * The maximum weight of the main cache.
+     */
+    private final long mainCapacity;
+    /**
+     * The maximum weight of the protected segment.
+     */
+    private final long protectedCapacity;
+    /**
+     * The total weight of the rows in the admission window.
+     */
+    private long windowWeight;
+    /**
+     * The total weight of the rows in the probation segment.
+     */
+    private long probationWeight;
+    /**
+     * The total weight of the rows in the protected segment.
+     */
+    private long protectedWeight;
+
+    /**
+     * Constructs a TinyLfuRowCache with the given capacity.
+     *
+     * @param capacity The maximum number of rows, or of bytes, to cache.
+     * @param unit The unit in which the capacity is measured.
+     */
+    public TinyLfuRowCache(long capacity, Unit unit) {
+        super(capacity, unit);
+        this.windowCapacity = Math.max(1, capacity * WINDOW_PERCENT / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = mainCapacity * PROTECTED_PERCENT / 100;
+        this.sketch = new FrequencySketch(unit == Unit.ENTRIES ? capacity : capacity / AVERAGE_ROW_BYTES);
+    }
+
+    /**
+     * Looks up a row, recording the request in the sketch and promoting a probation row to the protected segment.
+     *
+     * @param offset The file offset the row was read from.
+     * @return The cached row, or null if it is not cached.
+     */
+    @Override
+    protected String lookup(long offset) {
+        sketch.increment(offset);
+
+        String row = window.get(offset);
+        if (row == null) {
+            row = protectedRows.get(offset);
+        }
+        if (row == null) {
+            row = probation.remove(offset);
+            if (row != null) {
+                long rowWeight = weigh(row);
+                probationWeight -= rowWeight;
+                protectedRows.put(offset, row);
+                protectedWeight += rowWeight;
+                demoteOverflow();
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Stores a row in the admission window, then offers rows pushed out of the window to the main cache.
+     *
+     * @param offset The file offset the row was read from.
+     * @param row The decoded row.
+     */
+    @Override
+    protected void store(long offset, String row) {
+        if (replace(window, offset, row)) {
+            windowWeight += weigh(row);
+        }
+        else if (replace(probation, offset, row)) {
+            probationWeight += weigh(row);
+        }
+        else if (replace(protectedRows, offset, row)) {
+            protectedWeight += weigh(row);
+        }
+        else {
+            window.put(offset, row);
+            windowWeight += weigh(row);
+        }
+
+        while (windowWeight > windowCapacity && !window.isEmpty()) {
+            Map.Entry<Long, String> candidate = window.pollFirstEntry();
+            windowWeight -= weigh(candidate.getValue());
+            admit(candidate.getKey(), candidate.getValue());
+        }
+        while (probationWeight + protectedWeight > mainCapacity && evictFromMain() != null) {
+            recordEviction();
+        }
+    }
+
+    /**
+     * Removes every row from every segment, keeping the frequency sketch.
+     */
+    @Override
+    protected void removeAll() {
+        window.clear();
+        probation.clear();
+        protectedRows.clear();
+        windowWeight = 0;
+        probationWeight = 0;
+        protectedWeight = 0;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Offers a row leaving the admission window to the main cache. If the main cache is full, the row is admitted
+     * only if it is requested more often than the row the main cache would evict first.
+     *
+     * @param offset The file offset of the candidate row.
+     * @param row The candidate row.
+     */
+    private void admit(long offset, String row) {
+        long rowWeight = weigh(row);
+        if (rowWeight > mainCapacity) {
+            recordEviction();
+            return;
+        }
+
+        if (probationWeight + protectedWeight + rowWeight > mainCapacity) {
+            Long victim = peekVictim();
+            if (victim != null && sketch.frequency(offset) <= sketch.frequency(victim)) {
+                recordEviction();
+                return;
+            }
+            while (probationWeight + protectedWeight + rowWeight > mainCapacity && evictFromMain() != null) {
+                recordEviction();
+            }
+        }
+
+        probation.put(offset, row);
+        probationWeight += rowWeight;
+    }
+
+    /**
+     * Moves the least recently used protected rows back to probation while the protected segment is over capacity.
+     */
+    private void demoteOverflow() {
+        while (protectedWeight > protectedCapacity && !protectedRows.isEmpty()) {
+            Map.Entry<Long, String> demoted = protectedRows.pollFirstEntry();
+            long rowWeight = weigh(demoted.getValue());
+            protectedWeight -= rowWeight;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationWeight += rowWeight;
+        }
+    }
+
+    /**
+     * Returns the key the main cache would evict first, without evicting it.
+     *
+     * @return The key of the victim, or null if the main cache is empty.
+     */
+    private Long peekVictim() {
+        if (!probation.isEmpty()) {
+            return probation.firstEntry().getKey();
+        }
+        return protectedRows.isEmpty() ? null : protectedRows.firstEntry().getKey();
+    }
+
+    /**
+     * Evicts the least recently used probation row, or the least recently used protected row if probation is empty.
+     *
+     * @return The evicted key, or null if the main cache is empty.
+     */
+    private Long evictFromMain() {
+        if (!probation.isEmpty()) {
+            Map.Entry<Long, String> evicted = probation.pollFirstEntry();
+            probationWeight -= weigh(evicted.getValue());
+            return evicted.getKey();
+        }
+        if (!protectedRows.isEmpty()) {
+            Map.Entry<Long, String> evicted = protectedRows.pollFirstEntry();
+            protectedWeight -= weigh(evicted.getValue());
+            return evicted.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the row for an offset in a segment if the segment holds it, deducting the old row's weight from
+     * the segment. The caller adds the new row's weight.
+     *
+     * @param segment The segment to look in.
+     * @param offset The file offset of the row.
+     * @param row The new row.
+     * @return true if the segment held the offset and the row was replaced.
+     */
+    private boolean replace(LinkedHashMap<Long, String> segment, long offset, String row) {
+        String previous = segment.get(offset);
+        if (previous == null) {
+            return false;
+        }
+        segment.put(offset, row);
+        long previousWeight = weigh(previous);
+        if (segment == window) {
+            windowWeight -= previousWeight;
+        }
+        else if (segment == probation) {
+            probationWeight -= previousWeight;
+        }
+        else {
+            protectedWeight -= previousWeight;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,401 @@
+package receiver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The TokenizedLineList class is a List of lines that holds each row as references to pooled tokens, so that
+ * repeated first names, last names and email domains are held on the heap only once across all rows.
+ * <p>
+ * A row is split into its space-separated tokens, and an email address in the last token is split further into
+ * the part before the '@', which is usually unique, and the domain from the '@' on. Every token except that unique
+ * part is looked up in a token pool and referenced by its id, and a row is held as a single byte array holding the
+ * token ids followed by the UTF-8 bytes of the unique part. Rows are joined back into a String when read through
+ * get(), so they round-trip exactly, at the cost of a small allocation per read. Tokens are never removed from the
+ * pool, which grows with the number of distinct names and domains rather than with the number of rows.
+ * This class is not thread-safe, in the same way as the ArrayList it replaces.
+ * <p>
+ * A {@link #snapshot()} pins the current rows without copying them: it shares the row array, which the list then
+ * copies on its next change, and the store can be restored to one with {@link #restore(List)}. Snapshots can be
+ * read from any thread while the list keeps being modified.
+ */
+public class TokenizedLineList extends AbstractList<String> implements RandomAccess {
+
+    /**
+     * The initial number of slots in the row array.
+     */
+    private static final int INITIAL_ROW_SLOTS = 1024;
+    /**
+     * The initial number of slots in the token pool.
+     */
+    private static final int INITIAL_TOKEN_SLOTS = 1024;
+
+    /**
+     * The encoded rows, in row order.
+     */
+    private byte[][] rows;
+    /**
+     * The number of rows in the list.
+     */
+    private int size;
+    /**
+     * Whether the row array is shared with a snapshot, and must be copied before it is changed.
+     */
+    private boolean rowsShared;
+    /**
+     * The pooled tokens, indexed by id. Ids already handed out never change, so snapshots can keep reading them.
+     */
+    private String[] tokens;
+    /**
+     * The number of pooled tokens.
+     */
+    private int tokenCount;
+    /**
+     * The id of each pooled token.
+     */
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+
+    /**
+     * A read-only view of the rows as they were when a snapshot was taken.
+     */
+    private static final class FrozenRows extends AbstractList<String> implements RandomAccess {
+
+        /**
+         * The encoded rows.
+         */
+        private final byte[][] rows;
+        /**
+         * The number of rows.
+         */
+        private final int size;
+        /**
+         * The pooled tokens the rows refer to.
+         */
+        private final String[] tokens;
+        /**
+         * The list the snapshot was taken of, whose token pool the rows refer to.
+         */
+        private final TokenizedLineList owner;
+
+        /**
+         * Constructs a FrozenRows view.
+         *
+         * @param rows The encoded rows.
+         * @param size The number of rows.
+         * @param tokens The pooled tokens the rows refer to.
+         * @param owner The list the snapshot was taken of.
+         */
+        FrozenRows(byte[][] rows, int size, String[] tokens, TokenizedLineList owner) {
+            this.rows = rows;
+            this.size = size;
+            this.tokens = tokens;
+            this.owner = owner;
+        }
+
+        /**
+         * Decodes the row at the specified index.
+         *
+         * @param index The zero-based index of the row.
+         * @return The row as a String.
+         * @throws IndexOutOfBoundsException if the index is out of range.
+         */
+        @Override
+        public String get(int index) {
+            checkIndex(index, size);
+            return decode(rows[index], tokens);
+        }
+
+        /**
+         * Returns the number of rows in the view.
+         *
+         * @return The number of rows.
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Constructs an empty TokenizedLineList.
+     */
+    public TokenizedLineList() {
+        this.rows = new byte[INITIAL_ROW_SLOTS][];
+        this.tokens = new String[INITIAL_TOKEN_SLOTS];
+    }
+
+    /**
+     * Decodes the row at the specified index.
+     *
+     * @param index The zero-based index of the row.
+     * @return The row as a String.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String get(int index) {
+        checkIndex(index, size);
+        return decode(rows[index], tokens);
+    }
+
+    /**
+     * Returns the number of rows in the list.
+     *
+     * @return The number of rows.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replaces the row at the specified index.
+     *
+     * @param index The zero-based index of the row to replace.
+     * @param line The new row.
+     * @return The row previously at the index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String set(int index, String line) {
+        String previous = get(index);
+        byte[] encoded = encode(line);
+        unshareRows();
+        rows[index] = encoded;
+        return previous;
+    }
+
+    /**
+     * Inserts a row at the specified index, shifting later rows up by one.
+     *
+     * @param index The zero-based index at which to insert.
+     * @param line The row to insert.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public void add(int index, String line) {
+        checkIndex(index, size + 1);
+        byte[] encoded = encode(line);
+        unshareRows();
+
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+        System.arraycopy(rows, index, rows, index + 1, size - index);
+        rows[index] = encoded;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Removes the row at the specified index, shifting later rows down by one.
+     *
+     * @param index The zero-based index of the row to remove.
+     * @return The removed row.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String remove(int index) {
+        String removed = get(index);
+        unshareRows();
+
+        System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+        rows[--size] = null;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Removes all rows. The pooled tokens are kept for the rows added next.
+     */
+    @Override
+    public void clear() {
+        rows = new byte[INITIAL_ROW_SLOTS][];
+        rowsShared = false;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the number of distinct tokens pooled so far.
+     *
+     * @return The number of pooled tokens.
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Pins a read-only view of the current rows in constant time, without copying them.
+     *
+     * @return The rows as they are now, unaffected by later changes to the list.
+     */
+    public List<String> snapshot() {
+        rowsShared = true;
+        return new FrozenRows(rows, size, tokens, this);
+    }
+
+    /**
+     * Restores the rows to a snapshot. A snapshot of this list is restored in constant time by sharing its row
+     * array again, as token ids never change; any other list is copied into this one.
+     *
+     * @param snapshot The snapshot to restore, usually taken with {@link #snapshot()}.
+     */
+    public void restore(List<String> snapshot) {
+        if (!(snapshot instanceof FrozenRows frozen) || frozen.owner != this) {
+            clear();
+            addAll(snapshot);
+            return;
+        }
+
+        rows = frozen.rows;
+        rowsShared = true;
+        size = frozen.size;
+        modCount++;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Copies the row array if a snapshot shares it, so that it can be changed.
+     */
+    private void unshareRows() {
+        if (rowsShared) {
+            rows = rows.clone();
+            rowsShared = false;
+        }
+    }
+
+    /**
+     * Encodes a row as the number of pooled tokens and whether the last one is an email domain, the id of each
+     * pooled token, and the UTF-8 bytes of the part of the email before its domain, if any.
+     *
+     * @param line The row to encode.
+     * @return The encoded row.
+     * @throws NullPointerException if the row is null, as the list cannot represent null rows.
+     */
+    private byte[] encode(String line) {
+        if (line == null) {
+            throw new NullPointerException("Tokenized list cannot hold null lines.");
+        }
+
+        String[] parts = line.split(" ", -1);
+        String last = parts[parts.length - 1];
+        int at = last.lastIndexOf('@');
+        byte[] unique = new byte[0];
+        if (at >= 0) {
+            unique = last.substring(0, at).getBytes(StandardCharsets.UTF_8);
+            parts[parts.length - 1] = last.substring(at);
+        }
+
+        byte[] encoded = new byte[5 * (parts.length + 1) + unique.length];
+        int position = putVarint(encoded, 0, parts.length << 1 | (at >= 0 ? 1 : 0));
+        for (String part : parts) {
+            position = putVarint(encoded, position, poolToken(part));
+        }
+        System.arraycopy(unique, 0, encoded, position, unique.length);
+        return Arrays.copyOf(encoded, position + unique.length);
+    }
+
+    /**
+     * Decodes a row, joining its tokens with spaces and putting the part of the email before its domain back
+     * in front of the domain.
+     *
+     * @param encoded The encoded row.
+     * @param tokens The pooled tokens the row refers to.
+     * @return The row as a String.
+     */
+    private static String decode(byte[] encoded, String[] tokens) {
+        int[] position = {0};
+        int header = getVarint(encoded, position);
+        int count = header >>> 1;
+        boolean hasEmail = (header & 1) != 0;
+
+        StringBuilder line = new StringBuilder(encoded.length * 4);
+        for (int i = 0; i < count; i++) {
+            String token = tokens[getVarint(encoded, position)];
+            if (i > 0) {
+                line.append(' ');
+            }
+            if (hasEmail && i == count - 1) {
+                line.append(new String(encoded, position[0], encoded.length - position[0], StandardCharsets.UTF_8));
+            }
+            line.append(token);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Returns the id of a token, adding it to the pool if it is not pooled yet. The pool array is replaced rather
+     * than changed when it grows, so that snapshots keep reading the array they were taken with.
+     *
+     * @param token The token.
+     * @return The id of the token.
+     */
+    private int poolToken(String token) {
+        Integer id = tokenIds.get(token);
+        if (id != null) {
+            return id;
+        }
+
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokenCount * 2);
+        }
+        tokens[tokenCount] = token;
+        tokenIds.put(token, tokenCount);
+        return tokenCount++;
+    }
+
+    /**
+     * Writes a non-negative int as a variable-length sequence of 7-bit groups, least significant first.
+     *
+     * @param bytes The buffer to write to.
+     * @param position The position to write at.
+     * @param value The value to write.
+     * @return The position after the written bytes.
+     */
+    private static int putVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Reads an int written by {@link #putVarint(byte[], int, int)}.
+     *
+     * @param bytes The buffer to read from.
+     * @param position The position to read at, advanced past the value read.
+     * @return The value read.
+     */
+    private static int getVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Checks that an index falls within the range [0, bound).
+     *
+     * @param index The index to check.
+     * @param bound The exclusive upper bound.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + bound);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package receiver;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * The VersionedLineList class is a List of lines that keeps every state it passes through as an immutable
+ * {@link Version}, so that readers can iterate a consistent snapshot while a writer keeps changing the list.
+ * <p>
+ * Lines are stored in chunks of up to {@value #MAX_CHUNK_SIZE} entries. A change copies only the chunk it touches
+ * and the small table of chunk references, then publishes the result as the new current version with a single
+ * volatile write. Readers never lock, and writers only ever wait for other writers, never for readers.
+ * Versions a reader has pinned stay valid for as long as the reader holds them.
+ */
+public class VersionedLineList extends AbstractList<String> implements RandomAccess {
+
+    /**
+     * The number of lines a chunk holds before it is split in two.
+     */
+    public static final int MAX_CHUNK_SIZE = 1024;
+
+    /**
+     * An immutable state of the list. A Version is itself a read-only List of the lines it holds.
+     */
+    public static final class Version extends AbstractList<String> implements RandomAccess {
+
+        /**
+         * The empty version every list starts from.
+         */
+        private static final Version EMPTY = new Version(new String[0][], new int[]{0}, 0);
+
+        /**
+         * The chunks of lines, in order. Chunks are never modified once published.
+         */
+        private final String[][] chunks;
+        /**
+         * The index of the first line in each chunk, followed by the total number of lines.
+         */
+        private final int[] chunkStarts;
+        /**
+         * The sequence number of this version, incremented by every change.
+         */
+        private final long number;
+
+        /**
+         * Constructs a Version from its chunks.
+         *
+         * @param chunks The chunks of lines.
+         * @param chunkStarts The index of the first line in each chunk, followed by the total number of lines.
+         * @param number The sequence number of the version.
+         */
+        private Version(String[][] chunks, int[] chunkStarts, long number) {
+            this.chunks = chunks;
+            this.chunkStarts = chunkStarts;
+            this.number = number;
+        }
+
+        /**
+         * Returns the line at the specified index in this version.
+         *
+         * @param index The zero-based index of the line.
+         * @return The line.
+         * @throws IndexOutOfBoundsException if the index is out of range.
+         */
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size());
+            }
+            int chunk = chunkOf(index);
+            return chunks[chunk][index - chunkStarts[chunk]];
+        }
+
+        /**
+         * Returns the number of lines in this version.
+         *
+         * @return The number of lines.
+         */
+        @Override
+        public int size() {
+            return chunkStarts[chunks.length];
+        }
+
+        /**
+         * Gets the sequence number of this version.
+         *
+         * @return The version number.
+         */
+        public long getNumber() {
+            return number;
+        }
+
+        /**
+         * Finds the chunk holding a line by binary search on the chunk starts.
+         *
+         * @param index The zero-based index of the line, which may equal the size to find the last chunk.
+         * @return The position of the chunk.
+         */
+        private int chunkOf(int index) {
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (chunkStarts[mid] <= index) {
+                    low = mid;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The current version of the list.
+     */
+    private volatile Version current = Version.EMPTY;
+
+    /**
+     * Constructs an empty VersionedLineList.
+     */
+    public VersionedLineList() {
+    }
+
+    /**
+     * Returns the current version of the list. The returned version never changes, so it can be iterated
+     * completely from any thread while the list keeps being modified.
+     *
+     * @return The current version.
+     */
+    public Version currentVersion() {
+        return current;
+    }
+
+    /**
+     * Makes an earlier version the current one again, discarding every change made after it.
+     * This is a single reference swap, regardless of how many changes are discarded.
+     *
+     * @param version The version to restore, which must have been obtained from this list.
+     */
+    public synchronized void restore(Version version) {
+        current = version;
+        modCount++;
+    }
+
+    /**
+     * Returns the line at the specified index in the current version.
+     *
+     * @param index The zero-based index of the line.
+     * @return The line.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String get(int index) {
+        return current.get(index);
+    }
+
+    /**
+     * Returns the number of lines in the current version.
+     *
+     * @return The number of lines.
+     */
+    @Override
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Replaces the line at the specified index by publishing a new version.
+     *
+     * @param index The zero-based index of the line.
+     * @param line The new line.
+     * @return The line previously at the index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public synchronized String set(int index, String line) {
+        Version version = current;
+        String previous = version.get(index);
+
+        int chunk = version.chunkOf(index);
+        String[] copy = version.chunks[chunk].clone();
+        copy[index - version.chunkStarts[chunk]] = line;
+
+        String[][] chunks = version.chunks.clone();
+        chunks[chunk] = copy;
+        current = new Version(chunks, version.chunkStarts, version.number + 1);
+        return previous;
+    }
+
+    /**
+     * Inserts a line at the specified index by publishing a new version, splitting the affected chunk if it is full.
+     *
+     * @param index The zero-based index at which to insert.
+     * @param line The line to insert.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public synchronized void add(int index, String line) {
+        Version version = current;
+        if (index < 0 || index > version.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + version.size());
+        }
+
+        if (version.chunks.length == 0) {
+            current = new Version(new String[][]{{line}}, new int[]{0, 1}, version.number + 1);
+            modCount++;
+            return;
+        }
+
+        int chunk = version.chunkOf(index);
+        String[] old = version.chunks[chunk];
+        int position = index - version.chunkStarts[chunk];
+        String[] grown = new String[old.length + 1];
+        System.arraycopy(old, 0, grown, 0, position);
+        grown[position] = line;
+        System.arraycopy(old, position, grown, position + 1, old.length - position);
+
+        String[][] chunks;
+        if (grown.length > MAX_CHUNK_SIZE) {
+            // Keep appends cheap by leaving a full chunk behind when the split happens at the end.
+            int split = position == old.length ? MAX_CHUNK_SIZE : grown.length / 2;
+            chunks = new String[version.chunks.length + 1][];
+            System.arraycopy(version.chunks, 0, chunks, 0, chunk);
+            chunks[chunk] = Arrays.copyOfRange(grown, 0, split);
+            chunks[chunk + 1] = Arrays.copyOfRange(grown, split, grown.length);
+            System.arraycopy(version.chunks, chunk + 1, chunks, chunk + 2, version.chunks.length - chunk - 1);
+        }
+        else {
+            chunks = version.chunks.clone();
+            chunks[chunk] = grown;
+        }
+
+        current = new Version(chunks, startsOf(chunks, version.chunkStarts, chunk), version.number + 1);
+        modCount++;
+    }
+
+    /**
+     * Removes the line at the specified index by publishing a new version, dropping the chunk if it becomes empty.
+     *
+     * @param index The zero-based index of the line.
+     * @return The removed line.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public synchronized String remove(int index) {
+        Version version = current;
+        String removed = version.get(index);
+
+        int chunk = version.chunkOf(index);
+        String[] old = version.chunks[chunk];
+        int position = index - version.chunkStarts[chunk];
+
+        String[][] chunks;
+        if (old.length == 1) {
+            chunks = new String[version.chunks.length - 1][];
+            System.arraycopy(version.chunks, 0, chunks, 0, chunk);
+            System.arraycopy(version.chunks, chunk + 1, chunks, chunk, version.chunks.length - chunk - 1);
+        }
+        else {
+            String[] shrunk = new String[old.length - 1];
+            System.arraycopy(old, 0, shrunk, 0, position);
+            System.arraycopy(old, position + 1, shrunk, position, old.length - position - 1);
+            chunks = version.chunks.clone();
+            chunks[chunk] = shrunk;
+        }
+
+        current = new Version(chunks, startsOf(chunks, version.chunkStarts, chunk), version.number + 1);
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Appends all lines in the collection by publishing a single new version, filling new chunks directly
+     * rather than copying a chunk per line.
+     *
+     * @param lines The lines to append.
+     * @return true if any line was appended.
+     */
+    @Override
+    public synchronized boolean addAll(Collection<? extends String> lines) {
+        if (lines.isEmpty()) {
+            return false;
+        }
+
+        Version version = current;
+        String[] added = lines.toArray(new String[0]);
+        int newChunks = (added.length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+        String[][] chunks = Arrays.copyOf(version.chunks, version.chunks.length + newChunks);
+        for (int i = 0; i < newChunks; i++) {
+            int from = i * MAX_CHUNK_SIZE;
+            chunks[version.chunks.length + i] = Arrays.copyOfRange(added, from, Math.min(added.length, from + MAX_CHUNK_SIZE));
+        }
+
+        current = new Version(chunks, startsOf(chunks, version.chunkStarts, version.chunks.length), version.number + 1);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Removes all lines by publishing an empty version.
+     */
+    @Override
+    public synchronized void clear() {
+        current = new Version(new String[0][], new int[]{0}, current.number + 1);
+        modCount++;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Computes the chunk starts of a new version, reusing the unchanged prefix of the previous starts.
+     *
+     * @param chunks The chunks of the new version.
+     * @param previousStarts The chunk starts of the previous version.
+     * @param firstChanged The position of the first chunk whose start may differ.
+     * @return The chunk starts of the new version.
+     */
+    private static int[] startsOf(String[][] chunks, int[] previousStarts, int firstChanged) {
+        int[] starts = new int[chunks.length + 1];
+        System.arraycopy(previousStarts, 0, starts, 0, Math.min(firstChanged + 1, starts.length));
+        for (int i = firstChanged; i < chunks.length; i++) {
+            starts[i + 1] = starts[i] + chunks[i].length;
+        }
+        return starts;
+    }
+}
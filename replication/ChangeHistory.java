@@ -0,0 +1,455 @@
+package replication;
+
+import receiver.ChangeEvent;
+import receiver.ChangeFeed;
+import receiver.ChangeLogReader;
+import receiver.FileEditor;
+import receiver.StringPool;
+import receiver.VersionedLineList;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The ChangeHistory class reads the lines of a leader FileEditor as they were after any past change, identified
+ * by its sequence number or by the time it was published, so that old states of the store need not be kept as
+ * full copies of it.
+ * <p>
+ * States are rebuilt from {@link ReplicationSnapshot}s written to a directory every so many changes and from the
+ * change log the leader's {@link ChangeFeed} writes. Only the headers of the snapshots are held in memory. A read
+ * starts from the nearest snapshot or cached checkpoint at or before the requested change, and replays the log
+ * from there. Replays leave checkpoints behind at regular intervals, kept in a bounded cache, so that repeated
+ * reads of nearby states replay only the changes in between. Every checkpoint is a version of the same
+ * {@link VersionedLineList}, so checkpoints share the chunks of lines they have in common instead of each holding
+ * a full copy.
+ */
+public class ChangeHistory {
+
+    /**
+     * The default number of changes between snapshots.
+     */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+    /**
+     * The default number of changes between the checkpoints a replay leaves behind.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10_000;
+    /**
+     * The default maximum number of cached checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_CAPACITY = 32;
+    /**
+     * The prefix of the names of snapshot files, which is followed by the sequence number of the snapshot.
+     */
+    public static final String SNAPSHOT_PREFIX = "snapshot-";
+    /**
+     * The suffix of the names of snapshot files.
+     */
+    public static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    /**
+     * The name of the change log file of the leader.
+     */
+    private final String changeLogFilename;
+    /**
+     * The directory holding the snapshot files.
+     */
+    private final Path snapshotDirectory;
+    /**
+     * The number of changes between snapshots.
+     */
+    private final int snapshotInterval;
+    /**
+     * The number of changes between the checkpoints a replay leaves behind.
+     */
+    private final int checkpointInterval;
+    /**
+     * The maximum number of cached checkpoints.
+     */
+    private final int checkpointCapacity;
+    /**
+     * The snapshot files, by the sequence number of the last change they include.
+     */
+    private final TreeMap<Long, SnapshotFile> snapshots = new TreeMap<>();
+    /**
+     * The cached checkpoints, by the sequence number of the last change they include.
+     */
+    private final TreeMap<Long, Checkpoint> checkpoints = new TreeMap<>();
+    /**
+     * The list changes are replayed on, whose versions are the checkpoints.
+     */
+    private final VersionedLineList workspace = new VersionedLineList();
+    /**
+     * The pool used to share a single instance of rows repeated across snapshots and changes.
+     */
+    private final StringPool stringPool = new StringPool();
+    /**
+     * The number of checkpoint uses so far, used to find the least recently used checkpoint.
+     */
+    private long useCount;
+    /**
+     * The change log offset at which each indexed batch of changes starts.
+     */
+    private long[] batchOffsets = new long[16];
+    /**
+     * The sequence number of the first change in each indexed batch.
+     */
+    private long[] batchSequences = new long[16];
+    /**
+     * The publication time of the first change in each indexed batch, in milliseconds since the epoch.
+     */
+    private long[] batchTimestamps = new long[16];
+    /**
+     * The number of indexed batches.
+     */
+    private int batchCount;
+    /**
+     * The change log offset up to which batches are indexed.
+     */
+    private long indexedOffset;
+
+    /**
+     * A snapshot file.
+     *
+     * @param filename The name of the snapshot file.
+     * @param logOffset The change log offset of the first change not included in the snapshot.
+     */
+    private record SnapshotFile(String filename, long logOffset) {
+    }
+
+    /**
+     * The lines after a change, with where to resume the replay of later changes.
+     */
+    private static class Checkpoint {
+
+        /**
+         * The sequence number of the last change included.
+         */
+        private final long sequence;
+        /**
+         * A change log offset at or before the first change not included. Changes before it are skipped on replay.
+         */
+        private final long logOffset;
+        /**
+         * The lines after the change.
+         */
+        private final VersionedLineList.Version lines;
+        /**
+         * The use count when the checkpoint was last used.
+         */
+        private long lastUsed;
+
+        /**
+         * Constructs a Checkpoint.
+         *
+         * @param sequence The sequence number of the last change included.
+         * @param logOffset A change log offset at or before the first change not included.
+         * @param lines The lines after the change.
+         */
+        Checkpoint(long sequence, long logOffset, VersionedLineList.Version lines) {
+            this.sequence = sequence;
+            this.logOffset = logOffset;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Constructs a ChangeHistory with the default snapshot interval, checkpoint interval and checkpoint capacity.
+     *
+     * @param changeLogFilename The name of the change log file of the leader.
+     * @param snapshotDirectory The directory holding the snapshot files, which is created if it does not exist.
+     * @throws IOException if the snapshot directory cannot be created or read.
+     */
+    public ChangeHistory(String changeLogFilename, String snapshotDirectory) throws IOException {
+        this(changeLogFilename, snapshotDirectory, DEFAULT_SNAPSHOT_INTERVAL, DEFAULT_CHECKPOINT_INTERVAL,
+                DEFAULT_CHECKPOINT_CAPACITY);
+    }
+
+    /**
+     * Constructs a ChangeHistory, indexing the snapshot files already in the snapshot directory.
+     *
+     * @param changeLogFilename The name of the change log file of the leader.
+     * @param snapshotDirectory The directory holding the snapshot files, which is created if it does not exist.
+     * @param snapshotInterval The number of changes between snapshots.
+     * @param checkpointInterval The number of changes between the checkpoints a replay leaves behind.
+     * @param checkpointCapacity The maximum number of cached checkpoints.
+     * @throws IOException if the snapshot directory cannot be created or read.
+     * @throws IllegalArgumentException if an interval or the capacity is not positive.
+     */
+    public ChangeHistory(String changeLogFilename, String snapshotDirectory, int snapshotInterval,
+                         int checkpointInterval, int checkpointCapacity) throws IOException {
+        if (snapshotInterval <= 0 || checkpointInterval <= 0 || checkpointCapacity <= 0) {
+            throw new IllegalArgumentException("Intervals and checkpoint capacity must be positive.");
+        }
+
+        this.changeLogFilename = changeLogFilename;
+        this.snapshotDirectory = Files.createDirectories(Path.of(snapshotDirectory));
+        this.snapshotInterval = snapshotInterval;
+        this.checkpointInterval = checkpointInterval;
+        this.checkpointCapacity = checkpointCapacity;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.snapshotDirectory,
+                SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                ReplicationSnapshot header = ReplicationSnapshot.readHeader(file.toString());
+                snapshots.put(header.getSequence(), new SnapshotFile(file.toString(), header.getLogOffset()));
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the leader if at least the snapshot interval of changes has been published since the
+     * last one, or if there is none yet. It must be called from the thread that changes the leader, typically after
+     * every command, for the same reason as {@link ReplicationSnapshot#write(FileEditor, String)}.
+     *
+     * @param leader The leader FileEditor, which must publish its changes to a change feed.
+     * @return true if a snapshot was written, false if none was due.
+     * @throws IOException if the snapshot file cannot be written.
+     * @throws IllegalStateException if the leader has no change feed, or has a transaction open when a snapshot
+     * is due.
+     * @throws InterruptedException if the thread is interrupted while waiting for the change feed.
+     */
+    public synchronized boolean snapshotIfDue(FileEditor leader) throws IOException, InterruptedException {
+        ChangeFeed feed = leader.getChangeFeed();
+        if (feed == null) {
+            throw new IllegalStateException("The leader does not publish its changes.");
+        }
+        if (!snapshots.isEmpty() && feed.getLastSequence() - snapshots.lastKey() < snapshotInterval) {
+            return false;
+        }
+
+        feed.awaitDelivery();
+        String filename = snapshotDirectory.resolve(SNAPSHOT_PREFIX + feed.getLastDeliveredSequence()
+                + SNAPSHOT_SUFFIX).toString();
+        ReplicationSnapshot snapshot = ReplicationSnapshot.write(leader, filename);
+        snapshots.put(snapshot.getSequence(), new SnapshotFile(filename, snapshot.getLogOffset()));
+        return true;
+    }
+
+    /**
+     * Gets the lines as they were right after a change.
+     *
+     * @param sequence The sequence number of the change.
+     * @return The lines, as an immutable list.
+     * @throws IOException if a snapshot or the change log cannot be read.
+     * @throws IllegalArgumentException if the sequence number is negative, older than every snapshot, or not in
+     * the change log yet.
+     * @throws IllegalStateException if the change log skips a sequence number.
+     */
+    public synchronized List<String> linesAt(long sequence) throws IOException {
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Sequence numbers cannot be negative.");
+        }
+
+        Map.Entry<Long, Checkpoint> cached = checkpoints.floorEntry(sequence);
+        Map.Entry<Long, SnapshotFile> snapshot = snapshots.floorEntry(sequence);
+        Checkpoint base = cached == null ? null : cached.getValue();
+        if (snapshot != null && (base == null || snapshot.getKey() > base.sequence)) {
+            base = loadSnapshot(snapshot.getValue());
+        }
+        if (base == null) {
+            throw new IllegalArgumentException("No snapshot is as old as change " + sequence + ".");
+        }
+
+        base.lastUsed = ++useCount;
+        return base.sequence == sequence ? base.lines : replay(base, sequence);
+    }
+
+    /**
+     * Gets the lines as they were at a point in time.
+     *
+     * @param time The point in time.
+     * @return The lines, as an immutable list.
+     * @throws IOException if a snapshot or the change log cannot be read.
+     * @throws IllegalArgumentException if the time is older than every snapshot.
+     * @throws IllegalStateException if the change log skips a sequence number.
+     */
+    public List<String> linesAt(Instant time) throws IOException {
+        return linesAt(sequenceAt(time.toEpochMilli()));
+    }
+
+    /**
+     * Finds the last change published at or before a point in time. Publication times are assumed not to go
+     * backwards along the log.
+     *
+     * @param timestampMillis The point in time, in milliseconds since the epoch.
+     * @return The sequence number of the change, or the one before the first change in the log if the time is
+     * older than all of them.
+     * @throws IOException if the change log cannot be read.
+     */
+    public synchronized long sequenceAt(long timestampMillis) throws IOException {
+        indexBatches();
+        if (batchCount == 0) {
+            return 0;
+        }
+
+        int low = -1;
+        int high = batchCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >> 1;
+            if (batchTimestamps[mid] <= timestampMillis) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        if (low < 0) {
+            return batchSequences[0] - 1;
+        }
+
+        long sequence = batchSequences[low];
+        try (ChangeLogReader reader = new ChangeLogReader(changeLogFilename, batchOffsets[low])) {
+            List<ChangeEvent> events;
+            while (!(events = reader.poll()).isEmpty()) {
+                for (ChangeEvent event : events) {
+                    if (event.getTimestamp() > timestampMillis) {
+                        return sequence;
+                    }
+                    sequence = event.getSequence();
+                }
+            }
+        }
+        return sequence;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Loads a snapshot file into the workspace and caches it as a checkpoint.
+     *
+     * @param snapshot The snapshot file.
+     * @return The checkpoint.
+     * @throws IOException if the snapshot file cannot be read.
+     */
+    private Checkpoint loadSnapshot(SnapshotFile snapshot) throws IOException {
+        ReplicationSnapshot loaded = ReplicationSnapshot.read(snapshot.filename());
+        workspace.clear();
+        workspace.addAll(loaded.getLines().stream().map(stringPool::canonicalize).toList());
+        return cacheCheckpoint(loaded.getSequence(), snapshot.logOffset());
+    }
+
+    /**
+     * Replays the changes after a checkpoint up to a target change, caching a checkpoint every checkpoint interval
+     * of changes on the way and one at the target.
+     *
+     * @param base The checkpoint to start from.
+     * @param target The sequence number of the last change to replay.
+     * @return The lines after the target change.
+     * @throws IOException if the change log cannot be read.
+     * @throws IllegalArgumentException if the target change is not in the change log yet.
+     * @throws IllegalStateException if the change log skips a sequence number.
+     */
+    private List<String> replay(Checkpoint base, long target) throws IOException {
+        workspace.restore(base.lines);
+        long applied = base.sequence;
+        long batchOffset = base.logOffset;
+
+        try (ChangeLogReader reader = new ChangeLogReader(changeLogFilename, base.logOffset)) {
+            while (applied < target) {
+                batchOffset = reader.getOffset();
+                List<ChangeEvent> events = reader.poll();
+                if (events.isEmpty()) {
+                    throw new IllegalArgumentException("Change " + target + " is not in the change log yet.");
+                }
+
+                for (ChangeEvent event : events) {
+                    if (applied == target) {
+                        break;
+                    }
+                    if (event.getSequence() <= applied) {
+                        continue; // Included in the checkpoint
+                    }
+                    if (event.getSequence() != applied + 1) {
+                        throw new IllegalStateException("Change log gap: expected change " + (applied + 1)
+                                + " but found " + event.getSequence() + ".");
+                    }
+
+                    apply(event);
+                    applied++;
+                    if (applied < target && applied % checkpointInterval == 0) {
+                        cacheCheckpoint(applied, batchOffset);
+                    }
+                }
+            }
+        }
+        return cacheCheckpoint(target, batchOffset).lines;
+    }
+
+    /**
+     * Applies a change to the workspace, as a replica does.
+     *
+     * @param event The change.
+     */
+    private void apply(ChangeEvent event) {
+        String row = stringPool.canonicalize(event.getRow());
+        switch (event.getType()) {
+            case ADD -> workspace.add(row);
+            case UNDO_ADD -> workspace.removeLast();
+            case DELETE -> workspace.remove(event.getIndex());
+            case UNDO_DELETE -> workspace.add(event.getIndex(), row);
+            case UPDATE, UNDO_UPDATE -> workspace.set(event.getIndex(), row);
+        }
+    }
+
+    /**
+     * Caches the current version of the workspace as a checkpoint, evicting the least recently used checkpoint
+     * if the cache is full. A checkpoint already cached for the same change is kept instead.
+     *
+     * @param sequence The sequence number of the last change included.
+     * @param logOffset A change log offset at or before the first change not included.
+     * @return The cached checkpoint.
+     */
+    private Checkpoint cacheCheckpoint(long sequence, long logOffset) {
+        Checkpoint checkpoint = checkpoints.get(sequence);
+        if (checkpoint == null) {
+            checkpoint = new Checkpoint(sequence, logOffset, workspace.currentVersion());
+            checkpoints.put(sequence, checkpoint);
+            if (checkpoints.size() > checkpointCapacity) {
+                Checkpoint leastRecentlyUsed = null;
+                for (Checkpoint candidate : checkpoints.values()) {
+                    if (candidate != checkpoint
+                            && (leastRecentlyUsed == null || candidate.lastUsed < leastRecentlyUsed.lastUsed)) {
+                        leastRecentlyUsed = candidate;
+                    }
+                }
+                checkpoints.remove(leastRecentlyUsed.sequence);
+            }
+        }
+        checkpoint.lastUsed = ++useCount;
+        return checkpoint;
+    }
+
+    /**
+     * Extends the index of the change log with the batches of changes appended since it was last extended.
+     * A batch is what one {@link ChangeLogReader#poll()} returns, up to about a megabyte of changes, so the index
+     * stays small however long the log grows.
+     *
+     * @throws IOException if the change log cannot be read.
+     */
+    private void indexBatches() throws IOException {
+        try (ChangeLogReader reader = new ChangeLogReader(changeLogFilename, indexedOffset)) {
+            List<ChangeEvent> events;
+            long offset = reader.getOffset();
+            while (!(events = reader.poll()).isEmpty()) {
+                if (batchCount == batchOffsets.length) {
+                    batchOffsets = Arrays.copyOf(batchOffsets, batchCount * 2);
+                    batchSequences = Arrays.copyOf(batchSequences, batchCount * 2);
+                    batchTimestamps = Arrays.copyOf(batchTimestamps, batchCount * 2);
+                }
+                batchOffsets[batchCount] = offset;
+                batchSequences[batchCount] = events.getFirst().getSequence();
+                batchTimestamps[batchCount] = events.getFirst().getTimestamp();
+                batchCount++;
+                offset = reader.getOffset();
+            }
+            indexedOffset = offset;
+        }
+    }
+}
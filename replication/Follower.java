@@ -0,0 +1,259 @@
+package replication;
+
+import receiver.ChangeEvent;
+import receiver.ChangeLogReader;
+import receiver.FileEditor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Follower class keeps a replica FileEditor in step with a leader by tailing the change log the leader's
+ * {@link receiver.ChangeFeed} writes, typically from another process sharing the file. Read-only commands such as
+ * listing can then be served from the replica without touching the leader.
+ * <p>
+ * A new follower first loads a {@link ReplicationSnapshot} and then replays only the log after it. Changes are
+ * applied in sequence order, each batch with a single write to the replica's file, and changes the replica has
+ * already applied are skipped, so replaying from an earlier offset is harmless.
+ */
+public class Follower implements AutoCloseable {
+
+    /**
+     * The default interval between polls of the change log, in milliseconds.
+     */
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 50;
+
+    /**
+     * The replica FileEditor the changes are applied to.
+     */
+    private final FileEditor replica;
+    /**
+     * The name of the change log file of the leader.
+     */
+    private final String changeLogFilename;
+    /**
+     * The reader tailing the change log, or null before the follower has caught up.
+     */
+    private ChangeLogReader reader;
+    /**
+     * The background thread polling the change log, or null if none is running.
+     */
+    private Thread poller;
+    /**
+     * The sequence number of the last change applied to the replica.
+     */
+    private volatile long appliedSequence;
+    /**
+     * The time the last applied change was published by the leader, in milliseconds since the epoch.
+     */
+    private volatile long appliedTimestamp;
+    /**
+     * Whether the follower has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a Follower applying the leader's changes to a replica.
+     *
+     * @param replica The replica FileEditor, which nothing else should change.
+     * @param changeLogFilename The name of the change log file of the leader.
+     */
+    public Follower(FileEditor replica, String changeLogFilename) {
+        this.replica = replica;
+        this.changeLogFilename = changeLogFilename;
+    }
+
+    /**
+     * Catches up from a snapshot: replaces the replica's lines with the snapshot's and positions the follower at
+     * the change log offset the snapshot corresponds to.
+     *
+     * @param snapshotFilename The name of a snapshot file written by the leader.
+     * @throws IOException if the snapshot or the change log cannot be read, or the replica cannot be written.
+     */
+    public synchronized void catchUp(String snapshotFilename) throws IOException {
+        ReplicationSnapshot snapshot = ReplicationSnapshot.read(snapshotFilename);
+        replica.replaceAllLines(snapshot.getLines());
+        appliedSequence = snapshot.getSequence();
+        openReader(snapshot.getLogOffset());
+    }
+
+    /**
+     * Catches up by replaying the whole change log onto the replica, which must hold the leader's initial lines.
+     *
+     * @throws IOException if the change log cannot be read.
+     */
+    public synchronized void catchUpFromLogStart() throws IOException {
+        openReader(0);
+        poll();
+    }
+
+    /**
+     * Applies every complete change appended to the change log since the last poll.
+     *
+     * @return The number of changes applied.
+     * @throws IOException if the change log cannot be read or the replica cannot be written.
+     * @throws IllegalStateException if the follower has not caught up yet, or the log skips a sequence number.
+     */
+    public synchronized int poll() throws IOException {
+        if (reader == null) {
+            throw new IllegalStateException("The follower has not caught up from a snapshot or the log start.");
+        }
+
+        int applied = 0;
+        List<ChangeEvent> events;
+        while (!(events = reader.poll()).isEmpty()) {
+            List<ChangeEvent> batch = new ArrayList<>(events.size());
+            long expected = appliedSequence + 1;
+            for (ChangeEvent event : events) {
+                if (event.getSequence() < expected) {
+                    continue; // Already applied
+                }
+                if (event.getSequence() != expected) {
+                    throw new IllegalStateException("Replication gap: expected change " + expected + " but found "
+                            + event.getSequence() + ".");
+                }
+                batch.add(event);
+                expected++;
+            }
+
+            if (!batch.isEmpty()) {
+                replica.applyChanges(batch);
+                appliedSequence = batch.getLast().getSequence();
+                appliedTimestamp = batch.getLast().getTimestamp();
+                applied += batch.size();
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Starts polling the change log in the background every {@value #DEFAULT_POLL_INTERVAL_MILLIS} milliseconds.
+     *
+     * @throws IllegalStateException if the follower has not caught up yet or is already polling.
+     */
+    public void start() {
+        start(DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Starts polling the change log in the background at the given interval.
+     *
+     * @param intervalMillis The interval between polls in milliseconds.
+     * @throws IllegalStateException if the follower has not caught up yet or is already polling.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (reader == null) {
+            throw new IllegalStateException("The follower has not caught up from a snapshot or the log start.");
+        }
+        if (poller != null) {
+            throw new IllegalStateException("The follower is already polling.");
+        }
+
+        poller = new Thread(() -> {
+            while (!closed) {
+                try {
+                    poll();
+                    Thread.sleep(intervalMillis);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                catch (IOException | RuntimeException e) {
+                    if (!closed) {
+                        System.out.println("Replication failed: " + e.getMessage());
+                    }
+                    return;
+                }
+            }
+        }, "replication-follower");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * Gets the sequence number of the last change applied to the replica.
+     *
+     * @return The sequence number.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Gets the replication lag as the number of bytes appended to the change log but not yet applied.
+     *
+     * @return The number of bytes the replica is behind, or -1 if the follower has not caught up yet.
+     * @throws IOException if the size of the change log cannot be read.
+     */
+    public synchronized long getLagBytes() throws IOException {
+        return reader == null ? -1 : reader.getPendingBytes();
+    }
+
+    /**
+     * Gets the replication lag as the time since the leader published the last change applied to the replica,
+     * if the replica is behind.
+     *
+     * @return The lag in milliseconds, or 0 if every change in the log has been applied.
+     * @throws IOException if the size of the change log cannot be read.
+     */
+    public long getLagMillis() throws IOException {
+        if (getLagBytes() <= 0 || appliedTimestamp == 0) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - appliedTimestamp);
+    }
+
+    /**
+     * Gets the offset in the change log from which the follower resumes.
+     *
+     * @return The byte offset, or 0 if the follower has not caught up yet.
+     */
+    public synchronized long getLogOffset() {
+        return reader == null ? 0 : reader.getOffset();
+    }
+
+    /**
+     * Stops polling and closes the change log.
+     *
+     * @throws IOException if the change log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Thread running;
+        synchronized (this) {
+            running = poller;
+        }
+        if (running != null) {
+            running.interrupt();
+            try {
+                running.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        }
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Opens a new reader on the change log at the given offset, closing the previous one.
+     *
+     * @param offset The byte offset to read from.
+     * @throws IOException if the change log cannot be opened.
+     */
+    private void openReader(long offset) throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+        reader = new ChangeLogReader(changeLogFilename, offset);
+    }
+}
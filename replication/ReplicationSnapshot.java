@@ -0,0 +1,187 @@
+package replication;
+
+import receiver.AtomicFileWriter;
+import receiver.ChangeEvent;
+import receiver.ChangeFeed;
+import receiver.DurabilityPolicy;
+import receiver.FileEditor;
+import receiver.Snapshot;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ReplicationSnapshot class holds the lines of a leader FileEditor together with the position in its change
+ * log they correspond to, so that a {@link Follower} can load the lines and then replay only the log after them.
+ * <p>
+ * A snapshot file starts with a header line holding the last sequence number and the change log offset, followed
+ * by one line per row, escaped like the rows of the change log.
+ */
+public class ReplicationSnapshot {
+
+    /**
+     * The prefix of the header line of a snapshot file.
+     */
+    private static final String HEADER_PREFIX = "#snapshot";
+
+    /**
+     * The sequence number of the last change included in the snapshot.
+     */
+    private final long sequence;
+    /**
+     * The change log offset of the first change not included in the snapshot.
+     */
+    private final long logOffset;
+    /**
+     * The lines of the leader at the time of the snapshot.
+     */
+    private final List<String> lines;
+
+    /**
+     * Constructs a ReplicationSnapshot.
+     *
+     * @param sequence The sequence number of the last change included in the snapshot.
+     * @param logOffset The change log offset of the first change not included in the snapshot.
+     * @param lines The lines of the leader at the time of the snapshot.
+     */
+    public ReplicationSnapshot(long sequence, long logOffset, List<String> lines) {
+        this.sequence = sequence;
+        this.logOffset = logOffset;
+        this.lines = lines;
+    }
+
+    /**
+     * Writes a snapshot of a leader to a file. It must be called from the thread that changes the leader, so that
+     * no change is made between waiting for the change feed and pinning the lines. The file is replaced atomically,
+     * and forced to the storage device before this returns.
+     *
+     * @param leader The leader FileEditor, which must publish its changes to a change feed.
+     * @param filename The name of the snapshot file.
+     * @return The snapshot that was written.
+     * @throws IOException if the snapshot file cannot be written.
+     * @throws IllegalStateException if the leader has no change feed, or has a transaction open whose changes
+     * are in its lines but not published yet.
+     * @throws InterruptedException if the thread is interrupted while waiting for the change feed.
+     */
+    public static ReplicationSnapshot write(FileEditor leader, String filename) throws IOException, InterruptedException {
+        ChangeFeed feed = leader.getChangeFeed();
+        if (feed == null) {
+            throw new IllegalStateException("The leader does not publish its changes.");
+        }
+        if (leader.isInTransaction()) {
+            throw new IllegalStateException("A snapshot cannot be taken while the leader has a transaction open.");
+        }
+
+        feed.awaitDelivery();
+        ReplicationSnapshot snapshot;
+        try (Snapshot pinned = leader.openSnapshot()) {
+            snapshot = new ReplicationSnapshot(feed.getLastDeliveredSequence(), feed.getDeliveredLogOffset(),
+                    pinned.getLines());
+
+            new AtomicFileWriter(filename, DurabilityPolicy.always()).write(out -> {
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                writer.write(HEADER_PREFIX + " " + snapshot.sequence + " " + snapshot.logOffset);
+                writer.newLine();
+                for (String line : snapshot.lines) {
+                    writer.write(ChangeEvent.escapeRow(line));
+                    writer.newLine();
+                }
+                writer.flush();
+            });
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads a snapshot file written by {@link #write(FileEditor, String)}.
+     *
+     * @param filename The name of the snapshot file.
+     * @return The snapshot.
+     * @throws IOException if the snapshot file cannot be read.
+     * @throws IllegalArgumentException if the file is not a valid snapshot.
+     */
+    public static ReplicationSnapshot read(String filename) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(filename), StandardCharsets.UTF_8)) {
+            long[] position = parseHeader(reader.readLine(), filename);
+
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(ChangeEvent.unescapeRow(line));
+            }
+            return new ReplicationSnapshot(position[0], position[1], lines);
+        }
+    }
+
+    /**
+     * Reads only the header of a snapshot file, so that snapshots can be told apart without loading their lines.
+     *
+     * @param filename The name of the snapshot file.
+     * @return The snapshot, without any lines.
+     * @throws IOException if the snapshot file cannot be read.
+     * @throws IllegalArgumentException if the file is not a valid snapshot.
+     */
+    public static ReplicationSnapshot readHeader(String filename) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(filename), StandardCharsets.UTF_8)) {
+            long[] position = parseHeader(reader.readLine(), filename);
+            return new ReplicationSnapshot(position[0], position[1], List.of());
+        }
+    }
+
+    /**
+     * Gets the sequence number of the last change included in the snapshot.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the change log offset of the first change not included in the snapshot.
+     *
+     * @return The byte offset.
+     */
+    public long getLogOffset() {
+        return logOffset;
+    }
+
+    /**
+     * Gets the lines of the leader at the time of the snapshot.
+     *
+     * @return The lines.
+     */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    // UTILITY FUNCTIONS
+
+    /**
+     * Parses the header line of a snapshot file.
+     *
+     * @param header The header line, or null if the file is empty.
+     * @param filename The name of the snapshot file, for error messages.
+     * @return The sequence number and the change log offset the snapshot corresponds to.
+     * @throws IllegalArgumentException if the header is not a valid snapshot header.
+     */
+    private static long[] parseHeader(String header, String filename) {
+        String[] fields = header == null ? new String[0] : header.split(" ");
+        if (fields.length != 3 || !fields[0].equals(HEADER_PREFIX)) {
+            throw new IllegalArgumentException("Not a replication snapshot: " + filename);
+        }
+        try {
+            return new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2])};
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a replication snapshot: " + filename);
+        }
+    }
+}
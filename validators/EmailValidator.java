@@ -1,20 +1,63 @@
 package validators;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * The EmailValidator class provides static methods for validating email strings.
  * It checks if the input is either an accepted email pattern or alternate regular input string, and returns a
  * boolean array for both validations.
+ * <p>
+ * Both patterns are compiled once into {@link Validator} rules. Recent results can optionally be kept in a bounded
+ * cache, so that inputs repeated by retries and bulk reloads skip the regular expressions.
  */
 public class EmailValidator {
     private static final String emailRegex = "^(?![-.])(?:(?!\\.\\-|\\-\\.))[A-Za-z0-9_]+(?:[.-][A-Za-z0-9_]+)*(?<![-" +
             ".])@" +
             "(?![-.])[A-Za-z0-9]+(?:[.-][A-Za-z0-9]+)*(?<![.-])\\.[a-z]{2,3}$" ;
     private static final String emailAlternate = "^\\w+$" ;
-    private static final Pattern emailPattern = Pattern.compile(emailRegex);
-    private static final Pattern alternatePattern = Pattern.compile(emailAlternate);
+
+    /**
+     * The rule passing the strings that match the standard email pattern.
+     */
+    public static final Validator<String> EMAIL_ADDRESS = new PatternValidator(emailRegex);
+    /**
+     * The rule passing the strings that match the alternate pattern, a single word.
+     */
+    public static final Validator<String> ALTERNATE = new PatternValidator(emailAlternate);
+
+    /**
+     * The kinds of input an email field can hold.
+     */
+    public enum Kind {
+        /**
+         * The input matches the standard email pattern.
+         */
+        ADDRESS,
+        /**
+         * The input matches the alternate pattern, a single word.
+         */
+        ALTERNATE,
+        /**
+         * The input matches neither pattern.
+         */
+        INVALID
+    }
+
+    /**
+     * A cached result.
+     *
+     * @param email The validated input.
+     * @param kind The kind of input.
+     */
+    private record CachedResult(String email, Kind kind) {
+    }
+
+    /**
+     * The recent results, each in the slot given by the hash of its input, or null if results are not cached.
+     * A new result simply replaces the one in its slot, so lookups need neither locks nor bookkeeping.
+     */
+    private static volatile CachedResult[] cache;
 
     private EmailValidator() {
     }
@@ -30,11 +73,78 @@ public class EmailValidator {
     public static boolean[] isValidEmail(String email) {
         boolean[] result = new boolean[2];
         if (email != null) {
-            Matcher matcher = emailPattern.matcher(email);
-            Matcher alternateMatcher = alternatePattern.matcher(email);
-            result[0] = matcher.matches();
-            result[1] = alternateMatcher.matches();
+            Kind kind = classify(email);
+            result[0] = kind == Kind.ADDRESS;
+            result[1] = kind == Kind.ALTERNATE;
         }
         return result; // Default is {false, false} if email is null
     }
+
+    /**
+     * Finds which pattern a string matches. The two patterns never both match, as only the standard one allows
+     * an '@'. The result is taken from the cache when present.
+     *
+     * @param email The string to be validated as an email address.
+     * @return The kind of input, {@link Kind#INVALID} if it is null.
+     */
+    public static Kind classify(String email) {
+        if (email == null) {
+            return Kind.INVALID;
+        }
+
+        CachedResult[] results = cache;
+        int slot = 0;
+        if (results != null) {
+            int hash = email.hashCode() * 0x9E3779B9;
+            slot = (hash ^ (hash >>> 16)) & (results.length - 1);
+            CachedResult cached = results[slot];
+            if (cached != null && cached.email().equals(email)) {
+                return cached.kind();
+            }
+        }
+
+        Kind kind = EMAIL_ADDRESS.isValid(email) ? Kind.ADDRESS
+                : ALTERNATE.isValid(email) ? Kind.ALTERNATE
+                : Kind.INVALID;
+        if (results != null) {
+            results[slot] = new CachedResult(email, kind);
+        }
+        return kind;
+    }
+
+    /**
+     * Finds which pattern each string of a batch matches. Batches of at least {@value Validator#PARALLEL_THRESHOLD}
+     * strings are classified in parallel.
+     *
+     * @param emails The strings to be validated as email addresses.
+     * @return The kind of each input, in the order of the inputs.
+     */
+    public static Kind[] classifyAll(List<String> emails) {
+        Kind[] kinds = new Kind[emails.size()];
+        IntStream indexes = IntStream.range(0, kinds.length);
+        if (kinds.length >= Validator.PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> kinds[i] = classify(emails.get(i)));
+        return kinds;
+    }
+
+    /**
+     * Sets how many recent results are cached, rounded up to a power of two. A result replaces any other whose
+     * input falls in the same slot. Results are not cached by default.
+     *
+     * @param capacity The maximum number of cached results, or 0 to stop caching.
+     * @throws IllegalArgumentException if the capacity is negative.
+     */
+    public static void setCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Email cache capacity cannot be negative.");
+        }
+        if (capacity == 0) {
+            cache = null;
+            return;
+        }
+
+        cache = new CachedResult[Integer.highestOneBit(Math.max(1, capacity - 1)) << 1];
+    }
 }
@@ -1,11 +1,24 @@
 package validators;
 
+import java.util.List;
+import java.util.Objects;
+
 /**
  * The NameValidator class provides static methods for validating name strings.
  * It checks if the provided names are not null, not empty, and do not consist only of whitespace.
  */
 public class NameValidator {
 
+    /**
+     * The rule passing the strings that are not null.
+     */
+    public static final Validator<String> NOT_NULL = Objects::nonNull;
+    /**
+     * The rule passing the names that contain more than whitespace, and the strings containing an '@', which are
+     * presumably email addresses.
+     */
+    public static final Validator<String> NAME = NOT_NULL.and(name -> name.contains("@") || !name.isBlank());
+
     /**
      * Private constructor to prevent instantiation of the utility class.
      */
@@ -21,13 +34,20 @@ public class NameValidator {
      */
     public static boolean areValidNames(String... names) {
         for (String name : names) {
-            if (name.contains("@")) {
-                continue; // Skip validation for strings containing '@' assuming they are emails
-            }
-            if (name == null || name.trim().isEmpty()) {
+            if (!NAME.isValid(name)) {
                 return false; // Return false if any name is null, empty, or only whitespace
             }
         }
         return true; // Return true if all names pass the validation check
     }
+
+    /**
+     * Validates a batch of names in one call, in parallel for large batches.
+     *
+     * @param names The names to validate.
+     * @return Whether each name is valid, in the order of the names.
+     */
+    public static boolean[] validateAll(List<String> names) {
+        return NAME.validateAll(names);
+    }
 }
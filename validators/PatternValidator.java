@@ -0,0 +1,53 @@
+package validators;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The PatternValidator class is a {@link Validator} passing the strings that fully match a regular expression.
+ * The expression is compiled once when the validator is built, and each thread reuses its own matcher instead of
+ * allocating one per input.
+ */
+public class PatternValidator implements Validator<String> {
+
+    /**
+     * The compiled regular expression.
+     */
+    private final Pattern pattern;
+    /**
+     * The matcher of the calling thread, reset for every input.
+     */
+    private final ThreadLocal<Matcher> matchers;
+
+    /**
+     * Constructs a PatternValidator, compiling the given regular expression.
+     *
+     * @param regex The regular expression the whole input must match.
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid.
+     */
+    public PatternValidator(String regex) {
+        this.pattern = Pattern.compile(regex);
+        this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+    }
+
+    /**
+     * Checks whether a string fully matches the regular expression.
+     *
+     * @param input The string, which may be null.
+     * @return true if the string is not null and matches, false otherwise.
+     */
+    @Override
+    public boolean isValid(String input) {
+        return input != null && matchers.get().reset(input).matches();
+    }
+
+    /**
+     * Gets the regular expression.
+     *
+     * @return The regular expression.
+     */
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+}
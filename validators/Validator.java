@@ -0,0 +1,55 @@
+package validators;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The Validator interface is a single validation rule over inputs of one type. Rules are built once, typically as
+ * constants, and chained with {@link #and(Validator)} into a pipeline that stops at the first failing rule.
+ * A whole batch of inputs can be validated in one call, which spreads large batches across cores.
+ *
+ * @param <T> The type of the inputs.
+ */
+@FunctionalInterface
+public interface Validator<T> {
+
+    /**
+     * The number of inputs from which {@link #validateAll(List)} validates in parallel.
+     */
+    int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Checks whether an input passes the rule.
+     *
+     * @param input The input.
+     * @return true if the input is valid, false otherwise.
+     */
+    boolean isValid(T input);
+
+    /**
+     * Chains another rule after this one. The other rule is only checked for inputs passing this one.
+     *
+     * @param next The rule to check next.
+     * @return A validator passing the inputs that pass both rules.
+     */
+    default Validator<T> and(Validator<? super T> next) {
+        return input -> isValid(input) && next.isValid(input);
+    }
+
+    /**
+     * Validates a batch of inputs. Batches of at least {@value #PARALLEL_THRESHOLD} inputs are validated in
+     * parallel, so the rule must be safe to call from several threads.
+     *
+     * @param inputs The inputs.
+     * @return Whether each input is valid, in the order of the inputs.
+     */
+    default boolean[] validateAll(List<? extends T> inputs) {
+        boolean[] results = new boolean[inputs.size()];
+        IntStream indexes = IntStream.range(0, results.length);
+        if (results.length >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> results[i] = isValid(inputs.get(i)));
+        return results;
+    }
+}